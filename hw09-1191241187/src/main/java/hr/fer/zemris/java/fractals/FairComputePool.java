@@ -0,0 +1,138 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A bounded pool of daemonic worker threads shared by many tenants.
+ * Every tenant has its own queue of jobs and the workers take jobs from
+ * the tenants in round-robin order, so a tenant which submits many expensive
+ * jobs can not starve a tenant which submits only a few.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class FairComputePool {
+
+	/**
+	 * tenants which have at least one queued job, in the order they are served.
+	 */
+	private final Queue<Tenant> ready = new ArrayDeque<>();
+	/**
+	 * worker threads of this pool.
+	 */
+	private final Thread[] workers;
+	/**
+	 * whether this pool has been shut down.
+	 */
+	private boolean shutdown;
+
+	/**
+	 * A constructor which starts the given number of worker threads.
+	 * @param threads - number of worker threads.
+	 * @throws IllegalArgumentException if {@code threads} is not positive.
+	 */
+	public FairComputePool(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("Pool needs at least one thread, got " + threads + ".");
+		}
+
+		workers = new Thread[threads];
+		for(int i = 0; i < threads; i++) {
+			workers[i] = new Thread(this::work, "fair-compute-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * A method which registers a new tenant of this pool.
+	 * @return the tenant.
+	 */
+	public Tenant newTenant() {
+		return new Tenant();
+	}
+
+	/**
+	 * A method which stops the workers once they finish their current jobs.
+	 * Jobs which are still queued are cancelled.
+	 */
+	public void shutdown() {
+		synchronized(this) {
+			shutdown = true;
+			for(Tenant tenant : ready) {
+				tenant.jobs.forEach(job -> job.cancel(false));
+				tenant.jobs.clear();
+			}
+			ready.clear();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Body of every worker thread.
+	 */
+	private void work() {
+		while(true) {
+			Runnable job;
+			synchronized(this) {
+				while(ready.isEmpty() && !shutdown) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if(shutdown) {
+					return;
+				}
+
+				Tenant tenant = ready.remove();
+				job = tenant.jobs.remove();
+				if(!tenant.jobs.isEmpty()) {
+					ready.add(tenant);
+				}
+			}
+			job.run();
+		}
+	}
+
+	/**
+	 * A single user of the pool with its own queue of jobs.
+	 */
+	public class Tenant {
+
+		/**
+		 * queued jobs of this tenant.
+		 */
+		private final Queue<FutureTask<Void>> jobs = new ArrayDeque<>();
+
+		/**
+		 * A private constructor, tenants are created by {@link FairComputePool#newTenant()}.
+		 */
+		private Tenant() {
+		}
+
+		/**
+		 * A method which queues a job of this tenant.
+		 * @param job - job which is run.
+		 * @return future which is done once the job finishes.
+		 * @throws IllegalStateException if the pool has been shut down.
+		 */
+		public Future<Void> submit(Runnable job) {
+			FutureTask<Void> task = new FutureTask<>(job, null);
+			synchronized(FairComputePool.this) {
+				if(shutdown) {
+					throw new IllegalStateException("Pool has been shut down.");
+				}
+				if(jobs.isEmpty()) {
+					ready.add(this);
+				}
+				jobs.add(task);
+				FairComputePool.this.notify();
+			}
+			return task;
+		}
+	}
+}
@@ -1,19 +1,15 @@
 package hr.fer.zemris.java.fractals;
 
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import hr.fer.zemris.java.fractals.viewer.FractalViewer;
 import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
 import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
-import hr.fer.zemris.math.*;
+import hr.fer.zemris.math.Complex;
 
 /**
  * A class which generates the Newton fractals.
@@ -23,39 +19,36 @@ import hr.fer.zemris.math.*;
 public class Newton {
 
 	/**
-	 * Maximum distance a point and a root can be apart from each other so that they are considered close.
+	 * Name of the system property which selects the default {@link Backend}.
 	 */
-	public static final double ROOT_TRESHOLD = 0.003;
+	public static final String BACKEND_PROPERTY = "newton.backend";
 	/**
-	 * Maximum distance two points can be apart from each other so that they are considered close.
-	 */
-	public static final double CONVERGENCE_TRESHOLD = 0.001;
-	/**
-	 * Maximum number of fractal iterations.
+	 * Maximum distance a point and a root can be apart from each other so that they are considered close.
 	 */
-	private static final int MAX_ITERATIONS = 16 * 16;
-	
+	public static final double ROOT_TRESHOLD = NewtonEngine.ROOT_TRESHOLD;
 	/**
-	 * A factory for daemonic threads.
+	 * Maximum distance two points can be apart from each other so that they are considered close.
 	 */
-	private static ThreadFactory daemonicThreadFactory = r -> {
-			Thread result = new Thread(r);
-			result.setDaemon(true);
-			return result;
-	};
+	public static final double CONVERGENCE_TRESHOLD = NewtonEngine.CONVERGENCE_TRESHOLD;
 	
 	/**
-	 * Given polynomial.
+	 * Bounded pool shared by the engines of all {@link Backend#FIXED_POOL} producers.
 	 */
-	private static ComplexPolynomial polynomial;
+	private static final FairComputePool COMPUTE_POOL = new FairComputePool(
+			Runtime.getRuntime().availableProcessors()
+	);
 	/**
-	 * Derivation of given {@code polynomial}.
+	 * Work-stealing pool shared by all requests of {@link Backend#FORK_JOIN} producers.
 	 */
-	private static ComplexPolynomial derived;
-	/**
-	 * Given polynomial in root-form.
-	 */
-	private static ComplexRootedPolynomial rootedPolynomial;
+	private static final ForkJoinPool FORK_JOIN_POOL = new ForkJoinPool(
+			Runtime.getRuntime().availableProcessors(),
+			pool -> {
+				var worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				worker.setDaemon(true);
+				return worker;
+			},
+			null, false
+	);
 	
 	/**
 	 * Main method of this class.
@@ -97,11 +90,42 @@ public class Newton {
 				factors[i] = roots.get(i);
 			}
 		}
-		rootedPolynomial = new ComplexRootedPolynomial(Complex.ONE, factors);
-		polynomial = rootedPolynomial.toComplexPolynom();
-		derived = polynomial.derive();
 		
-		FractalViewer.show(new MyProducer());
+		FractalViewer.show(new MyProducer(newEngine(factors)));
+	}
+	
+	/**
+	 * A method which creates an engine for the polynomial with the given roots
+	 * which calculates on the pool shared by all engines of this class.
+	 * @param roots - roots of the polynomial.
+	 * @return the engine.
+	 */
+	public static NewtonEngine newEngine(Complex ... roots) {
+		return new NewtonEngine(COMPUTE_POOL, roots);
+	}
+	
+	/**
+	 * Strategies by which {@link MyProducer} distributes the rows of an image.
+	 */
+	public enum Backend {
+		/**
+		 * Rows are split into fixed bands which are queued on a bounded pool shared
+		 * by all engines and awaited one by one. The pool serves the engines in turns.
+		 */
+		FIXED_POOL,
+		/**
+		 * Rows are split recursively on a shared work-stealing pool, so waiting for
+		 * a band never blocks a worker which could compute another one.
+		 */
+		FORK_JOIN;
+		
+		/**
+		 * A method which reads the backend from {@link Newton#BACKEND_PROPERTY}.
+		 * @return the configured backend, {@link #FIXED_POOL} if none is set.
+		 */
+		public static Backend fromSystemProperty() {
+			return Backend.valueOf(System.getProperty(BACKEND_PROPERTY, FIXED_POOL.name()).toUpperCase());
+		}
 	}
 	
 	/**
@@ -141,9 +165,9 @@ public class Newton {
 		 */
 		int yMax;
 		/**
-		 * maximum number of iterations.
+		 * engine which calculates the rows.
 		 */
-		int m;
+		NewtonEngine engine;
 		/**
 		 * storage for the result of calculation
 		 */
@@ -163,13 +187,13 @@ public class Newton {
 		 * @param height - {@code height} variable.
 		 * @param yMin - {@code yMin} variable.
 		 * @param yMax - {@code yMin} variable.
-		 * @param m - {@code m} variable.
+		 * @param engine - {@code engine} variable.
 		 * @param data - {@code data} variable.
 		 * @param cancel - {@code cancel} variable.
 		 */
 		public CalculationTask(double reMin, double reMax, double imMin,
 				double imMax, int width, int height, int yMin, int yMax, 
-				int m, short[] data, AtomicBoolean cancel) {
+				NewtonEngine engine, short[] data, AtomicBoolean cancel) {
 			super();
 			
 			this.reMin = reMin;
@@ -180,40 +204,70 @@ public class Newton {
 			this.height = height;
 			this.yMin = yMin;
 			this.yMax = yMax;
-			this.m = m;
+			this.engine = engine;
 			this.data = data;
 			this.cancel = cancel;
 		}
 		
 		@Override
 		public void run() {
-			for(int y = yMin ; y <= yMax; y++) {
-				for(int x = 0; x <= width; x++) {
-					double re = x * (reMax - reMin) / (double) (width - 1) + reMin;
-					double im = (height - 1 - y) * (imMax - imMin) / (height - 1) + imMin;
-					Complex zn = new Complex(re, im);
-					
-					int iter = 0;
-					double module = 0;
-					
-					do {
-						Complex numerator = polynomial.apply(zn);
-						Complex denominator = derived.apply(zn);
-						Complex znold = zn;
-						Complex fraction = numerator.div(denominator);
-						zn = zn.sub(fraction);
-						module = znold.sub(zn).module();
-						iter++;
-					} while(module > CONVERGENCE_TRESHOLD && iter < MAX_ITERATIONS);
-					
-					int index = rootedPolynomial.indexOfClosestRootFor(zn, ROOT_TRESHOLD);
-					
-					if(iter == MAX_ITERATIONS) {
-						index = -1;
-					}
-					data[y*width + x] = (short)(index + 1);
-				}
+			engine.calculate(reMin, reMax, imMin, imMax, width, height, yMin, yMax, data, cancel);
+		}
+	}
+
+	/**
+	 * A task which recursively splits a range of rows and calculates them on a {@link ForkJoinPool}.
+	 */
+	public static class CalculationAction extends RecursiveAction {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 4215826117043951372L;
+
+		/**
+		 * If the task is to calculate up to this many rows, then
+		 * this task isn't divided into smaller ones.
+		 */
+		private static final int THRESHOLD = 8;
+
+		/**
+		 * task which calculates the rows of this action.
+		 */
+		private CalculationTask task;
+		
+		/**
+		 * A constructor which accepts the task whose rows are calculated.
+		 * @param task - {@code task} variable.
+		 */
+		public CalculationAction(CalculationTask task) {
+			this.task = task;
+		}
+
+		@Override
+		protected void compute() {
+			if(task.cancel.get()) {
+				return;
+			}
+			
+			if(task.yMax - task.yMin < THRESHOLD) {
+				task.run();
+				return;
 			}
+			
+			int middle = (task.yMin + task.yMax) / 2;
+			invokeAll(new CalculationAction(rows(task.yMin, middle)), new CalculationAction(rows(middle + 1, task.yMax)));
+		}
+		
+		/**
+		 * A method which creates a copy of this action's task restricted to the given rows.
+		 * @param yMin - index of the first row.
+		 * @param yMax - index of the last row.
+		 * @return the restricted task.
+		 */
+		private CalculationTask rows(int yMin, int yMax) {
+			return new CalculationTask(task.reMin, task.reMax, task.imMin, task.imMax, task.width,
+					task.height, yMin, yMax, task.engine, task.data, task.cancel);
 		}
 	}
 
@@ -221,43 +275,54 @@ public class Newton {
 	 * A Newton's fractal producer.
 	 */
 	public static class MyProducer implements IFractalProducer {
-		@SuppressWarnings("unchecked")
+		
+		/**
+		 * engine which calculates the fractal.
+		 */
+		private NewtonEngine engine;
+		/**
+		 * backend which distributes the calculation.
+		 */
+		private Backend backend;
+		
+		/**
+		 * A constructor which uses the backend given by {@link Newton#BACKEND_PROPERTY}.
+		 * @param engine - {@code engine} variable.
+		 */
+		public MyProducer(NewtonEngine engine) {
+			this(engine, Backend.fromSystemProperty());
+		}
+		
+		/**
+		 * A constructor which accepts the engine and the backend which distributes the calculation.
+		 * @param engine - {@code engine} variable.
+		 * @param backend - {@code backend} variable.
+		 */
+		public MyProducer(NewtonEngine engine, Backend backend) {
+			this.engine = engine;
+			this.backend = backend;
+		}
+		
 		@Override
 		public void produce(double reMin, double reMax, double imMin, double imMax,
 				int width, int height, long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
 			System.out.println("Započinjem izračun...");
 			short[] data = new short[width * height];
-			ExecutorService pool = Executors.newFixedThreadPool(
-					Runtime.getRuntime().availableProcessors(),
-					daemonicThreadFactory
-			);			
-			
-			final int numberOfTasks = Runtime.getRuntime().availableProcessors() * 8;
-			int rowsPerTask = height / numberOfTasks;
 			
-			List<Future<Void>> results = new ArrayList<>();
-			
-			for(int i = 0; i < numberOfTasks; i++) {
-				int yMin = i * rowsPerTask;
-				int yMax = (i+1) * rowsPerTask - 1;
-				if(i == numberOfTasks - 1) {
-					yMax = height - 1;
-				}
-				CalculationTask job = new CalculationTask(reMin, reMax, imMin, imMax, width, height, yMin, yMax, polynomial.order() + 1, data, cancel);
-				results.add((Future<Void>) pool.submit(job));
+			if(backend == Backend.FORK_JOIN) {
+				FORK_JOIN_POOL.invoke(new CalculationAction(new CalculationTask(reMin, reMax, imMin, imMax,
+						width, height, 0, height - 1, engine, data, cancel)));
+			} else {
+				engine.render(reMin, reMax, imMin, imMax, width, height, data, cancel);
 			}
 			
-			for(Future<Void> job : results) {
-				try {
-					job.get();
-				} catch (InterruptedException | ExecutionException e) {
-				}
+			if(cancel.get()) {
+				System.out.println("Računanje prekinuto.");
+				return;
 			}
 			
-			pool.shutdown();
-			
 			System.out.println("Računanje gotovo. Idem obavijestiti promatrača, tj. GUI!");
-			observer.acceptResult(data, (short)(polynomial.order()+1), requestNo);
+			observer.acceptResult(data, engine.colors(), requestNo);
 		}
 	}
 }
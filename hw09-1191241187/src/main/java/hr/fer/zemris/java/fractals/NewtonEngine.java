@@ -0,0 +1,189 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * An engine which calculates the Newton fractal of one polynomial.
+ * Every engine holds its own prepared polynomial, so many engines can
+ * render different polynomials at the same time while sharing one
+ * {@link FairComputePool}, in which every engine is a separate tenant.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class NewtonEngine {
+
+	/**
+	 * Maximum distance a point and a root can be apart from each other so that they are considered close.
+	 */
+	public static final double ROOT_TRESHOLD = 0.003;
+	/**
+	 * Maximum distance two points can be apart from each other so that they are considered close.
+	 */
+	public static final double CONVERGENCE_TRESHOLD = 0.001;
+	/**
+	 * Maximum number of fractal iterations.
+	 */
+	public static final int MAX_ITERATIONS = 16 * 16;
+	/**
+	 * Number of rows which are calculated by one job submitted to the pool.
+	 */
+	private static final int ROWS_PER_JOB = 8;
+
+	/**
+	 * Given polynomial.
+	 */
+	private final ComplexPolynomial polynomial;
+	/**
+	 * Derivation of given {@code polynomial}.
+	 */
+	private final ComplexPolynomial derived;
+	/**
+	 * Given polynomial in root-form.
+	 */
+	private final ComplexRootedPolynomial rootedPolynomial;
+	/**
+	 * tenant through which this engine submits its jobs.
+	 */
+	private final FairComputePool.Tenant tenant;
+
+	/**
+	 * A constructor which prepares the polynomial with the given roots.
+	 * @param pool - pool which calculates the fractals of this engine.
+	 * @param roots - roots of the polynomial.
+	 * @throws IllegalArgumentException if less than two roots are given.
+	 */
+	public NewtonEngine(FairComputePool pool, Complex ... roots) {
+		if(roots.length < 2) {
+			throw new IllegalArgumentException("At least two roots are needed, got " + roots.length + ".");
+		}
+
+		this.rootedPolynomial = new ComplexRootedPolynomial(Complex.ONE, roots);
+		this.polynomial = rootedPolynomial.toComplexPolynom();
+		this.derived = polynomial.derive();
+		this.tenant = pool.newTenant();
+	}
+
+	/**
+	 * A method which returns the number of colors needed to draw the fractals of this engine.
+	 * @return number of roots plus one for the points which don't converge.
+	 */
+	public short colors() {
+		return (short) (polynomial.order() + 1);
+	}
+
+	/**
+	 * A method which calculates the whole image on the pool this engine was created with.
+	 * Returns once every row is calculated or the calculation is cancelled. If the calling
+	 * thread is interrupted while waiting, or the pool is shut down before every row is
+	 * calculated, the calculation is aborted by setting {@code cancel}, and the interrupt
+	 * status of the thread is kept. A calculation which returns with {@code cancel} set
+	 * leaves {@code data} incomplete.
+	 * @param reMin - minimum real value.
+	 * @param reMax - maximum real value.
+	 * @param imMin - minimum imaginary value.
+	 * @param imMax - maximum imaginary value.
+	 * @param width - width of the screen.
+	 * @param height - height of the screen.
+	 * @param data - storage for the result of calculation.
+	 * @param cancel - mutex variable.
+	 * @throws IllegalStateException if the pool has been shut down or the calculation of
+	 *         some rows failed, in which case the calculation is aborted.
+	 */
+	public void render(double reMin, double reMax, double imMin, double imMax,
+			int width, int height, short[] data, AtomicBoolean cancel) {
+		List<Future<Void>> results = new ArrayList<>();
+
+		for(int yMin = 0; yMin < height; yMin += ROWS_PER_JOB) {
+			int yMax = Math.min(yMin + ROWS_PER_JOB, height) - 1;
+			results.add(tenant.submit(new Newton.CalculationTask(reMin, reMax, imMin, imMax,
+					width, height, yMin, yMax, this, data, cancel)));
+		}
+
+		for(Future<Void> job : results) {
+			try {
+				job.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort(results, cancel);
+				return;
+			} catch (CancellationException e) {
+				abort(results, cancel);
+				return;
+			} catch (ExecutionException e) {
+				abort(results, cancel);
+				throw new IllegalStateException("Calculation of the image failed.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * A method which aborts a calculation, so that running jobs stop at their next row
+	 * and queued jobs are never started.
+	 * @param results - jobs of the calculation.
+	 * @param cancel - mutex variable which is set.
+	 */
+	private static void abort(List<Future<Void>> results, AtomicBoolean cancel) {
+		cancel.set(true);
+		for(Future<Void> job : results) {
+			job.cancel(false);
+		}
+	}
+
+	/**
+	 * A method which calculates the given rows of the image on the calling thread.
+	 * Every point is colored by the index of the root it converges to plus one,
+	 * or zero if it doesn't converge.
+	 * @param reMin - minimum real value.
+	 * @param reMax - maximum real value.
+	 * @param imMin - minimum imaginary value.
+	 * @param imMax - maximum imaginary value.
+	 * @param width - width of the screen.
+	 * @param height - height of the screen.
+	 * @param yMin - index of the first row that is calculated.
+	 * @param yMax - index of the last row that is calculated.
+	 * @param data - storage for the result of calculation.
+	 * @param cancel - mutex variable.
+	 */
+	public void calculate(double reMin, double reMax, double imMin, double imMax,
+			int width, int height, int yMin, int yMax, short[] data, AtomicBoolean cancel) {
+		for(int y = yMin ; y <= yMax; y++) {
+			if(cancel.get()) {
+				return;
+			}
+			for(int x = 0; x < width; x++) {
+				double re = x * (reMax - reMin) / (double) (width - 1) + reMin;
+				double im = (height - 1 - y) * (imMax - imMin) / (height - 1) + imMin;
+				Complex zn = new Complex(re, im);
+
+				int iter = 0;
+				double module = 0;
+
+				do {
+					Complex numerator = polynomial.apply(zn);
+					Complex denominator = derived.apply(zn);
+					Complex znold = zn;
+					Complex fraction = numerator.div(denominator);
+					zn = zn.sub(fraction);
+					module = znold.sub(zn).module();
+					iter++;
+				} while(module > CONVERGENCE_TRESHOLD && iter < MAX_ITERATIONS);
+
+				int index = rootedPolynomial.indexOfClosestRootFor(zn, ROOT_TRESHOLD);
+
+				if(iter == MAX_ITERATIONS) {
+					index = -1;
+				}
+				data[y*width + x] = (short)(index + 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package hr.fer.zemris.java.fractals.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.fractals.Newton;
+import hr.fer.zemris.java.fractals.Newton.Backend;
+import hr.fer.zemris.java.fractals.Newton.MyProducer;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * A benchmark which measures the latency of Newton fractal requests when many
+ * viewers issue them at the same time, once for every {@link Backend}.
+ * Every viewer has its own engine, so with {@link Backend#FIXED_POOL} every
+ * viewer is a separate tenant of the shared pool.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class NewtonBenchmark {
+
+	/**
+	 * width and height of every requested image.
+	 */
+	private static final int SIZE = 400;
+	/**
+	 * number of rounds whose results are discarded.
+	 */
+	private static final int WARMUP_ROUNDS = 2;
+	/**
+	 * number of measured rounds.
+	 */
+	private static final int ROUNDS = 5;
+	
+	/**
+	 * Main method of this program. Runs the benchmark.
+	 * @param args - optionally the number of concurrent viewers, 16 by default.
+	 * @throws InterruptedException if the benchmark is interrupted.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int viewers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		
+		for(Backend backend : Backend.values()) {
+			MyProducer[] producers = new MyProducer[viewers];
+			for(int v = 0; v < viewers; v++) {
+				producers[v] = new MyProducer(Newton.newEngine(Complex.ONE, Complex.ONE_NEG,
+						Complex.IM, Complex.IM_NEG, Complex.fromReal(v + 2)), backend);
+			}
+			for(int i = 0; i < WARMUP_ROUNDS; i++) {
+				round(producers);
+			}
+			
+			List<Long> latencies = new ArrayList<>();
+			for(int i = 0; i < ROUNDS; i++) {
+				for(long latency : round(producers)) {
+					latencies.add(latency);
+				}
+			}
+			
+			latencies.sort(null);
+			double mean = latencies.stream().mapToLong(Long::longValue).average().orElse(0);
+			long p95 = latencies.get(Math.max(0, (int) (latencies.size() * 0.95) - 1));
+			System.out.printf("%-10s viewers=%d mean=%.1f ms p95=%d ms max=%d ms%n",
+					backend, viewers, mean / 1e6, p95 / 1_000_000, latencies.get(latencies.size() - 1) / 1_000_000);
+		}
+	}
+	
+	/**
+	 * A method which issues one request per viewer at the same time and measures them.
+	 * @param producers - producer of every viewer.
+	 * @return latency of every request in nanoseconds.
+	 * @throws InterruptedException if the benchmark is interrupted.
+	 */
+	private static long[] round(MyProducer[] producers) throws InterruptedException {
+		int viewers = producers.length;
+		long[] latencies = new long[viewers];
+		Thread[] threads = new Thread[viewers];
+		
+		for(int v = 0; v < viewers; v++) {
+			int index = v;
+			threads[v] = new Thread(() -> {
+				long start = System.nanoTime();
+				producers[index].produce(-2, 2, -2, 2, SIZE, SIZE, index,
+						(data, colors, requestNo) -> latencies[index] = System.nanoTime() - start,
+						new AtomicBoolean());
+			});
+		}
+		
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		return latencies;
+	}
+}
@@ -0,0 +1,346 @@
+package hr.fer.zemris.java.fractals.server;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import hr.fer.zemris.java.fractals.Newton;
+import hr.fer.zemris.java.fractals.NewtonEngine;
+import hr.fer.zemris.math.Complex;
+
+/**
+ * An embedded HTTP server which serves Newton fractal tiles on paths of the
+ * form {@code /{roots}/{z}/{x}/{y}.png}, where {@code roots} is a comma-separated
+ * list of at least two complex numbers (with {@code +} escaped as {@code %2B}).
+ * At zoom level {@code z} the square from {@code -2-2i} to {@code 2+2i} is covered
+ * by {@code 2^z * 2^z} tiles of {@value #TILE_SIZE} pixels, {@code x} growing to the
+ * right and {@code y} growing downwards.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class NewtonTileServer {
+
+	/**
+	 * width and height of every tile in pixels.
+	 */
+	public static final int TILE_SIZE = 256;
+	/**
+	 * highest supported zoom level.
+	 */
+	public static final int MAX_ZOOM = 30;
+	/**
+	 * half of the width of the area shown at zoom level 0.
+	 */
+	private static final double EXTENT = 2;
+	/**
+	 * maximum number of engines which are kept for reuse.
+	 */
+	private static final int MAX_ENGINES = 64;
+	/**
+	 * pattern of the path of a tile.
+	 */
+	private static final Pattern TILE_PATH = Pattern.compile("/([^/]+)/(\\d+)/(\\d+)/(\\d+)\\.png");
+
+	/**
+	 * the underlying server.
+	 */
+	private final HttpServer server;
+	/**
+	 * threads which handle the requests.
+	 */
+	private final ExecutorService handlers;
+	/**
+	 * cache of encoded tiles.
+	 */
+	private final TileCache cache;
+	/**
+	 * engines of recently requested polynomials, keyed by their canonical roots.
+	 */
+	private final Map<String, NewtonEngine> engines = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, NewtonEngine> eldest) {
+			return size() > MAX_ENGINES;
+		}
+	};
+
+	/**
+	 * A constructor which binds the server, but doesn't start it.
+	 * @param address - address the server listens on, port 0 picks a free port.
+	 * @param cacheCapacity - maximum total size of the cached tiles in bytes.
+	 * @param threads - number of threads which handle the requests.
+	 * @throws IOException if the server can't be bound.
+	 */
+	public NewtonTileServer(InetSocketAddress address, long cacheCapacity, int threads) throws IOException {
+		this.cache = new TileCache(cacheCapacity);
+		this.handlers = Executors.newFixedThreadPool(threads, r -> {
+			Thread result = new Thread(r);
+			result.setDaemon(true);
+			return result;
+		});
+		this.server = HttpServer.create(address, 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(handlers);
+	}
+
+	/**
+	 * Main method of this class.
+	 * Starts the server on the loopback interface.
+	 * @param args - optionally the port, 8080 by default.
+	 * @throws IOException if the server can't be bound.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		NewtonTileServer server = new NewtonTileServer(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+				64L * 1024 * 1024, Runtime.getRuntime().availableProcessors() * 2);
+		server.start();
+		System.out.println("Poslužitelj sluša na http://localhost:" + server.getPort() + "/1,-1,i,-i/0/0/0.png");
+	}
+
+	/**
+	 * A method which starts serving requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * A method which stops the server, waiting at most a second for running exchanges.
+	 */
+	public void stop() {
+		server.stop(1);
+		handlers.shutdown();
+	}
+
+	/**
+	 * A getter for the port the server listens on.
+	 * @return the port.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * A getter for the cache of encoded tiles.
+	 * @return the cache.
+	 */
+	public TileCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * A method which handles a single exchange.
+	 * @param exchange - the exchange.
+	 * @throws IOException if the response can't be sent.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if(!exchange.getRequestMethod().equals("GET")) {
+				sendError(exchange, 405, "Only GET is supported.");
+				return;
+			}
+
+			Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+			if(!matcher.matches()) {
+				sendError(exchange, 404, "Expected /{roots}/{z}/{x}/{y}.png.");
+				return;
+			}
+
+			Complex[] roots;
+			int z, x, y;
+			try {
+				roots = parseRoots(matcher.group(1));
+				z = Integer.parseInt(matcher.group(2));
+				x = Integer.parseInt(matcher.group(3));
+				y = Integer.parseInt(matcher.group(4));
+			} catch (IllegalArgumentException e) {
+				sendError(exchange, 400, "Malformed tile request.");
+				return;
+			}
+			if(roots.length < 2) {
+				sendError(exchange, 400, "At least two roots are needed.");
+				return;
+			}
+			if(z > MAX_ZOOM || x >= 1L << z || y >= 1L << z) {
+				sendError(exchange, 404, "No such tile.");
+				return;
+			}
+
+			String rootsKey = canonical(roots);
+			String key = rootsKey + "/" + z + "/" + x + "/" + y;
+			String etag = etag(key);
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.getResponseHeaders().set("Cache-Control", "public, max-age=86400");
+
+			String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			if(ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.strip().equals("*"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			NewtonEngine engine = engine(rootsKey, roots);
+			byte[] png = cache.get(key, () -> render(engine, z, x, y));
+
+			exchange.getResponseHeaders().set("Content-Type", "image/png");
+			exchange.sendResponseHeaders(200, png.length);
+			try(OutputStream os = exchange.getResponseBody()) {
+				os.write(png);
+			}
+		} catch (RuntimeException e) {
+			exchange.getResponseHeaders().remove("ETag");
+			exchange.getResponseHeaders().set("Cache-Control", "no-store");
+			sendError(exchange, 500, "Tile could not be rendered.");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * A method which returns the engine for the given roots, creating it if needed.
+	 * @param rootsKey - canonical form of the roots.
+	 * @param roots - the roots.
+	 * @return the engine.
+	 */
+	private NewtonEngine engine(String rootsKey, Complex[] roots) {
+		synchronized(engines) {
+			return engines.computeIfAbsent(rootsKey, k -> Newton.newEngine(roots));
+		}
+	}
+
+	/**
+	 * A method which renders a single tile and encodes it as a PNG image.
+	 * @param engine - engine which calculates the fractal.
+	 * @param z - zoom level.
+	 * @param x - column of the tile.
+	 * @param y - row of the tile.
+	 * @return the encoded tile.
+	 * @throws IllegalStateException if the calculation was aborted or failed, so that
+	 *         an incomplete tile is never cached.
+	 */
+	private static byte[] render(NewtonEngine engine, int z, int x, int y) {
+		double span = 2 * EXTENT / (1L << z);
+		double reMin = -EXTENT + x * span;
+		double imMax = EXTENT - y * span;
+
+		short[] data = new short[TILE_SIZE * TILE_SIZE];
+		AtomicBoolean aborted = new AtomicBoolean();
+		engine.render(reMin, reMin + span, imMax - span, imMax, TILE_SIZE, TILE_SIZE, data, aborted);
+		if(aborted.get()) {
+			throw new IllegalStateException("Calculation of the tile was aborted.");
+		}
+
+		int[] palette = palette(engine.colors());
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+		for(int i = 0; i < data.length; i++) {
+			image.setRGB(i % TILE_SIZE, i / TILE_SIZE, palette[data[i]]);
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(image, "png", bos);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * A method which creates the colors of the tiles, black for points which don't
+	 * converge and evenly spaced hues for the roots.
+	 * @param colors - number of colors.
+	 * @return the colors as RGB values.
+	 */
+	private static int[] palette(int colors) {
+		int[] palette = new int[colors];
+		for(int i = 1; i < colors; i++) {
+			palette[i] = Color.HSBtoRGB((float) (i - 1) / (colors - 1), 0.8f, 1f);
+		}
+		return palette;
+	}
+
+	/**
+	 * A method which parses the roots part of a tile path.
+	 * @param roots - comma-separated roots.
+	 * @return the roots.
+	 * @throws IllegalArgumentException if a root is malformed or isn't finite.
+	 */
+	private static Complex[] parseRoots(String roots) {
+		String[] parts = roots.split(",", -1);
+		Complex[] result = new Complex[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			try {
+				result[i] = Complex.parse(parts[i].strip());
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Malformed root " + parts[i] + ".", e);
+			}
+			if(!Double.isFinite(result[i].getReal()) || !Double.isFinite(result[i].getImaginary())) {
+				throw new IllegalArgumentException("Root " + parts[i] + " isn't finite.");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A method which creates a canonical form of the roots, so that differently
+	 * written but equal roots share the engine and the cached tiles.
+	 * @param roots - the roots.
+	 * @return the canonical form.
+	 */
+	private static String canonical(Complex[] roots) {
+		StringJoiner sj = new StringJoiner(",");
+		for(Complex root : roots) {
+			sj.add(root.toString());
+		}
+		return sj.toString();
+	}
+
+	/**
+	 * A method which calculates the entity tag of a tile. Since a tile only depends on
+	 * its key, the tag can be sent without rendering the tile.
+	 * @param key - key of the tile.
+	 * @return the quoted entity tag.
+	 */
+	private static String etag(String key) {
+		CRC32 crc = new CRC32();
+		crc.update((key + "/" + TILE_SIZE + "/" + NewtonEngine.MAX_ITERATIONS).getBytes(StandardCharsets.UTF_8));
+		return "\"" + Long.toHexString(crc.getValue()) + "\"";
+	}
+
+	/**
+	 * A method which sends a plain text error response.
+	 * @param exchange - the exchange.
+	 * @param status - status code.
+	 * @param message - message of the response.
+	 * @throws IOException if the response can't be sent.
+	 */
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package hr.fer.zemris.java.fractals.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory cache of encoded tiles whose total size is bounded.
+ * When the bound is exceeded the least recently used tiles are evicted.
+ * Concurrent requests for a tile which is not cached are deduplicated,
+ * so only the first of them renders the tile and the others wait for it.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class TileCache {
+
+	/**
+	 * maximum total number of bytes of cached tiles.
+	 */
+	private final long capacity;
+	/**
+	 * cached tiles in least recently used order.
+	 */
+	private final LinkedHashMap<String, byte[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * tiles which are being rendered right now.
+	 */
+	private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+	/**
+	 * total number of bytes of cached tiles.
+	 */
+	private long size;
+	/**
+	 * number of tiles which were rendered.
+	 */
+	private long renders;
+
+	/**
+	 * A constructor which accepts the maximum total size of the cached tiles.
+	 * @param capacity - maximum number of bytes.
+	 * @throws IllegalArgumentException if {@code capacity} is negative.
+	 */
+	public TileCache(long capacity) {
+		if(capacity < 0) {
+			throw new IllegalArgumentException("Capacity can't be negative, got " + capacity + ".");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * A method which returns the tile with the given key, rendering it if it isn't cached.
+	 * If the tile is already being rendered by another thread, waits for that result instead.
+	 * @param key - key of the tile.
+	 * @param renderer - renders the encoded tile.
+	 * @return the encoded tile.
+	 * @throws RuntimeException if rendering fails, with the renderer's exception or error as
+	 *         the cause for waiting threads. Nothing is cached then, and the next request
+	 *         for the tile renders it again.
+	 */
+	public byte[] get(String key, Supplier<byte[]> renderer) {
+		synchronized(this) {
+			byte[] tile = tiles.get(key);
+			if(tile != null) {
+				return tile;
+			}
+		}
+
+		CompletableFuture<byte[]> mine = new CompletableFuture<>();
+		CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, mine);
+		if(existing != null) {
+			try {
+				return existing.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for tile " + key + ".", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Rendering of tile " + key + " failed.", e.getCause());
+			}
+		}
+
+		try {
+			byte[] tile;
+			synchronized(this) {
+				tile = tiles.get(key);
+			}
+			if(tile == null) {
+				tile = renderer.get();
+				put(key, tile);
+			}
+			mine.complete(tile);
+			return tile;
+		} catch (Throwable e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, mine);
+		}
+	}
+
+	/**
+	 * A method which returns the number of tiles this cache has rendered.
+	 * @return number of renders.
+	 */
+	public synchronized long renders() {
+		return renders;
+	}
+
+	/**
+	 * A method which returns the total size of the cached tiles.
+	 * @return number of bytes.
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * A method which caches a freshly rendered tile and evicts the least recently used
+	 * tiles until the cache fits its capacity.
+	 * @param key - key of the tile.
+	 * @param tile - the encoded tile.
+	 */
+	private synchronized void put(String key, byte[] tile) {
+		renders++;
+		if(tile.length > capacity) {
+			return;
+		}
+
+		byte[] old = tiles.put(key, tile);
+		size += tile.length - (old == null ? 0 : old.length);
+
+		Iterator<Map.Entry<String, byte[]>> it = tiles.entrySet().iterator();
+		while(size > capacity && it.hasNext()) {
+			size -= it.next().getValue().length;
+			it.remove();
+		}
+	}
+}
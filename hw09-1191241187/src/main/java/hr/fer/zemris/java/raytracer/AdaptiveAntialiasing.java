@@ -0,0 +1,332 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.raytracer.model.Ray;
+
+/**
+ * An anti-aliasing stage which supersamples only the pixels on edges. A frame is first
+ * rendered with one ray per pixel, together with the object every ray hit. Then every
+ * pixel whose neighbor to the right or below shows a different object or a color which
+ * differs by more than a threshold is marked as an edge, together with that neighbor,
+ * and only the marked pixels are rendered again with {@value #SAMPLES} rays spread over
+ * the pixel, whose average becomes the color of the pixel. Inside objects and in the
+ * background neighboring pixels are alike, so on typical scenes only a small part of
+ * the pixels is supersampled, while edges look as with uniform supersampling.
+ * Both passes run in parallel over bands of rows.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class AdaptiveAntialiasing {
+
+	/**
+	 * number of rays traced for a pixel on an edge.
+	 */
+	public static final int SAMPLES = 8;
+	/**
+	 * color difference above which neighboring pixels are considered an edge if a
+	 * different threshold isn't given.
+	 */
+	public static final int DEFAULT_THRESHOLD = 16;
+	/**
+	 * If the task is to process up to this many rows, then it isn't divided into smaller ones.
+	 */
+	private static final int ROWS = 4;
+	/**
+	 * column offsets of the samples from the center of the pixel, one in every eighth of
+	 * the pixel's width.
+	 */
+	private static final double[] OFFSET_X = new double[SAMPLES];
+	/**
+	 * row offsets of the samples from the center of the pixel, one in every eighth of the
+	 * pixel's height, paired with the columns so that no two samples share a row or a column.
+	 */
+	private static final double[] OFFSET_Y = new double[SAMPLES];
+
+	static {
+		int[] rows = {3, 6, 0, 5, 2, 7, 1, 4};
+		for(int s = 0; s < SAMPLES; s++) {
+			OFFSET_X[s] = (s + 0.5) / SAMPLES - 0.5;
+			OFFSET_Y[s] = (rows[s] + 0.5) / SAMPLES - 0.5;
+		}
+	}
+
+	/**
+	 * largest difference of a color component of neighboring pixels which isn't an edge.
+	 */
+	private final int threshold;
+
+	/**
+	 * A constructor which uses {@link #DEFAULT_THRESHOLD}.
+	 */
+	public AdaptiveAntialiasing() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * A constructor which accepts the color threshold.
+	 * @param threshold - largest difference of a color component of neighboring pixels which isn't an edge.
+	 * @throws IllegalArgumentException if the threshold is negative.
+	 */
+	public AdaptiveAntialiasing(int threshold) {
+		if(threshold < 0) {
+			throw new IllegalArgumentException("Threshold can't be negative.");
+		}
+		this.threshold = threshold;
+	}
+
+	/**
+	 * A method which supersamples the pixels on edges of a frame rendered with one ray per pixel.
+	 * @param tracer - tracer which rendered the frame, prepared for the eye of the camera.
+	 * @param camera - camera of the frame.
+	 * @param objects - object hit by the ray of every pixel, -1 if there is none, may be
+	 *        {@code null} if edges are detected only from the colors.
+	 * @param red - array of red color intensities for each pixel, overwritten on the edges.
+	 * @param green - array of green color intensities for each pixel, overwritten on the edges.
+	 * @param blue - array of blue color intensities for each pixel, overwritten on the edges.
+	 * @param pool - pool on which the passes run.
+	 * @param cancel - supersampling stops once it is set.
+	 * @return number of supersampled pixels.
+	 */
+	public int apply(SceneTracer tracer, Camera camera, int[] objects, short[] red, short[] green, short[] blue,
+			ForkJoinPool pool, AtomicBoolean cancel) {
+		int width = camera.getWidth();
+		int height = camera.getHeight();
+		boolean[] edges = new boolean[width * height];
+		pool.invoke(new EdgeTask(width, objects, red, green, blue, edges, 0, height - 1));
+
+		AtomicInteger supersampled = new AtomicInteger();
+		pool.invoke(new SampleTask(tracer, camera, red, green, blue, edges, supersampled, 0, height - 1, cancel));
+		return supersampled.get();
+	}
+
+	/**
+	 * A method which checks whether two pixels lie on different sides of an edge.
+	 * @param objects - object of every pixel, may be {@code null}.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param p - index of the first pixel.
+	 * @param q - index of the second pixel.
+	 * @return {@code true} if they show different objects or their colors differ by more than the threshold.
+	 */
+	private boolean differ(int[] objects, short[] red, short[] green, short[] blue, int p, int q) {
+		return objects != null && objects[p] != objects[q]
+				|| Math.abs(red[p] - red[q]) > threshold
+				|| Math.abs(green[p] - green[q]) > threshold
+				|| Math.abs(blue[p] - blue[q]) > threshold;
+	}
+
+	/**
+	 * A task which marks the pixels on edges in a band of rows.
+	 */
+	private class EdgeTask extends RecursiveAction {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 8139304713702530781L;
+
+		/**
+		 * width of screen in pixels.
+		 */
+		private int width;
+		/**
+		 * object of every pixel, may be {@code null}.
+		 */
+		private int[] objects;
+		/**
+		 * array of red color intensities for each pixel.
+		 */
+		private short[] red;
+		/**
+		 * array of green color intensities for each pixel.
+		 */
+		private short[] green;
+		/**
+		 * array of blue color intensities for each pixel.
+		 */
+		private short[] blue;
+		/**
+		 * whether every pixel lies on an edge.
+		 */
+		private boolean[] edges;
+		/**
+		 * index of first row this task has to process.
+		 */
+		private int yMin;
+		/**
+		 * index of last row this task has to process.
+		 */
+		private int yMax;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param width - {@code width} variable.
+		 * @param objects - {@code objects} variable.
+		 * @param red - {@code red} variable.
+		 * @param green - {@code green} variable.
+		 * @param blue - {@code blue} variable.
+		 * @param edges - {@code edges} variable.
+		 * @param yMin - {@code yMin} variable.
+		 * @param yMax - {@code yMax} variable.
+		 */
+		EdgeTask(int width, int[] objects, short[] red, short[] green, short[] blue, boolean[] edges,
+				int yMin, int yMax) {
+			this.width = width;
+			this.objects = objects;
+			this.red = red;
+			this.green = green;
+			this.blue = blue;
+			this.edges = edges;
+			this.yMin = yMin;
+			this.yMax = yMax;
+		}
+
+		@Override
+		protected void compute() {
+			if(yMax - yMin > ROWS) {
+				int middle = (yMin + yMax) / 2;
+				invokeAll(new EdgeTask(width, objects, red, green, blue, edges, yMin, middle),
+						new EdgeTask(width, objects, red, green, blue, edges, middle + 1, yMax));
+				return;
+			}
+
+			int last = edges.length / width - 1;
+			for(int y = yMin; y <= yMax; y++) {
+				for(int x = 0; x < width; x++) {
+					int p = y * width + x;
+					if(x + 1 < width && differ(objects, red, green, blue, p, p + 1)) {
+						edges[p] = true;
+						edges[p + 1] = true;
+					}
+					if(y < last && differ(objects, red, green, blue, p, p + width)) {
+						edges[p] = true;
+						edges[p + width] = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A task which supersamples the pixels on edges in a band of rows.
+	 */
+	private static class SampleTask extends RecursiveAction {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = -2605342198450867214L;
+
+		/**
+		 * tracer of the scene which is rendered.
+		 */
+		private SceneTracer tracer;
+		/**
+		 * generator of the rays of the frame.
+		 */
+		private Camera camera;
+		/**
+		 * array of red color intensities for each pixel.
+		 */
+		private short[] red;
+		/**
+		 * array of green color intensities for each pixel.
+		 */
+		private short[] green;
+		/**
+		 * array of blue color intensities for each pixel.
+		 */
+		private short[] blue;
+		/**
+		 * whether every pixel lies on an edge.
+		 */
+		private boolean[] edges;
+		/**
+		 * number of supersampled pixels.
+		 */
+		private AtomicInteger supersampled;
+		/**
+		 * index of first row this task has to process.
+		 */
+		private int yMin;
+		/**
+		 * index of last row this task has to process.
+		 */
+		private int yMax;
+		/**
+		 * mutex variable, supersampling stops once it is set.
+		 */
+		private AtomicBoolean cancel;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param tracer - {@code tracer} variable.
+		 * @param camera - {@code camera} variable.
+		 * @param red - {@code red} variable.
+		 * @param green - {@code green} variable.
+		 * @param blue - {@code blue} variable.
+		 * @param edges - {@code edges} variable.
+		 * @param supersampled - {@code supersampled} variable.
+		 * @param yMin - {@code yMin} variable.
+		 * @param yMax - {@code yMax} variable.
+		 * @param cancel - {@code cancel} variable.
+		 */
+		SampleTask(SceneTracer tracer, Camera camera, short[] red, short[] green, short[] blue, boolean[] edges,
+				AtomicInteger supersampled, int yMin, int yMax, AtomicBoolean cancel) {
+			this.tracer = tracer;
+			this.camera = camera;
+			this.red = red;
+			this.green = green;
+			this.blue = blue;
+			this.edges = edges;
+			this.supersampled = supersampled;
+			this.yMin = yMin;
+			this.yMax = yMax;
+			this.cancel = cancel;
+		}
+
+		@Override
+		protected void compute() {
+			if(cancel.get()) {
+				return;
+			}
+			if(yMax - yMin > ROWS) {
+				int middle = (yMin + yMax) / 2;
+				invokeAll(new SampleTask(tracer, camera, red, green, blue, edges, supersampled, yMin, middle, cancel),
+						new SampleTask(tracer, camera, red, green, blue, edges, supersampled, middle + 1, yMax, cancel));
+				return;
+			}
+
+			int width = camera.getWidth();
+			Ray ray = camera.newRay();
+			short[] rgb = new short[3];
+			int count = 0;
+			for(int y = yMin; y <= yMax; y++) {
+				for(int x = 0; x < width; x++) {
+					int p = y * width + x;
+					if(!edges[p]) {
+						continue;
+					}
+					int r = 0, g = 0, b = 0;
+					for(int s = 0; s < SAMPLES; s++) {
+						camera.setRay(ray, x + OFFSET_X[s], y + OFFSET_Y[s]);
+						tracer.tracer(ray, rgb);
+						r += Math.min(rgb[0], 255);
+						g += Math.min(rgb[1], 255);
+						b += Math.min(rgb[2], 255);
+					}
+					red[p] = (short) ((r + SAMPLES / 2) / SAMPLES);
+					green[p] = (short) ((g + SAMPLES / 2) / SAMPLES);
+					blue[p] = (short) ((b + SAMPLES / 2) / SAMPLES);
+					count++;
+				}
+			}
+			supersampled.addAndGet(count);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A frame whose pixels are packed into one {@code int} each, with 8 bits of alpha, red,
+ * green and blue from the highest to the lowest byte. The array of the pixels is the
+ * {@link DataBufferInt} of a {@link BufferedImage}, so whatever is written into it can be
+ * drawn without copying or converting it, and a pixel is one write instead of three writes
+ * into separate arrays of red, green and blue. Java2D doesn't accelerate images whose data
+ * is accessed directly, which doesn't matter for an image which changes every frame.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class ArgbFrame {
+
+	/**
+	 * alpha of every pixel, which is always opaque.
+	 */
+	private static final int OPAQUE = 0xFF000000;
+
+	/**
+	 * image which shares the pixels.
+	 */
+	private final BufferedImage image;
+	/**
+	 * packed pixels, row after row.
+	 */
+	private final int[] pixels;
+
+	/**
+	 * A constructor which creates a black frame.
+	 * @param width - width of the frame in pixels.
+	 * @param height - height of the frame in pixels.
+	 */
+	public ArgbFrame(int width, int height) {
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * A method which packs a color, limiting its components to 255 as the ray casters do.
+	 * @param red - red intensity.
+	 * @param green - green intensity.
+	 * @param blue - blue intensity.
+	 * @return the packed pixel.
+	 */
+	public static int pack(int red, int green, int blue) {
+		return OPAQUE | (red > 255 ? 255 : red) << 16 | (green > 255 ? 255 : green) << 8 | (blue > 255 ? 255 : blue);
+	}
+
+	/**
+	 * A method which copies the pixels into separate arrays of red, green and blue, as
+	 * {@link hr.fer.zemris.java.raytracer.model.IRayTracerResultObserver} expects them.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 */
+	public void unpack(short[] red, short[] green, short[] blue) {
+		for(int k = 0; k < pixels.length; k++) {
+			int pixel = pixels[k];
+			red[k] = (short) (pixel >> 16 & 0xFF);
+			green[k] = (short) (pixel >> 8 & 0xFF);
+			blue[k] = (short) (pixel & 0xFF);
+		}
+	}
+
+	/**
+	 * A getter for the packed pixels, which are also the data of {@link #getImage()}.
+	 * @return the pixels, row after row.
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * A getter for the image which shares the pixels.
+	 * @return the image.
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * A getter for the width of the frame.
+	 * @return width in pixels.
+	 */
+	public int getWidth() {
+		return image.getWidth();
+	}
+
+	/**
+	 * A getter for the height of the frame.
+	 * @return height in pixels.
+	 */
+	public int getHeight() {
+		return image.getHeight();
+	}
+}
@@ -0,0 +1,38 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.IRayTracerResultObserver;
+
+/**
+ * An observer which receives rendered frames as an {@link ArgbFrame}, whose image can be
+ * drawn as it is. Observers which expect separate arrays of red, green and blue are
+ * supported through {@link #adapting(IRayTracerResultObserver)}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+@FunctionalInterface
+public interface ArgbResultObserver {
+
+	/**
+	 * A method which is called once a frame has been rendered.
+	 * @param frame - the frame, which mustn't be changed until the observer is done with it.
+	 * @param requestNo - number of the request the frame was rendered for.
+	 */
+	void acceptResult(ArgbFrame frame, long requestNo);
+
+	/**
+	 * A method which creates an observer which unpacks every frame into new arrays of red,
+	 * green and blue and passes them on.
+	 * @param observer - observer which receives the arrays.
+	 * @return new ArgbResultObserver
+	 */
+	static ArgbResultObserver adapting(IRayTracerResultObserver observer) {
+		return (frame, requestNo) -> {
+			int pixels = frame.getWidth() * frame.getHeight();
+			short[] red = new short[pixels];
+			short[] green = new short[pixels];
+			short[] blue = new short[pixels];
+			frame.unpack(red, green, blue);
+			observer.acceptResult(red, green, blue, requestNo);
+		};
+	}
+}
@@ -0,0 +1,586 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+
+/**
+ * A bounding volume hierarchy over axis-aligned bounds of a {@link PrimitiveSet}.
+ * The tree is built with the surface area heuristic over binned centroids,
+ * its subtrees are built in parallel, and it is finally flattened into
+ * arrays which are traversed without creating any objects. The primitives are
+ * reordered so that every leaf references a consecutive range of them.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class BoundingVolumeHierarchy implements SpatialIndex {
+
+	/**
+	 * number of bins in which centroids are sorted when searching for the best split.
+	 */
+	private static final int BINS = 16;
+	/**
+	 * nodes with at most this many objects are never split.
+	 */
+	private static final int MAX_LEAF_SIZE = 2;
+	/**
+	 * subtrees with fewer objects than this are built on the current thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 4096;
+	/**
+	 * cost of visiting a node relative to the cost of one intersection test.
+	 */
+	private static final double TRAVERSAL_COST = 1;
+	/**
+	 * maximum depth of the traversal stack.
+	 */
+	private static final int STACK_SIZE = 64;
+
+	/**
+	 * primitives in the order in which the leaves reference them.
+	 */
+	private final PrimitiveSet primitives;
+	/**
+	 * bounds of every node, six values per node: minimum x, y, z and maximum x, y, z.
+	 */
+	private final double[] nodeBounds;
+	/**
+	 * for inner nodes index of the second child (the first one directly follows the node),
+	 * for leaves index of the first object.
+	 */
+	private final int[] nodeOffset;
+	/**
+	 * number of objects in a leaf, zero for inner nodes.
+	 */
+	private final int[] nodeCount;
+
+	/**
+	 * A constructor which builds the hierarchy over the given primitives.
+	 * @param primitives - primitives which are placed into the hierarchy.
+	 * @param pool - pool on which the hierarchy is built.
+	 */
+	public BoundingVolumeHierarchy(PrimitiveSet primitives, ForkJoinPool pool) {
+		int n = primitives.size();
+		double[] bounds = new double[6 * n];
+		double[] centroids = new double[3 * n];
+		int[] indices = new int[n];
+		for(int k = 0; k < n; k++) {
+			primitives.getBounds(k, bounds, 6 * k);
+			for(int axis = 0; axis < 3; axis++) {
+				centroids[3 * k + axis] = (bounds[6 * k + axis] + bounds[6 * k + axis + 3]) / 2;
+			}
+			indices[k] = k;
+		}
+
+		Node root = n == 0 ? null : pool.invoke(new BuildTask(bounds, centroids, indices, 0, n));
+		int nodes = root == null ? 0 : root.size;
+
+		this.primitives = primitives.permute(indices);
+		this.nodeBounds = new double[6 * nodes];
+		this.nodeOffset = new int[nodes];
+		this.nodeCount = new int[nodes];
+		if(root != null) {
+			flatten(root, 0);
+		}
+	}
+
+	/**
+	 * A constructor which creates a hierarchy sharing the nodes of another one.
+	 * @param other - hierarchy whose nodes are shared.
+	 * @param primitives - primitives in the same order as those of the other hierarchy.
+	 */
+	private BoundingVolumeHierarchy(BoundingVolumeHierarchy other, PrimitiveSet primitives) {
+		this.primitives = primitives;
+		this.nodeBounds = other.nodeBounds;
+		this.nodeOffset = other.nodeOffset;
+		this.nodeCount = other.nodeCount;
+	}
+
+	/**
+	 * A method which creates a hierarchy with the same nodes over a view of its primitives.
+	 * @param primitives - primitives in the same order as those of this hierarchy,
+	 *        such as {@link PrimitiveSet#relativeTo(Point3D)} of {@link #getPrimitives()}.
+	 * @return the new hierarchy.
+	 */
+	@Override
+	public BoundingVolumeHierarchy withPrimitives(PrimitiveSet primitives) {
+		return new BoundingVolumeHierarchy(this, primitives);
+	}
+
+	/**
+	 * A getter for the number of nodes of this hierarchy.
+	 * @return number of nodes.
+	 */
+	public int nodes() {
+		return nodeCount.length;
+	}
+
+	/**
+	 * A getter for the primitives in the order in which the indices returned by
+	 * {@link #findClosest(Ray, double[])} and {@link #findAnyHit(Ray, double)} reference them.
+	 * @return the primitives.
+	 */
+	@Override
+	public PrimitiveSet getPrimitives() {
+		return primitives;
+	}
+
+	/**
+	 * A method which creates the intersection of the primitive with the given index.
+	 * @param index - index of the primitive, as returned by {@link #findClosest(Ray, double[])}.
+	 * @param ray - ray which is followed.
+	 * @param distance - distance of the intersection from the ray's start.
+	 * @return the intersection.
+	 */
+	@Override
+	public RayIntersection intersectionAt(int index, Ray ray, double distance) {
+		return primitives.intersectionAt(index, ray, distance);
+	}
+
+	/**
+	 * A method which checks whether the primitive with the given index blocks the segment of the ray.
+	 * @param index - index of the primitive, as returned by {@link #findAnyHit(Ray, double)}.
+	 * @param ray - ray which is followed.
+	 * @param maxDistance - length of the segment.
+	 * @return {@code true} if the segment is blocked, {@code false} otherwise.
+	 */
+	@Override
+	public boolean occludes(int index, Ray ray, double maxDistance) {
+		return primitives.occludes(index, ray, maxDistance);
+	}
+
+	/**
+	 * A method which finds the object whose intersection with the ray is the closest one
+	 * which is nearer than {@code distance[0]}.
+	 * @param ray - ray which is followed.
+	 * @param distance - on input the maximum distance, on output the distance to the found object.
+	 * @return index of the found object, or -1 if there is none.
+	 */
+	@Override
+	public int findClosest(Ray ray, double[] distance) {
+		if(nodeCount.length == 0) {
+			return -1;
+		}
+
+		double ox = ray.start.x, oy = ray.start.y, oz = ray.start.z;
+		double ix = 1 / ray.direction.x, iy = 1 / ray.direction.y, iz = 1 / ray.direction.z;
+		double best = distance[0];
+		int bestIndex = -1;
+
+		int[] stack = new int[STACK_SIZE];
+		double[] entries = new double[STACK_SIZE];
+		int top = 0;
+		stack[top] = 0;
+		entries[top++] = enter(0, ox, oy, oz, ix, iy, iz, best);
+		while(top > 0) {
+			int node = stack[--top];
+			if(entries[top] >= best) {
+				continue;
+			}
+
+			int count = nodeCount[node];
+			if(count > 0) {
+				int first = nodeOffset[node];
+				for(int k = first; k < first + count; k++) {
+					double d = primitives.findClosestRayDistance(k, ray, 0, best);
+					if(d < best) {
+						best = d;
+						bestIndex = k;
+					}
+				}
+				continue;
+			}
+
+			int near = node + 1;
+			int far = nodeOffset[node];
+			double tNear = enter(near, ox, oy, oz, ix, iy, iz, best);
+			double tFar = enter(far, ox, oy, oz, ix, iy, iz, best);
+			if(tNear > tFar) {
+				int swap = near;
+				near = far;
+				far = swap;
+				double t = tNear;
+				tNear = tFar;
+				tFar = t;
+			}
+			if(tFar < best) {
+				stack[top] = far;
+				entries[top++] = tFar;
+			}
+			if(tNear < best) {
+				stack[top] = near;
+				entries[top++] = tNear;
+			}
+		}
+
+		distance[0] = best;
+		return bestIndex;
+	}
+
+	/**
+	 * A method which finds the closest intersection of every ray of the packet, starting
+	 * from the distances and indices already recorded in it. A node is visited once for all
+	 * the rays which may hit something in it, so coherent rays share most of the traversal.
+	 * @param packet - the packet.
+	 */
+	@Override
+	public void findClosest(RayPacket packet) {
+		if(nodeCount.length == 0 || packet.size() == 0) {
+			return;
+		}
+
+		int[] stack = new int[STACK_SIZE];
+		long[] masks = new long[STACK_SIZE];
+		int top = 0;
+		stack[top] = 0;
+		masks[top++] = packet.all();
+		while(top > 0) {
+			int node = stack[--top];
+			long mask = packet.enter(nodeBounds, 6 * node, masks[top]);
+			if(mask == 0) {
+				continue;
+			}
+
+			int count = nodeCount[node];
+			if(count > 0) {
+				int first = nodeOffset[node];
+				for(int k = first; k < first + count; k++) {
+					primitives.findClosestRayDistances(k, packet, mask);
+				}
+				continue;
+			}
+
+			int r = Long.numberOfTrailingZeros(mask);
+			double ox = packet.ox[r], oy = packet.oy[r], oz = packet.oz[r];
+			double ix = packet.ix[r], iy = packet.iy[r], iz = packet.iz[r];
+			int near = node + 1;
+			int far = nodeOffset[node];
+			if(enter(near, ox, oy, oz, ix, iy, iz, packet.distance[r])
+					> enter(far, ox, oy, oz, ix, iy, iz, packet.distance[r])) {
+				int swap = near;
+				near = far;
+				far = swap;
+			}
+			stack[top] = far;
+			masks[top++] = mask;
+			stack[top] = near;
+			masks[top++] = mask;
+		}
+	}
+
+	/**
+	 * A method which finds any object which intersects the ray closer than the given
+	 * distance. The traversal stops at the first such object.
+	 * @param ray - ray which is followed.
+	 * @param maxDistance - length of the tested segment of the ray.
+	 * @return index of the found object, or -1 if there is none.
+	 */
+	@Override
+	public int findAnyHit(Ray ray, double maxDistance) {
+		if(nodeCount.length == 0) {
+			return -1;
+		}
+
+		double ox = ray.start.x, oy = ray.start.y, oz = ray.start.z;
+		double ix = 1 / ray.direction.x, iy = 1 / ray.direction.y, iz = 1 / ray.direction.z;
+
+		int[] stack = new int[STACK_SIZE];
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0) {
+			int node = stack[--top];
+			if(enter(node, ox, oy, oz, ix, iy, iz, maxDistance) >= maxDistance) {
+				continue;
+			}
+
+			int count = nodeCount[node];
+			if(count > 0) {
+				int first = nodeOffset[node];
+				for(int k = first; k < first + count; k++) {
+					if(primitives.occludes(k, ray, maxDistance)) {
+						return k;
+					}
+				}
+				continue;
+			}
+
+			stack[top++] = nodeOffset[node];
+			stack[top++] = node + 1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * A method which calculates the distance at which the ray enters the bounds of a node.
+	 * @param node - index of the node.
+	 * @param ox - x coordinate of the ray's start.
+	 * @param oy - y coordinate of the ray's start.
+	 * @param oz - z coordinate of the ray's start.
+	 * @param ix - inverse of the x coordinate of the ray's direction.
+	 * @param iy - inverse of the y coordinate of the ray's direction.
+	 * @param iz - inverse of the z coordinate of the ray's direction.
+	 * @param max - distance beyond which the bounds are not interesting.
+	 * @return the distance, or {@link Double#POSITIVE_INFINITY} if the ray misses the bounds
+	 *         before {@code max}.
+	 */
+	private double enter(int node, double ox, double oy, double oz, double ix, double iy, double iz, double max) {
+		int b = 6 * node;
+		double t1 = (nodeBounds[b] - ox) * ix, t2 = (nodeBounds[b + 3] - ox) * ix;
+		double tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+		t1 = (nodeBounds[b + 1] - oy) * iy;
+		t2 = (nodeBounds[b + 4] - oy) * iy;
+		tMin = Math.max(tMin, Math.min(t1, t2));
+		tMax = Math.min(tMax, Math.max(t1, t2));
+		t1 = (nodeBounds[b + 2] - oz) * iz;
+		t2 = (nodeBounds[b + 5] - oz) * iz;
+		tMin = Math.max(tMin, Math.min(t1, t2));
+		tMax = Math.min(tMax, Math.max(t1, t2));
+
+		if(tMax < Math.max(tMin, 0) || tMin > max) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return tMin;
+	}
+
+	/**
+	 * A method which copies a built subtree into the node arrays in depth-first order.
+	 * @param node - root of the subtree.
+	 * @param index - index at which the root is stored.
+	 */
+	private void flatten(Node node, int index) {
+		System.arraycopy(node.bounds, 0, nodeBounds, 6 * index, 6);
+		if(node.left == null) {
+			nodeOffset[index] = node.first;
+			nodeCount[index] = node.count;
+			return;
+		}
+
+		int second = index + 1 + node.left.size;
+		nodeOffset[index] = second;
+		flatten(node.left, index + 1);
+		flatten(node.right, second);
+	}
+
+	/**
+	 * A node of the hierarchy while it is being built.
+	 */
+	private static class Node {
+		/**
+		 * bounds of the node.
+		 */
+		double[] bounds;
+		/**
+		 * children of an inner node, {@code null} for leaves.
+		 */
+		Node left, right;
+		/**
+		 * index of the first object of a leaf.
+		 */
+		int first;
+		/**
+		 * number of objects of a leaf.
+		 */
+		int count;
+		/**
+		 * number of nodes in the subtree of this node.
+		 */
+		int size;
+	}
+
+	/**
+	 * A task which builds the subtree over a range of objects, splitting it where
+	 * the surface area heuristic is the lowest.
+	 */
+	private static class BuildTask extends RecursiveTask<Node> {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 2893018735469210237L;
+
+		/**
+		 * bounds of all objects.
+		 */
+		private double[] bounds;
+		/**
+		 * centroids of all objects.
+		 */
+		private double[] centroids;
+		/**
+		 * indices of objects, partitioned in place.
+		 */
+		private int[] indices;
+		/**
+		 * first position in {@code indices} of this subtree.
+		 */
+		private int from;
+		/**
+		 * position after the last one in {@code indices} of this subtree.
+		 */
+		private int to;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param bounds - {@code bounds} variable.
+		 * @param centroids - {@code centroids} variable.
+		 * @param indices - {@code indices} variable.
+		 * @param from - {@code from} variable.
+		 * @param to - {@code to} variable.
+		 */
+		BuildTask(double[] bounds, double[] centroids, int[] indices, int from, int to) {
+			this.bounds = bounds;
+			this.centroids = centroids;
+			this.indices = indices;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Node compute() {
+			Node node = new Node();
+			node.bounds = empty();
+			double[] centroidBounds = empty();
+			for(int k = from; k < to; k++) {
+				int o = indices[k];
+				grow(node.bounds, bounds, 6 * o, 6 * o + 3);
+				grow(centroidBounds, centroids, 3 * o, 3 * o);
+			}
+
+			int count = to - from;
+			int axis = -1;
+			int split = -1;
+			double bestCost = count;
+			if(count > MAX_LEAF_SIZE) {
+				double parentArea = area(node.bounds);
+				for(int a = 0; a < 3; a++) {
+					double lo = centroidBounds[a], extent = centroidBounds[a + 3] - lo;
+					if(extent <= 0) {
+						continue;
+					}
+
+					int[] binCount = new int[BINS];
+					double[][] binBounds = new double[BINS][];
+					for(int b = 0; b < BINS; b++) {
+						binBounds[b] = empty();
+					}
+					for(int k = from; k < to; k++) {
+						int o = indices[k];
+						int b = bin(centroids[3 * o + a], lo, extent);
+						binCount[b]++;
+						grow(binBounds[b], bounds, 6 * o, 6 * o + 3);
+					}
+
+					double[] rightArea = new double[BINS];
+					int[] rightCount = new int[BINS];
+					double[] acc = empty();
+					int accCount = 0;
+					for(int b = BINS - 1; b > 0; b--) {
+						grow(acc, binBounds[b], 0, 3);
+						accCount += binCount[b];
+						rightArea[b] = area(acc);
+						rightCount[b] = accCount;
+					}
+
+					acc = empty();
+					accCount = 0;
+					for(int b = 0; b < BINS - 1; b++) {
+						grow(acc, binBounds[b], 0, 3);
+						accCount += binCount[b];
+						if(accCount == 0 || rightCount[b + 1] == 0) {
+							continue;
+						}
+						double cost = TRAVERSAL_COST
+								+ (area(acc) * accCount + rightArea[b + 1] * rightCount[b + 1]) / parentArea;
+						if(cost < bestCost) {
+							bestCost = cost;
+							axis = a;
+							split = b;
+						}
+					}
+				}
+			}
+
+			if(axis < 0) {
+				node.first = from;
+				node.count = count;
+				node.size = 1;
+				return node;
+			}
+
+			double lo = centroidBounds[axis], extent = centroidBounds[axis + 3] - lo;
+			int middle = from;
+			for(int k = from; k < to; k++) {
+				int o = indices[k];
+				if(bin(centroids[3 * o + axis], lo, extent) <= split) {
+					indices[k] = indices[middle];
+					indices[middle++] = o;
+				}
+			}
+
+			BuildTask left = new BuildTask(bounds, centroids, indices, from, middle);
+			BuildTask right = new BuildTask(bounds, centroids, indices, middle, to);
+			if(count >= PARALLEL_THRESHOLD) {
+				left.fork();
+				node.right = right.compute();
+				node.left = left.join();
+			} else {
+				node.left = left.compute();
+				node.right = right.compute();
+			}
+			node.size = 1 + node.left.size + node.right.size;
+			return node;
+		}
+
+		/**
+		 * A method which finds the bin of a centroid coordinate.
+		 * @param value - the coordinate.
+		 * @param lo - lowest coordinate of all centroids.
+		 * @param extent - range of coordinates of all centroids.
+		 * @return index of the bin.
+		 */
+		private static int bin(double value, double lo, double extent) {
+			int b = (int) ((value - lo) / extent * BINS);
+			return b >= BINS ? BINS - 1 : b;
+		}
+
+		/**
+		 * A method which creates bounds which contain nothing.
+		 * @return the bounds.
+		 */
+		private static double[] empty() {
+			double inf = Double.POSITIVE_INFINITY;
+			return new double[] {inf, inf, inf, -inf, -inf, -inf};
+		}
+
+		/**
+		 * A method which grows the bounds so that they contain the given box.
+		 * @param target - bounds which are grown.
+		 * @param source - array containing the box.
+		 * @param min - position of the box's minimum corner.
+		 * @param max - position of the box's maximum corner.
+		 */
+		private static void grow(double[] target, double[] source, int min, int max) {
+			for(int a = 0; a < 3; a++) {
+				target[a] = Math.min(target[a], source[min + a]);
+				target[a + 3] = Math.max(target[a + 3], source[max + a]);
+			}
+		}
+
+		/**
+		 * A method which calculates the surface area of the bounds.
+		 * @param b - the bounds.
+		 * @return the surface area, zero for empty bounds.
+		 */
+		private static double area(double[] b) {
+			double dx = b[3] - b[0], dy = b[4] - b[1], dz = b[5] - b[2];
+			if(dx < 0 || dy < 0 || dz < 0) {
+				return 0;
+			}
+			return 2 * (dx * dy + dy * dz + dz * dx);
+		}
+	}
+}
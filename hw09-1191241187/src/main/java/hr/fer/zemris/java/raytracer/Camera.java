@@ -0,0 +1,225 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+
+/**
+ * A class which generates the primary rays of a frame. The position of every column
+ * and the offset of every row on the screen are calculated once per frame, so a ray
+ * is produced with a few additions and a normalization, without creating any objects.
+ * Directions are calculated in the same order of operations as
+ * {@link Ray#fromPoints(Point3D, Point3D)} through the screen point, so the rays are
+ * exactly the same.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class Camera {
+
+	/**
+	 * Vectors shorter than this are normalized to the zero vector.
+	 */
+	private static final double EPSILON = 1E-9;
+
+	/**
+	 * vector of viewer's position.
+	 */
+	private final Point3D eye;
+	/**
+	 * unit vector from the eye towards the center of the screen.
+	 */
+	final Point3D forward;
+	/**
+	 * x-axis vector of the screen.
+	 */
+	final Point3D right;
+	/**
+	 * y-axis vector of the screen.
+	 */
+	final Point3D up;
+	/**
+	 * distance from the eye to the screen.
+	 */
+	final double distance;
+	/**
+	 * width of space which is shown.
+	 */
+	final double horizontal;
+	/**
+	 * height of space which is shown.
+	 */
+	final double vertical;
+	/**
+	 * width of screen in pixels.
+	 */
+	private final int width;
+	/**
+	 * height of screen in pixels.
+	 */
+	private final int height;
+	/**
+	 * x, y and z coordinates of the top of every column of the screen.
+	 */
+	private final double[] columnX, columnY, columnZ;
+	/**
+	 * x, y and z coordinates of the offset of every row from the top of the screen.
+	 */
+	private final double[] rowX, rowY, rowZ;
+	/**
+	 * x, y and z coordinates of the top left corner of the screen.
+	 */
+	private final double cornerX, cornerY, cornerZ;
+	/**
+	 * x, y and z coordinates of the distance between neighboring columns.
+	 */
+	private final double columnStepX, columnStepY, columnStepZ;
+	/**
+	 * x, y and z coordinates of the distance between neighboring rows.
+	 */
+	private final double rowStepX, rowStepY, rowStepZ;
+
+	/**
+	 * A constructor which prepares the rays of a frame.
+	 * @param eye - vector of viewer's position.
+	 * @param view - point the viewer looks at, the center of the screen.
+	 * @param viewUp - approximate up direction.
+	 * @param horizontal - width of space which is shown.
+	 * @param vertical - height of space which is shown.
+	 * @param width - width of screen in pixels.
+	 * @param height - height of screen in pixels.
+	 */
+	public Camera(Point3D eye, Point3D view, Point3D viewUp, double horizontal, double vertical,
+			int width, int height) {
+		this.eye = eye;
+		this.width = width;
+		this.height = height;
+
+		Point3D og = view.sub(eye).modifyNormalize();
+		Point3D vuv = viewUp.normalize();
+
+		Point3D j = vuv.sub(og.scalarMultiply(vuv.scalarProduct(og))).modifyNormalize();
+		Point3D i = og.vectorProduct(j).modifyNormalize();
+
+		Point3D screenCorner = view.sub(i.scalarMultiply(horizontal / (double) 2))
+								.add(j.scalarMultiply(vertical / (double) 2));
+
+		this.forward = og;
+		this.right = i;
+		this.up = j;
+		this.distance = view.sub(eye).scalarProduct(og);
+		this.horizontal = horizontal;
+		this.vertical = vertical;
+
+		columnX = new double[width];
+		columnY = new double[width];
+		columnZ = new double[width];
+		for(int x = 0; x < width; x++) {
+			double s = horizontal * x / (double) (width - 1);
+			columnX[x] = screenCorner.x + i.x * s;
+			columnY[x] = screenCorner.y + i.y * s;
+			columnZ[x] = screenCorner.z + i.z * s;
+		}
+
+		cornerX = screenCorner.x;
+		cornerY = screenCorner.y;
+		cornerZ = screenCorner.z;
+		double columnScale = horizontal / (double) (width - 1);
+		columnStepX = i.x * columnScale;
+		columnStepY = i.y * columnScale;
+		columnStepZ = i.z * columnScale;
+		double rowScale = vertical / (double) (height - 1);
+		rowStepX = j.x * rowScale;
+		rowStepY = j.y * rowScale;
+		rowStepZ = j.z * rowScale;
+
+		rowX = new double[height];
+		rowY = new double[height];
+		rowZ = new double[height];
+		for(int y = 0; y < height; y++) {
+			double t = vertical * y / (double) (height - 1);
+			rowX[y] = j.x * t;
+			rowY[y] = j.y * t;
+			rowZ[y] = j.z * t;
+		}
+	}
+
+	/**
+	 * A getter for the viewer's position.
+	 * @return the eye.
+	 */
+	public Point3D getEye() {
+		return eye;
+	}
+
+	/**
+	 * A getter for the width of the screen.
+	 * @return width in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * A getter for the height of the screen.
+	 * @return height in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * A method which creates a reusable ray starting at the eye.
+	 * @return the ray.
+	 */
+	public Ray newRay() {
+		return new Ray(eye, new Point3D());
+	}
+
+	/**
+	 * A method which turns the given ray into the primary ray of a pixel, overwriting
+	 * its direction in place.
+	 * @param ray - ray which is overwritten.
+	 * @param x - column of the pixel.
+	 * @param y - row of the pixel.
+	 */
+	public void setRay(Ray ray, int x, int y) {
+		setDirection(ray, columnX[x] - rowX[y] - eye.x, columnY[x] - rowY[y] - eye.y, columnZ[x] - rowZ[y] - eye.z);
+	}
+
+	/**
+	 * A method which turns the given ray into the ray through a point of the screen given
+	 * in pixels, such as a sample inside a pixel, overwriting its direction in place.
+	 * @param ray - ray which is overwritten.
+	 * @param x - column coordinate, the centers of the pixels lie at whole numbers.
+	 * @param y - row coordinate, the centers of the pixels lie at whole numbers.
+	 */
+	public void setRay(Ray ray, double x, double y) {
+		setDirection(ray,
+				cornerX + columnStepX * x - rowStepX * y - eye.x,
+				cornerY + columnStepY * x - rowStepY * y - eye.y,
+				cornerZ + columnStepZ * x - rowStepZ * y - eye.z);
+	}
+
+	/**
+	 * A method which sets the start of the given ray to the eye and its direction to
+	 * the normalized given vector.
+	 * @param ray - ray which is overwritten.
+	 * @param dx - x coordinate of the direction.
+	 * @param dy - y coordinate of the direction.
+	 * @param dz - z coordinate of the direction.
+	 */
+	private void setDirection(Ray ray, double dx, double dy, double dz) {
+		double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+		Point3D direction = ray.direction;
+		if(norm < EPSILON) {
+			direction.x = 0;
+			direction.y = 0;
+			direction.z = 0;
+		} else {
+			direction.x = dx / norm;
+			direction.y = dy / norm;
+			direction.z = dz / norm;
+		}
+		ray.start = eye;
+	}
+}
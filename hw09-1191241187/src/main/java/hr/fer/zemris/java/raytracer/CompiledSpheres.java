@@ -0,0 +1,562 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+import hr.fer.zemris.java.raytracer.model.Sphere;
+
+/**
+ * A {@link PrimitiveSet} of spheres packed into plain arrays: the centers,
+ * the squared radii and the index of the material of every sphere. Spheres
+ * usually share a few materials, so every distinct material is stored only once.
+ * A sphere takes 36 bytes, so millions of them fit into a modest heap, and
+ * intersection tests read consecutive memory without any virtual calls.
+ * A view {@link #relativeTo(Point3D) relative to} the eye additionally keeps the
+ * offsets of the eye from every center, so a primary ray is tested with one dot
+ * product, the discriminant and a square root. The square root is skipped when the
+ * discriminant already shows that both intersections lie outside the searched
+ * interval of distances, which is common once a close hit has been found.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class CompiledSpheres implements PrimitiveSet {
+
+	/**
+	 * Two double are considered equal if their difference is smaller than this constant.
+	 */
+	private static final double EPSILON = 1E-9;
+	/**
+	 * number of values of a material: kdr, kdg, kdb, krr, krg, krb and krn.
+	 */
+	private static final int MATERIAL_SIZE = 7;
+
+	/**
+	 * x, y and z coordinates of the center of every sphere.
+	 */
+	private final double[] centers;
+	/**
+	 * squared radius of every sphere.
+	 */
+	private final double[] radii2;
+	/**
+	 * index of the material of every sphere.
+	 */
+	private final int[] materialIndices;
+	/**
+	 * values of every distinct material.
+	 */
+	private final double[] materials;
+	/**
+	 * common start of the rays the offsets are calculated for, {@code null} if there are none.
+	 */
+	private final Point3D origin;
+	/**
+	 * x, y and z coordinates of {@code origin} relative to the center of every sphere.
+	 */
+	private final double[] offsets;
+	/**
+	 * squared length of the offset of every sphere.
+	 */
+	private final double[] offsets2;
+	/**
+	 * counters of intersection tests, {@code null} if tests aren't counted.
+	 */
+	private final IntersectionCounter counter;
+
+	/**
+	 * A constructor which accepts all the relevant data.
+	 * @param centers - {@code centers} variable.
+	 * @param radii2 - {@code radii2} variable.
+	 * @param materialIndices - {@code materialIndices} variable.
+	 * @param materials - {@code materials} variable.
+	 */
+	private CompiledSpheres(double[] centers, double[] radii2, int[] materialIndices, double[] materials) {
+		this.centers = centers;
+		this.radii2 = radii2;
+		this.materialIndices = materialIndices;
+		this.materials = materials;
+		this.origin = null;
+		this.offsets = null;
+		this.offsets2 = null;
+		this.counter = null;
+	}
+
+	/**
+	 * A constructor which creates a view of the spheres relative to the given origin.
+	 * @param spheres - the spheres.
+	 * @param origin - common start of the rays.
+	 */
+	private CompiledSpheres(CompiledSpheres spheres, Point3D origin) {
+		this.centers = spheres.centers;
+		this.radii2 = spheres.radii2;
+		this.materialIndices = spheres.materialIndices;
+		this.materials = spheres.materials;
+		this.origin = origin;
+		this.counter = spheres.counter;
+
+		int n = radii2.length;
+		this.offsets = new double[3 * n];
+		this.offsets2 = new double[n];
+		for(int k = 0; k < n; k++) {
+			int c = 3 * k;
+			double ox = origin.x - centers[c];
+			double oy = origin.y - centers[c + 1];
+			double oz = origin.z - centers[c + 2];
+			offsets[c] = ox;
+			offsets[c + 1] = oy;
+			offsets[c + 2] = oz;
+			offsets2[k] = ox * ox + oy * oy + oz * oz;
+		}
+	}
+
+	/**
+	 * A constructor which creates a view of the spheres which counts its intersection tests.
+	 * @param spheres - the spheres.
+	 * @param counter - counters of intersection tests.
+	 */
+	private CompiledSpheres(CompiledSpheres spheres, IntersectionCounter counter) {
+		this.centers = spheres.centers;
+		this.radii2 = spheres.radii2;
+		this.materialIndices = spheres.materialIndices;
+		this.materials = spheres.materials;
+		this.origin = spheres.origin;
+		this.offsets = spheres.offsets;
+		this.offsets2 = spheres.offsets2;
+		this.counter = counter;
+	}
+
+	/**
+	 * A method which packs the given spheres.
+	 * @param spheres - the spheres.
+	 * @return the packed spheres.
+	 */
+	public static CompiledSpheres compile(List<Sphere> spheres) {
+		Builder builder = new Builder(spheres.size());
+		for(Sphere sphere : spheres) {
+			Point3D center = sphere.getCenter();
+			builder.add(center.x, center.y, center.z, sphere.getRadius(),
+					sphere.getKdr(), sphere.getKdg(), sphere.getKdb(),
+					sphere.getKrr(), sphere.getKrg(), sphere.getKrb(), sphere.getKrn());
+		}
+		return builder.build();
+	}
+
+	@Override
+	public int size() {
+		return radii2.length;
+	}
+
+	/**
+	 * A getter for the number of distinct materials.
+	 * @return number of materials.
+	 */
+	public int materials() {
+		return materials.length / MATERIAL_SIZE;
+	}
+
+	/**
+	 * A getter for the centers of the spheres.
+	 * @return a copy of the x, y and z coordinates of the center of every sphere.
+	 */
+	public double[] centers() {
+		return centers.clone();
+	}
+
+	/**
+	 * A method which creates the same spheres moved to the given centers, for scenes whose
+	 * spheres move. The radii and the materials are shared.
+	 * @param centers - x, y and z coordinates of the new center of every sphere.
+	 * @return the moved spheres.
+	 * @throws IllegalArgumentException if the number of centers differs from the number of spheres.
+	 */
+	public CompiledSpheres withCenters(double[] centers) {
+		if(centers.length != this.centers.length) {
+			throw new IllegalArgumentException("Every sphere needs a center.");
+		}
+		return new CompiledSpheres(centers, radii2, materialIndices, materials);
+	}
+
+	@Override
+	public void getBounds(int index, double[] bounds, int offset) {
+		double radius = Math.sqrt(radii2[index]);
+		for(int axis = 0; axis < 3; axis++) {
+			bounds[offset + axis] = centers[3 * index + axis] - radius;
+			bounds[offset + axis + 3] = centers[3 * index + axis] + radius;
+		}
+	}
+
+	@Override
+	public void getBoundingSphere(int index, double[] sphere, int offset) {
+		System.arraycopy(centers, 3 * index, sphere, offset, 3);
+		sphere[offset + 3] = Math.sqrt(radii2[index]);
+	}
+
+	@Override
+	public CompiledSpheres relativeTo(Point3D origin) {
+		return new CompiledSpheres(this, origin);
+	}
+
+	@Override
+	public CompiledSpheres counting(IntersectionCounter counter) {
+		return new CompiledSpheres(this, counter);
+	}
+
+	@Override
+	public double findClosestRayDistance(int index, Ray ray) {
+		return findClosestRayDistance(index, ray, 0, Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	public double findClosestRayDistance(int index, Ray ray, double minDistance, double maxDistance) {
+		int c = 3 * index;
+		double a, disc;
+		if(ray.start == origin) {
+			a = ray.direction.x * offsets[c] + ray.direction.y * offsets[c + 1] + ray.direction.z * offsets[c + 2];
+			disc = a * a + radii2[index] - offsets2[index];
+		} else {
+			double ox = ray.start.x - centers[c];
+			double oy = ray.start.y - centers[c + 1];
+			double oz = ray.start.z - centers[c + 2];
+
+			a = ray.direction.x * ox + ray.direction.y * oy + ray.direction.z * oz;
+			disc = a * a + radii2[index] - (ox * ox + oy * oy + oz * oz);
+		}
+		return closest(a, disc, minDistance, maxDistance);
+	}
+
+	/**
+	 * A method which chooses the first intersection of a ray and a sphere within an interval
+	 * of distances. The intersections lie at {@code -a - sqrt(disc)} and {@code -a + sqrt(disc)},
+	 * so if the distance between {@code -a} and an end of the interval is larger than the square
+	 * root, both of them lie outside the interval, which is checked without calculating the root.
+	 * @param a - scalar product of the direction and the offset of the start from the center.
+	 * @param disc - discriminant, {@code a * a} reduced by the squared distance of the start
+	 *        from the surface.
+	 * @param minDistance - smallest accepted distance.
+	 * @param maxDistance - distance from which intersections aren't accepted.
+	 * @return the distance, or {@link Double#NaN} if there is no intersection in the interval.
+	 */
+	private double closest(double a, double disc, double minDistance, double maxDistance) {
+		if(counter != null) {
+			counter.tested();
+		}
+		if(disc < -EPSILON) {
+			return Double.NaN;
+		}
+
+		if(disc < EPSILON) {
+			return -a >= minDistance && -a < maxDistance ? -a : Double.NaN;
+		}
+
+		double beyond = -a - maxDistance;
+		double before = a + minDistance;
+		if(beyond >= 0 && beyond * beyond >= disc || before > 0 && before * before > disc) {
+			if(counter != null) {
+				counter.rejected();
+			}
+			return Double.NaN;
+		}
+
+		if(counter != null) {
+			counter.computed();
+		}
+		disc = Math.sqrt(disc);
+		double distance = -a - disc;
+		if(distance < minDistance) {
+			distance = -a + disc;
+		}
+		return distance >= minDistance && distance < maxDistance ? distance : Double.NaN;
+	}
+
+	@Override
+	public void findClosestRayDistances(int index, RayPacket packet, long mask) {
+		if(origin != null && packet.getStart() == origin) {
+			findClosestOriginDistances(index, packet, mask);
+			return;
+		}
+
+		int c = 3 * index;
+		double cx = centers[c], cy = centers[c + 1], cz = centers[c + 2];
+		double r2 = radii2[index];
+		for(int k = 0; k < packet.size(); k++) {
+			if((mask & 1L << k) == 0) {
+				continue;
+			}
+			double ox = packet.ox[k] - cx;
+			double oy = packet.oy[k] - cy;
+			double oz = packet.oz[k] - cz;
+
+			double a = packet.dx[k] * ox + packet.dy[k] * oy + packet.dz[k] * oz;
+			double distance = closest(a, a * a + r2 - (ox * ox + oy * oy + oz * oz), 0, packet.distance[k]);
+			if(distance < packet.distance[k]) {
+				packet.distance[k] = distance;
+				packet.index[k] = index;
+			}
+		}
+	}
+
+	/**
+	 * A method which intersects a sphere with the rays of a packet which all start at
+	 * {@link #origin}, using the precomputed offsets.
+	 * @param index - index of the sphere.
+	 * @param packet - the packet.
+	 * @param mask - rays of the packet which are tested.
+	 */
+	private void findClosestOriginDistances(int index, RayPacket packet, long mask) {
+		int c = 3 * index;
+		double ox = offsets[c], oy = offsets[c + 1], oz = offsets[c + 2];
+		double r2 = radii2[index], o2 = offsets2[index];
+		for(int k = 0; k < packet.size(); k++) {
+			if((mask & 1L << k) == 0) {
+				continue;
+			}
+			double a = packet.dx[k] * ox + packet.dy[k] * oy + packet.dz[k] * oz;
+			double distance = closest(a, a * a + r2 - o2, 0, packet.distance[k]);
+			if(distance < packet.distance[k]) {
+				packet.distance[k] = distance;
+				packet.index[k] = index;
+			}
+		}
+	}
+
+	@Override
+	public boolean occludes(int index, Ray ray, double maxDistance) {
+		int c = 3 * index;
+		double ox = ray.start.x - centers[c];
+		double oy = ray.start.y - centers[c + 1];
+		double oz = ray.start.z - centers[c + 2];
+
+		double a = ray.direction.x * ox + ray.direction.y * oy + ray.direction.z * oz;
+		double cc = ox * ox + oy * oy + oz * oz - radii2[index];
+		if(cc > 0 && a > 0) {
+			return false;
+		}
+
+		double disc = a * a - cc;
+		if(disc < -EPSILON) {
+			return false;
+		}
+
+		disc = Math.sqrt(Math.max(disc, 0));
+		double distance = -a - disc;
+		if(distance < 0) {
+			distance = -a + disc;
+		}
+		return distance >= 0 && distance < maxDistance;
+	}
+
+	@Override
+	public RayIntersection intersectionAt(int index, Ray ray, double distance) {
+		int c = 3 * index;
+		double ox = ray.start.x - centers[c];
+		double oy = ray.start.y - centers[c + 1];
+		double oz = ray.start.z - centers[c + 2];
+		boolean outer = ox * ox + oy * oy + oz * oz > radii2[index];
+
+		return new CompiledSphereIntersection(new Point3D(
+				ray.start.x + ray.direction.x * distance,
+				ray.start.y + ray.direction.y * distance,
+				ray.start.z + ray.direction.z * distance
+			), distance, outer, index);
+	}
+
+	@Override
+	public CompiledSpheres permute(int[] order) {
+		int n = order.length;
+		double[] centers = new double[3 * n];
+		double[] radii2 = new double[n];
+		int[] materialIndices = new int[n];
+		for(int k = 0; k < n; k++) {
+			int o = order[k];
+			System.arraycopy(this.centers, 3 * o, centers, 3 * k, 3);
+			radii2[k] = this.radii2[o];
+			materialIndices[k] = this.materialIndices[o];
+		}
+		return new CompiledSpheres(centers, radii2, materialIndices, materials);
+	}
+
+	/**
+	 * A builder which packs spheres one by one, so that large scenes can be created
+	 * without creating a {@link Sphere} for every sphere.
+	 */
+	public static class Builder {
+
+		/**
+		 * centers of the added spheres.
+		 */
+		private double[] centers;
+		/**
+		 * squared radii of the added spheres.
+		 */
+		private double[] radii2;
+		/**
+		 * material indices of the added spheres.
+		 */
+		private int[] materialIndices;
+		/**
+		 * number of added spheres.
+		 */
+		private int size;
+		/**
+		 * values of the distinct materials.
+		 */
+		private double[] materials = new double[MATERIAL_SIZE];
+		/**
+		 * number of distinct materials.
+		 */
+		private int materialCount;
+		/**
+		 * index of every distinct material.
+		 */
+		private final Map<List<Double>, Integer> materialIndex = new HashMap<>();
+
+		/**
+		 * A constructor which accepts the expected number of spheres.
+		 * @param capacity - expected number of spheres.
+		 */
+		public Builder(int capacity) {
+			capacity = Math.max(capacity, 1);
+			this.centers = new double[3 * capacity];
+			this.radii2 = new double[capacity];
+			this.materialIndices = new int[capacity];
+		}
+
+		/**
+		 * A method which adds a sphere.
+		 * @param x - x coordinate of the center.
+		 * @param y - y coordinate of the center.
+		 * @param z - z coordinate of the center.
+		 * @param radius - radius of the sphere.
+		 * @param kdr - diffusion parameter for color red.
+		 * @param kdg - diffusion parameter for color green.
+		 * @param kdb - diffusion parameter for color blue.
+		 * @param krr - reflection parameter for color red.
+		 * @param krg - reflection parameter for color green.
+		 * @param krb - reflection parameter for color blue.
+		 * @param krn - percentage of light that is reflected.
+		 * @return this builder.
+		 */
+		public Builder add(double x, double y, double z, double radius,
+				double kdr, double kdg, double kdb, double krr, double krg, double krb, double krn) {
+			if(size == radii2.length) {
+				int capacity = 2 * size;
+				centers = Arrays.copyOf(centers, 3 * capacity);
+				radii2 = Arrays.copyOf(radii2, capacity);
+				materialIndices = Arrays.copyOf(materialIndices, capacity);
+			}
+
+			centers[3 * size] = x;
+			centers[3 * size + 1] = y;
+			centers[3 * size + 2] = z;
+			radii2[size] = radius * radius;
+			materialIndices[size] = material(kdr, kdg, kdb, krr, krg, krb, krn);
+			size++;
+			return this;
+		}
+
+		/**
+		 * A method which finds the index of a material, adding it if it wasn't used before.
+		 * @param values - values of the material.
+		 * @return index of the material.
+		 */
+		private int material(double... values) {
+			return materialIndex.computeIfAbsent(List.of(values[0], values[1], values[2],
+					values[3], values[4], values[5], values[6]), k -> {
+				if(materialCount * MATERIAL_SIZE == materials.length) {
+					materials = Arrays.copyOf(materials, 2 * materials.length);
+				}
+				System.arraycopy(values, 0, materials, materialCount * MATERIAL_SIZE, MATERIAL_SIZE);
+				return materialCount++;
+			});
+		}
+
+		/**
+		 * A method which creates the packed spheres. The builder shouldn't be used afterwards.
+		 * @return the packed spheres.
+		 */
+		public CompiledSpheres build() {
+			return new CompiledSpheres(Arrays.copyOf(centers, 3 * size), Arrays.copyOf(radii2, size),
+					Arrays.copyOf(materialIndices, size), Arrays.copyOf(materials, materialCount * MATERIAL_SIZE));
+		}
+	}
+
+	/**
+	 * A model for intersection between a ray and a packed sphere.
+	 */
+	private class CompiledSphereIntersection extends RayIntersection {
+
+		/**
+		 * index of the sphere which is intersected.
+		 */
+		private int index;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param point - point at which they intersect.
+		 * @param distance - distance between ray's source and intersection point.
+		 * @param outer - a boolean denoting whether the ray comes from outside or inside of the sphere.
+		 * @param index - index of the sphere which is intersected.
+		 */
+		protected CompiledSphereIntersection(Point3D point, double distance, boolean outer, int index) {
+			super(point, distance, outer);
+			this.index = index;
+		}
+
+		@Override
+		public Point3D getNormal() {
+			Point3D point = getPoint();
+			int c = 3 * index;
+			return new Point3D(point.x - centers[c], point.y - centers[c + 1], point.z - centers[c + 2])
+					.modifyNormalize();
+		}
+
+		/**
+		 * A method which reads a value of the material of the sphere.
+		 * @param value - position of the value within the material.
+		 * @return the value.
+		 */
+		private double material(int value) {
+			return materials[materialIndices[index] * MATERIAL_SIZE + value];
+		}
+
+		@Override
+		public double getKdr() {
+			return material(0);
+		}
+
+		@Override
+		public double getKdg() {
+			return material(1);
+		}
+
+		@Override
+		public double getKdb() {
+			return material(2);
+		}
+
+		@Override
+		public double getKrr() {
+			return material(3);
+		}
+
+		@Override
+		public double getKrg() {
+			return material(4);
+		}
+
+		@Override
+		public double getKrb() {
+			return material(5);
+		}
+
+		@Override
+		public double getKrn() {
+			return material(6);
+		}
+	}
+}
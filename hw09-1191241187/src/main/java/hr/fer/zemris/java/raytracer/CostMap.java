@@ -0,0 +1,111 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A map of how long every row of the previous frame took to render. Rows which show
+ * objects cost far more than rows of background, and consecutive frames of an animation
+ * cost almost the same, so the map of the previous frame is used to split the next one
+ * into bands of consecutive rows of roughly equal cost. The bands are handed out most
+ * expensive first, so that the last bands to be rendered are short ones and no thread is
+ * left rendering a long band while the others wait. Until a frame has been measured, or
+ * while its height differs, the previous map is stretched to the new height, or the rows
+ * are assumed to cost the same.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class CostMap {
+
+	/**
+	 * number of bands per thread of the pool, so that the cost of a band can be mispredicted
+	 * without leaving a thread idle for long.
+	 */
+	private static final int BANDS_PER_WORKER = 16;
+
+	/**
+	 * time in nanoseconds every row of the last completely rendered frame took, {@code null} if there is none.
+	 */
+	private long[] previous;
+	/**
+	 * time in nanoseconds every row of the frame which is being rendered took.
+	 */
+	private long[] current;
+
+	/**
+	 * A method which splits the rows of the next frame into bands of roughly equal cost,
+	 * estimated from the previous frame.
+	 * @param height - number of rows of the frame.
+	 * @param workers - number of threads which render the frame.
+	 * @return first and last row of every band, two consecutive values per band, ordered
+	 *         from the most expensive band to the cheapest one.
+	 */
+	public synchronized int[] bands(int height, int workers) {
+		double[] prefix = new double[height];
+		double total = 0;
+		for(int y = 0; y < height; y++) {
+			total += 1 + (previous == null ? 0 : previous[(int) ((long) y * previous.length / height)]);
+			prefix[y] = total;
+		}
+
+		int bands = Math.max(1, Math.min(height, workers * BANDS_PER_WORKER));
+		int[] limits = new int[2 * bands];
+		double[] bandCosts = new double[bands];
+		int last = -1;
+		for(int b = 0; b < bands; b++) {
+			int y = height - 1;
+			if(b < bands - 1) {
+				double boundary = total * (b + 1) / bands;
+				y = last + 1;
+				while(y < height - bands + b && prefix[y] < boundary) {
+					y++;
+				}
+				if(y > last + 1 && boundary - prefix[y - 1] < prefix[y] - boundary) {
+					y--;
+				}
+			}
+			limits[2 * b] = last + 1;
+			limits[2 * b + 1] = y;
+			bandCosts[b] = prefix[y] - (last < 0 ? 0 : prefix[last]);
+			last = y;
+		}
+
+		Integer[] order = new Integer[bands];
+		for(int b = 0; b < bands; b++) {
+			order[b] = b;
+		}
+		Arrays.sort(order, Comparator.comparingDouble(b -> -bandCosts[b]));
+		int[] result = new int[2 * bands];
+		for(int b = 0; b < bands; b++) {
+			result[2 * b] = limits[2 * order[b]];
+			result[2 * b + 1] = limits[2 * order[b] + 1];
+		}
+		return result;
+	}
+
+	/**
+	 * A method which returns the array into which the times of the rows of the next frame are recorded.
+	 * @param height - number of rows of the frame.
+	 * @return the array, one value per row.
+	 */
+	public synchronized long[] rowCosts(int height) {
+		if(current == null || current.length != height) {
+			current = new long[height];
+		}
+		return current;
+	}
+
+	/**
+	 * A method which makes the recorded times the map of the previous frame, unless the
+	 * frame wasn't rendered completely, in which case the stopped rows weren't measured.
+	 * @param complete - whether every row of the frame was rendered.
+	 */
+	public synchronized void frameFinished(boolean complete) {
+		if(!complete || current == null) {
+			return;
+		}
+		long[] swap = previous;
+		previous = current;
+		current = swap != null && swap.length == previous.length ? swap : null;
+	}
+}
@@ -0,0 +1,262 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An encoder which compares every frame with the previous one and turns it into a
+ * {@link DeltaFrame} of the rectangles which changed. The frame is divided into bands of
+ * {@value #BLOCK} rows, and every band into blocks of {@value #BLOCK} columns. The bands are
+ * compared in parallel, and every run of neighboring changed blocks of a band becomes one
+ * rectangle, encoded in runs of equal pixels, so unchanged parts of the frame cost nothing
+ * and uniform parts, such as the background, cost little. Every {@code keyframeInterval}-th
+ * frame, the first frame and every frame whose size differs from the previous one are
+ * encoded whole, so a display which missed a delta recovers at the next keyframe.
+ * The previous frame is kept by the encoder, so it mustn't encode two frames at the same time.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class DeltaEncoder {
+
+	/**
+	 * number of frames from one keyframe to the next if no other is given.
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+	/**
+	 * width and height of the blocks which are compared, in pixels.
+	 */
+	private static final int BLOCK = 16;
+	/**
+	 * number of equal pixels from which on they are encoded as a run.
+	 */
+	private static final int MIN_RUN = 3;
+
+	/**
+	 * number of frames from one keyframe to the next.
+	 */
+	private final int keyframeInterval;
+	/**
+	 * packed pixels of the previous frame, {@code null} if there is none.
+	 */
+	private int[] previous;
+	/**
+	 * width of the previous frame in pixels.
+	 */
+	private int width;
+	/**
+	 * height of the previous frame in pixels.
+	 */
+	private int height;
+	/**
+	 * number of frames encoded since the last keyframe, including it.
+	 */
+	private int sinceKeyframe;
+
+	/**
+	 * A constructor for a keyframe every {@value #DEFAULT_KEYFRAME_INTERVAL} frames.
+	 */
+	public DeltaEncoder() {
+		this(DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * A constructor which accepts the interval of the keyframes.
+	 * @param keyframeInterval - number of frames from one keyframe to the next, 1 to encode every frame whole.
+	 * @throws IllegalArgumentException if the interval isn't positive.
+	 */
+	public DeltaEncoder(int keyframeInterval) {
+		if(keyframeInterval < 1) {
+			throw new IllegalArgumentException("Keyframe interval must be positive.");
+		}
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * A method which creates an observer of rendered frames which encodes every frame
+	 * with this encoder and passes the delta on.
+	 * @param observer - observer which receives the deltas.
+	 * @param pool - pool on which the frames are compared.
+	 * @return new ArgbResultObserver
+	 */
+	public ArgbResultObserver observing(DeltaFrameObserver observer, ForkJoinPool pool) {
+		return (frame, requestNo) -> observer.acceptDelta(encode(frame, pool), requestNo);
+	}
+
+	/**
+	 * A method which encodes a frame as the difference from the previous frame and
+	 * remembers it as the previous frame of the next one.
+	 * @param frame - the frame.
+	 * @param pool - pool on which the bands of the frame are compared.
+	 * @return the delta.
+	 */
+	public DeltaFrame encode(ArgbFrame frame, ForkJoinPool pool) {
+		int[] pixels = frame.getPixels();
+		boolean keyframe = previous == null || frame.getWidth() != width || frame.getHeight() != height
+				|| sinceKeyframe == keyframeInterval;
+		if(keyframe) {
+			width = frame.getWidth();
+			height = frame.getHeight();
+			if(previous == null || previous.length != pixels.length) {
+				previous = new int[pixels.length];
+			}
+			sinceKeyframe = 0;
+		}
+		sinceKeyframe++;
+
+		int bands = (height + BLOCK - 1) / BLOCK;
+		Output[] outputs = new Output[bands];
+		pool.invoke(new RangeTask((from, to) -> {
+			for(int band = from; band < to; band++) {
+				outputs[band] = encodeBand(pixels, keyframe, band);
+			}
+		}, 0, bands, 1));
+
+		int size = 0;
+		int rectangles = 0;
+		for(Output output : outputs) {
+			size += output.size;
+			rectangles += output.rectangles;
+		}
+		int[] data = new int[size];
+		int position = 0;
+		for(Output output : outputs) {
+			System.arraycopy(output.data, 0, data, position, output.size);
+			position += output.size;
+		}
+		return new DeltaFrame(width, height, keyframe, rectangles, data);
+	}
+
+	/**
+	 * A method which encodes the changed rectangles of a band and copies them into the previous frame.
+	 * @param pixels - packed pixels of the frame.
+	 * @param keyframe - whether the whole band is encoded.
+	 * @param band - index of the band.
+	 * @return the encoded rectangles.
+	 */
+	private Output encodeBand(int[] pixels, boolean keyframe, int band) {
+		Output output = new Output();
+		int top = band * BLOCK;
+		int bottom = Math.min(top + BLOCK, height);
+		for(int left = 0; left < width; ) {
+			if(!keyframe && !changed(pixels, left, top, bottom)) {
+				left += BLOCK;
+				continue;
+			}
+			int right = Math.min(left + BLOCK, width);
+			while(right < width && (keyframe || changed(pixels, right, top, bottom))) {
+				right = Math.min(right + BLOCK, width);
+			}
+			encodeRectangle(pixels, left, top, right, bottom, output);
+			for(int y = top; y < bottom; y++) {
+				System.arraycopy(pixels, y * width + left, previous, y * width + left, right - left);
+			}
+			left = right;
+		}
+		return output;
+	}
+
+	/**
+	 * A method which checks whether a block of a band differs from the previous frame.
+	 * @param pixels - packed pixels of the frame.
+	 * @param left - column of the left pixels of the block.
+	 * @param top - row of the top pixels of the band.
+	 * @param bottom - row after the bottom pixels of the band.
+	 * @return {@code true} if any pixel of the block changed, {@code false} otherwise.
+	 */
+	private boolean changed(int[] pixels, int left, int top, int bottom) {
+		int right = Math.min(left + BLOCK, width);
+		for(int y = top; y < bottom; y++) {
+			int from = y * width + left;
+			int to = y * width + right;
+			if(Arrays.mismatch(pixels, from, to, previous, from, to) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A method which encodes a rectangle as packets of pixels. Runs of at least
+	 * {@value #MIN_RUN} equal pixels become one packet, and the pixels between them are
+	 * copied as they are, so a rectangle without any runs is barely larger than its pixels.
+	 * @param pixels - packed pixels of the frame.
+	 * @param left - column of the left pixels of the rectangle.
+	 * @param top - row of the top pixels of the rectangle.
+	 * @param right - column after the right pixels of the rectangle.
+	 * @param bottom - row after the bottom pixels of the rectangle.
+	 * @param output - output into which the rectangle is written.
+	 */
+	private void encodeRectangle(int[] pixels, int left, int top, int right, int bottom, Output output) {
+		int columns = right - left;
+		int n = columns * (bottom - top);
+		int[] flat = new int[n];
+		for(int y = top; y < bottom; y++) {
+			System.arraycopy(pixels, y * width + left, flat, (y - top) * columns, columns);
+		}
+
+		output.add(left);
+		output.add(top);
+		output.add(columns);
+		output.add(bottom - top);
+		int count = output.size;
+		output.add(0);
+
+		int packets = 0;
+		int literal = -1;
+		for(int i = 0; i < n; ) {
+			int j = i + 1;
+			while(j < n && flat[j] == flat[i]) {
+				j++;
+			}
+			if(j - i >= MIN_RUN) {
+				literal = -1;
+				output.add(j - i);
+				output.add(flat[i]);
+				packets++;
+			} else {
+				if(literal < 0) {
+					literal = output.size;
+					output.add(0);
+					packets++;
+				}
+				for(int k = i; k < j; k++) {
+					output.add(flat[k]);
+				}
+				output.data[literal] -= j - i;
+			}
+			i = j;
+		}
+		output.data[count] = packets;
+		output.rectangles++;
+	}
+
+	/**
+	 * A growing array of the encoded rectangles of a band.
+	 */
+	private static class Output {
+
+		/**
+		 * the encoded rectangles.
+		 */
+		private int[] data = new int[64];
+		/**
+		 * number of used elements of {@code data}.
+		 */
+		private int size;
+		/**
+		 * number of rectangles.
+		 */
+		private int rectangles;
+
+		/**
+		 * A method which appends a value.
+		 * @param value - the value.
+		 */
+		void add(int value) {
+			if(size == data.length) {
+				data = Arrays.copyOf(data, 2 * data.length);
+			}
+			data[size++] = value;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+
+/**
+ * The difference between a frame and the frame before it, as produced by a {@link DeltaEncoder}.
+ * It consists of the rectangles of the frame which changed, each of them encoded in
+ * packets of pixels. Its data is a sequence of {@code int}s, for every rectangle:
+ * <ol>
+ * <li>column of its left pixels, row of its top pixels, its width and its height,</li>
+ * <li>the number of packets,</li>
+ * <li>the packets, following each other row after row through the rectangle and continuing
+ * from one row into the next. A packet starts with a count. A positive count is followed by
+ * one packed pixel which is repeated that many times, and a negative count is followed by
+ * as many packed pixels as its absolute value.</li>
+ * </ol>
+ * A keyframe covers the whole frame, so it can be shown without any previous frame.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class DeltaFrame {
+
+	/**
+	 * number of {@code int}s which precede the packets of a rectangle.
+	 */
+	static final int HEADER = 5;
+
+	/**
+	 * width of the frame in pixels.
+	 */
+	private final int width;
+	/**
+	 * height of the frame in pixels.
+	 */
+	private final int height;
+	/**
+	 * whether the rectangles cover the whole frame.
+	 */
+	private final boolean keyframe;
+	/**
+	 * number of rectangles.
+	 */
+	private final int rectangles;
+	/**
+	 * the rectangles, encoded as described in the documentation of this class.
+	 */
+	private final int[] data;
+
+	/**
+	 * A constructor which accepts all the relevant data.
+	 * @param width - {@code width} variable.
+	 * @param height - {@code height} variable.
+	 * @param keyframe - {@code keyframe} variable.
+	 * @param rectangles - {@code rectangles} variable.
+	 * @param data - {@code data} variable.
+	 */
+	DeltaFrame(int width, int height, boolean keyframe, int rectangles, int[] data) {
+		this.width = width;
+		this.height = height;
+		this.keyframe = keyframe;
+		this.rectangles = rectangles;
+		this.data = data;
+	}
+
+	/**
+	 * A method which writes the changed rectangles into the pixels of the previous frame,
+	 * turning them into the pixels of this frame.
+	 * @param pixels - packed pixels of the previous frame, row after row, or of any frame
+	 *        of the same size if this is a keyframe.
+	 */
+	public void applyTo(int[] pixels) {
+		int position = 0;
+		for(int r = 0; r < rectangles; r++) {
+			int left = data[position];
+			int top = data[position + 1];
+			int columns = data[position + 2];
+			int packets = data[position + 4];
+			position += HEADER;
+
+			int x = 0;
+			int offset = top * width + left;
+			for(int k = 0; k < packets; k++) {
+				int count = data[position++];
+				boolean run = count > 0;
+				for(int length = Math.abs(count); length > 0; ) {
+					int part = Math.min(length, columns - x);
+					if(run) {
+						Arrays.fill(pixels, offset + x, offset + x + part, data[position]);
+					} else {
+						System.arraycopy(data, position, pixels, offset + x, part);
+						position += part;
+					}
+					length -= part;
+					x += part;
+					if(x == columns) {
+						x = 0;
+						offset += width;
+					}
+				}
+				if(run) {
+					position++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A getter for the width of the frame.
+	 * @return width in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * A getter for the height of the frame.
+	 * @return height in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * A method which checks whether this is a keyframe.
+	 * @return {@code true} if the rectangles cover the whole frame, {@code false} if they
+	 *         only cover what changed since the previous frame.
+	 */
+	public boolean isKeyframe() {
+		return keyframe;
+	}
+
+	/**
+	 * A getter for the number of rectangles.
+	 * @return the number of rectangles.
+	 */
+	public int getRectangleCount() {
+		return rectangles;
+	}
+
+	/**
+	 * A getter for the encoded rectangles, which mustn't be changed.
+	 * @return the data, as described in the documentation of this class.
+	 */
+	public int[] getData() {
+		return data;
+	}
+}
@@ -0,0 +1,18 @@
+package hr.fer.zemris.java.raytracer;
+
+/**
+ * An observer which receives rendered frames as {@link DeltaFrame}s, for example to send
+ * them to a remote display which keeps the previous frame and applies every delta to it.
+ * @author Božidar Grgur Drmić
+ *
+ */
+@FunctionalInterface
+public interface DeltaFrameObserver {
+
+	/**
+	 * A method which is called once a frame has been rendered and compared with the previous one.
+	 * @param delta - what changed since the previous frame, or the whole frame if it is a keyframe.
+	 * @param requestNo - number of the request the frame was rendered for.
+	 */
+	void acceptDelta(DeltaFrame delta, long requestNo);
+}
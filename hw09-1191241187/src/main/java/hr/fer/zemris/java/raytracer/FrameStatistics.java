@@ -0,0 +1,141 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A class which collects the timings of rendered frames and periodically reports
+ * the sustained frame rate, the average render time and the time spent in
+ * garbage collection during the reporting window. If the intersection tests
+ * of the frames are counted, their averages per frame are reported as well.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class FrameStatistics {
+
+	/**
+	 * length of the reporting window in nanoseconds.
+	 */
+	private final long window;
+	/**
+	 * start of the current window.
+	 */
+	private long windowStart;
+	/**
+	 * number of frames finished in the current window.
+	 */
+	private int frames;
+	/**
+	 * total render time of the frames in the current window in nanoseconds.
+	 */
+	private long renderTime;
+	/**
+	 * number of garbage collections at the start of the current window.
+	 */
+	private long gcCount;
+	/**
+	 * time spent in garbage collections at the start of the current window in milliseconds.
+	 */
+	private long gcTime;
+	/**
+	 * number of intersection tests in the current window.
+	 */
+	private long tests;
+	/**
+	 * number of intersection tests which needed the full computation in the current window.
+	 */
+	private long computations;
+	/**
+	 * number of hits rejected by the searched interval in the current window.
+	 */
+	private long rejections;
+	/**
+	 * number of rays which hit the same sphere as the previous ray in the current window.
+	 */
+	private long coherentHits;
+
+	/**
+	 * A constructor which accepts the length of the reporting window.
+	 * @param windowMillis - length of the window in milliseconds.
+	 */
+	public FrameStatistics(long windowMillis) {
+		this.window = windowMillis * 1_000_000;
+		reset(System.nanoTime());
+	}
+
+	/**
+	 * A method which records the intersection tests of a finished frame, resetting the counter.
+	 * It should be called before {@link #frameFinished(long)} of the same frame.
+	 * @param counter - counters of the intersection tests of the frame.
+	 */
+	public synchronized void intersectionsCounted(IntersectionCounter counter) {
+		tests += counter.takeTests();
+		computations += counter.takeComputations();
+		rejections += counter.takeRejections();
+		coherentHits += counter.takeCoherentHits();
+	}
+
+	/**
+	 * A method which records a finished frame, printing the report if the window has elapsed.
+	 * @param renderNanos - time it took to render the frame in nanoseconds.
+	 */
+	public synchronized void frameFinished(long renderNanos) {
+		frames++;
+		renderTime += renderNanos;
+
+		long now = System.nanoTime();
+		if(now - windowStart < window) {
+			return;
+		}
+
+		double seconds = (now - windowStart) / 1e9;
+		System.out.printf("Sličice: %.1f FPS, prosječno %.1f ms po sličici, GC: %d sakupljanja, %d ms%n",
+				frames / seconds, renderTime / 1e6 / frames, gcCount() - gcCount, gcTime() - gcTime);
+		if(tests > 0) {
+			System.out.printf("Presjeci po sličici: %d testova, %d potpunih izračuna (%.1f%%), %d odbačeno intervalom, "
+					+ "%d koherentnih pogodaka%n", tests / frames, computations / frames, 100.0 * computations / tests,
+					rejections / frames, coherentHits / frames);
+		}
+		reset(now);
+	}
+
+	/**
+	 * A method which starts a new reporting window.
+	 * @param now - current time in nanoseconds.
+	 */
+	private void reset(long now) {
+		windowStart = now;
+		frames = 0;
+		renderTime = 0;
+		gcCount = gcCount();
+		gcTime = gcTime();
+		tests = 0;
+		computations = 0;
+		rejections = 0;
+		coherentHits = 0;
+	}
+
+	/**
+	 * A method which sums the number of collections of all garbage collectors.
+	 * @return number of collections since the start of the virtual machine.
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(gc.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	/**
+	 * A method which sums the collection times of all garbage collectors.
+	 * @return milliseconds spent collecting since the start of the virtual machine.
+	 */
+	private static long gcTime() {
+		long time = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(gc.getCollectionTime(), 0);
+		}
+		return time;
+	}
+}
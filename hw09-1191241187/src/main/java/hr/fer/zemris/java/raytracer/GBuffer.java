@@ -0,0 +1,483 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.model.LightSource;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+
+/**
+ * A buffer which keeps, for every pixel of a frame, everything the Phong model needs
+ * about the first intersection of its primary ray: the hit point, the normal, the direction
+ * towards the viewer, the object which was hit and whether every light of the scene reached
+ * the point. As long as the camera and the geometry don't change, the frame can be
+ * {@link #relight(List, short[], short[], short[], ForkJoinPool) relit} with different
+ * colors of the lights or different materials of the objects without casting any primary
+ * rays. Shadow rays are only cast again for lights which were moved. Relighting calculates
+ * colors exactly as {@link SceneTracer} does, so relighting with the lights and the
+ * materials of the scene gives the same image as rendering it.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class GBuffer {
+
+	/**
+	 * number of coefficients of a material.
+	 */
+	private static final int MATERIAL_SIZE = 7;
+	/**
+	 * If the task is to process up to this many rows, then it isn't divided into smaller ones.
+	 */
+	private static final int THRESHOLD = 4;
+	/**
+	 * number of neighboring pixels of a row whose primary rays are traced together.
+	 * Packets start at columns divisible by it, so they never cross a tile of {@link ScreenTiles}.
+	 */
+	private static final int PACKET_SIZE = 8;
+
+	/**
+	 * tracer of the scene, used to cast shadow rays for lights which were moved.
+	 */
+	private final SceneTracer tracer;
+	/**
+	 * width of the frame in pixels.
+	 */
+	private final int width;
+	/**
+	 * height of the frame in pixels.
+	 */
+	private final int height;
+	/**
+	 * coordinates of the hit point of every pixel.
+	 */
+	private final double[] points;
+	/**
+	 * coordinates of the normal at the hit point of every pixel.
+	 */
+	private final double[] normals;
+	/**
+	 * coordinates of the unit vector from the hit point of every pixel towards the viewer.
+	 */
+	private final double[] views;
+	/**
+	 * object seen through every pixel, -1 if the ray hits nothing. While the buffer is being
+	 * filled the objects are numbered as in the scene, afterwards only the objects seen in
+	 * the frame are numbered.
+	 */
+	private final int[] objects;
+	/**
+	 * number of {@code long}s of {@code visible} for every pixel.
+	 */
+	private final int words;
+	/**
+	 * for every pixel and every light whether the light reaches the hit point.
+	 */
+	private final long[] visible;
+	/**
+	 * coordinates of the lights whose visibility is stored.
+	 */
+	private final double[] lights;
+	/**
+	 * coefficients of the material of every object, {@value #MATERIAL_SIZE} for every object.
+	 * While the buffer is being filled they are stored for every object of the scene.
+	 */
+	private double[] materials;
+	/**
+	 * for every object of the scene whether its material is stored, {@code null} once the
+	 * buffer is filled. Threads which see the same object at the same time may both store
+	 * its material, but they write the same coefficients, which are read only after the fill.
+	 */
+	private boolean[] stored;
+	/**
+	 * number of objects seen in the frame.
+	 */
+	private int objectCount;
+
+	/**
+	 * A constructor which fills the buffer with the primary rays of a frame, in parallel.
+	 * @param tracer - tracer of the scene, prepared for the eye of the camera by {@link SceneTracer#forOrigin(Point3D)}.
+	 * @param camera - camera of the frame.
+	 * @param pool - pool on which the buffer is filled.
+	 * @param cancel - filling stops once it is set, leaving the buffer incomplete.
+	 */
+	public GBuffer(SceneTracer tracer, Camera camera, ForkJoinPool pool, AtomicBoolean cancel) {
+		this.tracer = tracer;
+		this.width = camera.getWidth();
+		this.height = camera.getHeight();
+		int pixels = width * height;
+		this.points = new double[3 * pixels];
+		this.normals = new double[3 * pixels];
+		this.views = new double[3 * pixels];
+		this.objects = new int[pixels];
+		this.materials = new double[MATERIAL_SIZE * tracer.objectCount()];
+		this.stored = new boolean[tracer.objectCount()];
+
+		List<LightSource> sources = tracer.getScene().getLights();
+		this.words = (sources.size() + Long.SIZE - 1) / Long.SIZE;
+		this.visible = new long[words * pixels];
+		this.lights = new double[3 * sources.size()];
+		for(int k = 0; k < sources.size(); k++) {
+			Point3D point = sources.get(k).getPoint();
+			lights[3 * k] = point.x;
+			lights[3 * k + 1] = point.y;
+			lights[3 * k + 2] = point.z;
+		}
+
+		TileOrder order = new TileOrder(width, height, TileOrder.DEFAULT_SIZE);
+		ScreenTiles tiles = tracer.screenTiles(camera);
+		pool.invoke(new RangeTask((from, to) -> fill(camera, tiles, order, cancel, from, to), 0, order.count(), 1, cancel));
+		compactObjects();
+	}
+
+	/**
+	 * A method which fills the buffer for a range of tiles, visited in Morton order so that
+	 * the candidate lists of neighboring tiles of the screen stay in the caches.
+	 * @param camera - camera of the frame.
+	 * @param tiles - candidate spheres of the tiles of the screen.
+	 * @param order - tiles of the frame.
+	 * @param cancel - filling stops once it is set.
+	 * @param from - position of the first tile in the order.
+	 * @param to - position after the last tile.
+	 */
+	private void fill(Camera camera, ScreenTiles tiles, TileOrder order, AtomicBoolean cancel, int from, int to) {
+		Ray ray = camera.newRay();
+		RayPacket packet = new RayPacket(PACKET_SIZE);
+		double[] l = new double[3];
+		HitSink sink = (pixel, primary, closest, object) -> store(pixel, primary, closest, object, l);
+		for(int k = from; k < to; k++) {
+			if(cancel.get()) {
+				return;
+			}
+			int left = order.left(k), right = order.right(k);
+			for(int y = order.top(k), bottom = order.bottom(k); y < bottom; y++) {
+				for(int x = left; x < right; ) {
+					int end = Math.min((x / PACKET_SIZE + 1) * PACKET_SIZE, right);
+					packet.clear();
+					for(int px = x; px < end; px++) {
+						camera.setRay(ray, px, y);
+						packet.add(ray);
+					}
+					tracer.record(packet, tiles, tiles.tileOf(x, y), sink, y * width + x);
+					x = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A method which records the first intersection of the primary ray of a pixel.
+	 * @param pixel - index of the pixel.
+	 * @param ray - primary ray of the pixel.
+	 * @param closest - first intersection of the ray, {@code null} if there is none.
+	 * @param object - index of the intersected object in the scene.
+	 * @param l - array for the unit vectors towards the lights.
+	 */
+	private void store(int pixel, Ray ray, RayIntersection closest, int object, double[] l) {
+		if(closest == null) {
+			objects[pixel] = -1;
+			return;
+		}
+		objects[pixel] = object;
+		if(!stored[object]) {
+			SceneTracer.materialOf(closest, materials, MATERIAL_SIZE * object);
+			stored[object] = true;
+		}
+
+		Point3D point = closest.getPoint();
+		Point3D normal = closest.getNormal();
+		int p = 3 * pixel;
+		points[p] = point.x;
+		points[p + 1] = point.y;
+		points[p + 2] = point.z;
+		normals[p] = normal.x;
+		normals[p + 1] = normal.y;
+		normals[p + 2] = normal.z;
+		double vx = ray.start.x - point.x;
+		double vy = ray.start.y - point.y;
+		double vz = ray.start.z - point.z;
+		double norm = Math.sqrt(vx * vx + vy * vy + vz * vz);
+		views[p] = vx / norm;
+		views[p + 1] = vy / norm;
+		views[p + 2] = vz / norm;
+
+		List<LightSource> sources = tracer.getScene().getLights();
+		for(int k = 0; k < sources.size(); k++) {
+			if(reaches(k, sources.get(k), false, pixel, point, l)) {
+				visible[pixel * words + k / Long.SIZE] |= 1L << k;
+			}
+		}
+	}
+
+	/**
+	 * A method which checks whether a light reaches the hit point of a pixel, skipping
+	 * the shadow test if the light is behind the surface or out of reach.
+	 * @param k - index of the light in the scene.
+	 * @param light - the light.
+	 * @param moved - whether the light was moved since the buffer was filled, in which case
+	 *        its shadow maps can't be used and a shadow ray is cast.
+	 * @param pixel - index of the pixel.
+	 * @param point - hit point of the pixel.
+	 * @param l - array for the unit vector towards the light.
+	 * @return {@code true} if the light contributes to the color of the pixel, {@code false} otherwise.
+	 */
+	private boolean reaches(int k, LightSource light, boolean moved, int pixel, Point3D point, double[] l) {
+		int p = 3 * pixel;
+		double distance = SceneTracer.towards(light, point.x, point.y, point.z, l);
+		double coef = l[0] * normals[p] + l[1] * normals[p + 1] + l[2] * normals[p + 2];
+		if(coef < 0 || tracer.falloff(k, distance) == 0) {
+			return false;
+		}
+		if(moved) {
+			return !tracer.isOccluded(Ray.fromPoints(light.getPoint(), point), distance - SceneTracer.EPSILON);
+		}
+		return !tracer.isShadowed(k, point, distance, coef);
+	}
+
+	/**
+	 * A method which renumbers the objects so that only the objects seen in the frame
+	 * are numbered, and keeps one material for every one of them.
+	 */
+	private void compactObjects() {
+		int[] numbers = new int[stored.length];
+		Arrays.fill(numbers, -1);
+		double[] compact = new double[MATERIAL_SIZE * 16];
+		int count = 0;
+		for(int pixel = 0; pixel < objects.length; pixel++) {
+			int object = objects[pixel];
+			if(object < 0) {
+				continue;
+			}
+			if(numbers[object] < 0) {
+				numbers[object] = count++;
+				if(MATERIAL_SIZE * count > compact.length) {
+					compact = Arrays.copyOf(compact, 2 * compact.length);
+				}
+				System.arraycopy(materials, MATERIAL_SIZE * object, compact, MATERIAL_SIZE * numbers[object], MATERIAL_SIZE);
+			}
+			objects[pixel] = numbers[object];
+		}
+		this.objectCount = count;
+		this.materials = Arrays.copyOf(compact, MATERIAL_SIZE * objectCount);
+		this.stored = null;
+	}
+
+	/**
+	 * A getter for the width of the frame.
+	 * @return width in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * A getter for the height of the frame.
+	 * @return height in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * A getter for the number of objects seen in the frame.
+	 * @return number of objects.
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * A getter for the object seen through a pixel.
+	 * @param x - column of the pixel.
+	 * @param y - row of the pixel.
+	 * @return index of the object, between 0 and {@link #getObjectCount()}, or -1 if there is none.
+	 */
+	public int getObject(int x, int y) {
+		return objects[y * width + x];
+	}
+
+	/**
+	 * A getter for the objects seen through all pixels, row by row.
+	 * @return index of the object of every pixel, -1 if there is none.
+	 */
+	int[] objects() {
+		return objects;
+	}
+
+	/**
+	 * A getter for the material of an object.
+	 * @param object - index of the object.
+	 * @return coefficients {@code kdr}, {@code kdg}, {@code kdb}, {@code krr}, {@code krg}, {@code krb} and {@code krn}.
+	 */
+	public double[] getMaterial(int object) {
+		return Arrays.copyOfRange(materials, MATERIAL_SIZE * object, MATERIAL_SIZE * (object + 1));
+	}
+
+	/**
+	 * A setter for the material of an object, used by the following relighting passes.
+	 * @param object - index of the object.
+	 * @param kdr - diffuse red coefficient.
+	 * @param kdg - diffuse green coefficient.
+	 * @param kdb - diffuse blue coefficient.
+	 * @param krr - reflective red coefficient.
+	 * @param krg - reflective green coefficient.
+	 * @param krb - reflective blue coefficient.
+	 * @param krn - reflective shininess coefficient.
+	 */
+	public void setMaterial(int object, double kdr, double kdg, double kdb, double krr, double krg, double krb, double krn) {
+		int m = MATERIAL_SIZE * object;
+		materials[m] = kdr;
+		materials[m + 1] = kdg;
+		materials[m + 2] = kdb;
+		materials[m + 3] = krr;
+		materials[m + 4] = krg;
+		materials[m + 5] = krb;
+		materials[m + 6] = krn;
+	}
+
+	/**
+	 * A method which colors the frame with the given lights and the current materials, in parallel.
+	 * Lights at the same position as when the buffer was filled reuse the stored visibility,
+	 * while a shadow ray is cast for moved lights.
+	 * @param lights - lights of the scene, in the same order, with any colors and positions.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param pool - pool on which the frame is colored.
+	 * @throws IllegalArgumentException if the number of lights differs from the scene.
+	 */
+	public void relight(List<LightSource> lights, short[] red, short[] green, short[] blue, ForkJoinPool pool) {
+		if(lights.size() != this.lights.length / 3) {
+			throw new IllegalArgumentException("Relighting needs the same number of lights as the scene.");
+		}
+		LightSource[] sources = lights.toArray(new LightSource[0]);
+		boolean[] moved = new boolean[sources.length];
+		for(int k = 0; k < sources.length; k++) {
+			Point3D point = sources[k].getPoint();
+			moved[k] = point.x != this.lights[3 * k] || point.y != this.lights[3 * k + 1] || point.z != this.lights[3 * k + 2];
+		}
+		pool.invoke(new RelightTask(sources, moved, red, green, blue, 0, height - 1));
+	}
+
+	/**
+	 * A method which colors the rows of the frame between the given ones.
+	 * @param sources - the lights.
+	 * @param moved - for every light whether it was moved since the buffer was filled.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param yMin - first row.
+	 * @param yMax - last row.
+	 */
+	private void relight(LightSource[] sources, boolean[] moved, short[] red, short[] green, short[] blue, int yMin, int yMax) {
+		int[] rgb = new int[3];
+		double[] l = new double[3];
+		for(int pixel = yMin * width, end = (yMax + 1) * width; pixel < end; pixel++) {
+			if(objects[pixel] < 0) {
+				red[pixel] = 0;
+				green[pixel] = 0;
+				blue[pixel] = 0;
+				continue;
+			}
+
+			rgb[0] = 15;
+			rgb[1] = 15;
+			rgb[2] = 15;
+			int p = 3 * pixel;
+			for(int k = 0; k < sources.length; k++) {
+				boolean reaches;
+				if(moved[k]) {
+					reaches = reaches(k, sources[k], true, pixel, new Point3D(points[p], points[p + 1], points[p + 2]), l);
+				} else {
+					reaches = (visible[pixel * words + k / Long.SIZE] & 1L << k) != 0;
+				}
+				if(!reaches) {
+					continue;
+				}
+				double distance = SceneTracer.towards(sources[k], points[p], points[p + 1], points[p + 2], l);
+				double coef = l[0] * normals[p] + l[1] * normals[p + 1] + l[2] * normals[p + 2];
+				SceneTracer.addLight(sources[k], tracer.falloff(k, distance), l, coef,
+						normals, p, views, p, materials, MATERIAL_SIZE * objects[pixel], rgb, 0);
+			}
+			red[pixel] = SceneTracer.clamp(rgb[0]);
+			green[pixel] = SceneTracer.clamp(rgb[1]);
+			blue[pixel] = SceneTracer.clamp(rgb[2]);
+		}
+	}
+
+	/**
+	 * A task which colors a range of rows.
+	 */
+	private class RelightTask extends RecursiveAction {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 4410719364402275313L;
+
+		/**
+		 * the lights.
+		 */
+		private LightSource[] sources;
+		/**
+		 * for every light whether it was moved since the buffer was filled.
+		 */
+		private boolean[] moved;
+		/**
+		 * array of red color intensities for each pixel.
+		 */
+		private short[] red;
+		/**
+		 * array of green color intensities for each pixel.
+		 */
+		private short[] green;
+		/**
+		 * array of blue color intensities for each pixel.
+		 */
+		private short[] blue;
+		/**
+		 * index of first row this task has to color.
+		 */
+		private int yMin;
+		/**
+		 * index of last row this task has to color.
+		 */
+		private int yMax;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param sources - {@code sources} variable.
+		 * @param moved - {@code moved} variable.
+		 * @param red - {@code red} variable.
+		 * @param green - {@code green} variable.
+		 * @param blue - {@code blue} variable.
+		 * @param yMin - {@code yMin} variable.
+		 * @param yMax - {@code yMax} variable.
+		 */
+		RelightTask(LightSource[] sources, boolean[] moved, short[] red, short[] green, short[] blue, int yMin, int yMax) {
+			this.sources = sources;
+			this.moved = moved;
+			this.red = red;
+			this.green = green;
+			this.blue = blue;
+			this.yMin = yMin;
+			this.yMax = yMax;
+		}
+
+		@Override
+		protected void compute() {
+			if(yMax - yMin <= THRESHOLD) {
+				relight(sources, moved, red, green, blue, yMin, yMax);
+				return;
+			}
+
+			int middle = (yMin + yMax) / 2;
+			invokeAll(new RelightTask(sources, moved, red, green, blue, yMin, middle),
+					new RelightTask(sources, moved, red, green, blue, middle + 1, yMax));
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+
+/**
+ * An interface of buffers which receive the first intersections of primary rays,
+ * recorded by {@link SceneTracer#record(RayPacket, ScreenTiles, int, HitSink, int)}
+ * so that they can be shaded later.
+ * @author Božidar Grgur Drmić
+ *
+ */
+interface HitSink {
+
+	/**
+	 * A method which records the first intersection of the primary ray of a pixel.
+	 * @param pixel - index of the pixel.
+	 * @param ray - primary ray of the pixel.
+	 * @param closest - first intersection of the ray, {@code null} if there is none.
+	 * @param object - index of the intersected object in the scene.
+	 */
+	void store(int pixel, Ray ray, RayIntersection closest, int object);
+}
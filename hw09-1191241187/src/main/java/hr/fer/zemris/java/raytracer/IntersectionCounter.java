@@ -0,0 +1,93 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the intersection tests of spheres, shared by all threads which render a frame.
+ * A test which finds that the ray misses the sphere or that both its intersections lie outside
+ * the searched interval of distances is cheap, while the others need the full computation
+ * of the intersection, including a square root. Counting is only done by tracers created with
+ * {@link SceneTracer#countingIntersections(IntersectionCounter)}, so the others don't pay for it.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class IntersectionCounter {
+
+	/**
+	 * number of intersection tests.
+	 */
+	private final LongAdder tests = new LongAdder();
+	/**
+	 * number of tests which needed the full computation.
+	 */
+	private final LongAdder computations = new LongAdder();
+	/**
+	 * number of tests of spheres which the ray hits, rejected because the hit lies outside the interval.
+	 */
+	private final LongAdder rejections = new LongAdder();
+	/**
+	 * number of rays whose closest sphere was the one hit by the previous ray of the same thread.
+	 */
+	private final LongAdder coherentHits = new LongAdder();
+
+	/**
+	 * A method which records an intersection test.
+	 */
+	void tested() {
+		tests.increment();
+	}
+
+	/**
+	 * A method which records a test which needed the full computation.
+	 */
+	void computed() {
+		computations.increment();
+	}
+
+	/**
+	 * A method which records a hit rejected because it lies outside the interval.
+	 */
+	void rejected() {
+		rejections.increment();
+	}
+
+	/**
+	 * A method which records rays whose closest sphere was the one hit by the previous ray.
+	 * @param rays - number of rays.
+	 */
+	void coherent(int rays) {
+		coherentHits.add(rays);
+	}
+
+	/**
+	 * A method which returns the number of tests and resets it.
+	 * @return number of tests since the last call.
+	 */
+	public long takeTests() {
+		return tests.sumThenReset();
+	}
+
+	/**
+	 * A method which returns the number of full computations and resets it.
+	 * @return number of full computations since the last call.
+	 */
+	public long takeComputations() {
+		return computations.sumThenReset();
+	}
+
+	/**
+	 * A method which returns the number of hits rejected by the interval and resets it.
+	 * @return number of rejected hits since the last call.
+	 */
+	public long takeRejections() {
+		return rejections.sumThenReset();
+	}
+
+	/**
+	 * A method which returns the number of coherent hits and resets it.
+	 * @return number of coherent hits since the last call.
+	 */
+	public long takeCoherentHits() {
+		return coherentHits.sumThenReset();
+	}
+}
@@ -0,0 +1,248 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import hr.fer.zemris.java.raytracer.model.LightSource;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+
+/**
+ * A structure which finds the lights which can illuminate a point. Every light has
+ * an influence radius beyond which it contributes nothing: its intensity is scaled by
+ * the window {@code (1 - (d/r)^4)^2}, which falls smoothly to zero at the radius, so
+ * skipping lights which are farther away doesn't change the image. Lights with an infinite
+ * radius keep their full intensity everywhere, as in the plain Phong model, and are always
+ * considered. The others are placed into a uniform grid, so a point only visits the lights
+ * listed in its cell.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class LightCulling {
+
+	/**
+	 * radius of lights which illuminate the whole scene.
+	 */
+	public static final double UNBOUNDED = Double.POSITIVE_INFINITY;
+	/**
+	 * highest number of cells of the grid along one axis.
+	 */
+	private static final int MAX_CELLS = 64;
+
+	/**
+	 * influence radius of every light.
+	 */
+	private final double[] radii;
+	/**
+	 * indices of the lights with an infinite radius.
+	 */
+	private final int[] unbounded;
+	/**
+	 * minimum corner of the grid.
+	 */
+	private final double minX, minY, minZ;
+	/**
+	 * width of a cell.
+	 */
+	private final double cellSize;
+	/**
+	 * number of cells along every axis.
+	 */
+	private final int cellsX, cellsY, cellsZ;
+	/**
+	 * for every cell the position of its first light in {@code cellLights},
+	 * followed by the position after the last light of the last cell.
+	 */
+	private final int[] cellStart;
+	/**
+	 * lights of all cells, cell after cell.
+	 */
+	private final int[] cellLights;
+
+	/**
+	 * A constructor which builds the structure.
+	 * @param lights - the lights.
+	 * @param radii - influence radius of every light, {@link #UNBOUNDED} for lights which
+	 *        illuminate the whole scene.
+	 * @throws IllegalArgumentException if the numbers of lights and radii differ or a radius isn't positive.
+	 */
+	public LightCulling(List<LightSource> lights, double[] radii) {
+		if(lights.size() != radii.length) {
+			throw new IllegalArgumentException("Every light needs exactly one radius.");
+		}
+		this.radii = radii.clone();
+
+		int unboundedCount = 0;
+		double[] min = {UNBOUNDED, UNBOUNDED, UNBOUNDED};
+		double[] max = {-UNBOUNDED, -UNBOUNDED, -UNBOUNDED};
+		double radiusSum = 0;
+		for(int k = 0; k < radii.length; k++) {
+			if(!(radii[k] > 0)) {
+				throw new IllegalArgumentException("Influence radius must be positive.");
+			}
+			if(radii[k] == UNBOUNDED) {
+				unboundedCount++;
+				continue;
+			}
+			radiusSum += radii[k];
+			Point3D p = lights.get(k).getPoint();
+			double[] c = {p.x, p.y, p.z};
+			for(int axis = 0; axis < 3; axis++) {
+				min[axis] = Math.min(min[axis], c[axis] - radii[k]);
+				max[axis] = Math.max(max[axis], c[axis] + radii[k]);
+			}
+		}
+
+		this.unbounded = new int[unboundedCount];
+		for(int k = 0, u = 0; k < radii.length; k++) {
+			if(radii[k] == UNBOUNDED) {
+				unbounded[u++] = k;
+			}
+		}
+
+		int bounded = radii.length - unboundedCount;
+		if(bounded == 0) {
+			minX = minY = minZ = 0;
+			cellSize = 1;
+			cellsX = cellsY = cellsZ = 0;
+			cellStart = new int[1];
+			cellLights = new int[0];
+			return;
+		}
+
+		double extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+		this.cellSize = Math.max(radiusSum / bounded, extent / MAX_CELLS);
+		this.minX = min[0];
+		this.minY = min[1];
+		this.minZ = min[2];
+		this.cellsX = cells(max[0] - min[0]);
+		this.cellsY = cells(max[1] - min[1]);
+		this.cellsZ = cells(max[2] - min[2]);
+
+		int[] counts = new int[cellsX * cellsY * cellsZ];
+		for(int k = 0; k < radii.length; k++) {
+			if(radii[k] == UNBOUNDED) {
+				continue;
+			}
+			Point3D p = lights.get(k).getPoint();
+			int x0 = cell(p.x - radii[k] - minX, cellsX), x1 = cell(p.x + radii[k] - minX, cellsX);
+			int y0 = cell(p.y - radii[k] - minY, cellsY), y1 = cell(p.y + radii[k] - minY, cellsY);
+			int z0 = cell(p.z - radii[k] - minZ, cellsZ), z1 = cell(p.z + radii[k] - minZ, cellsZ);
+			for(int z = z0; z <= z1; z++) {
+				for(int y = y0; y <= y1; y++) {
+					for(int x = x0; x <= x1; x++) {
+						counts[(z * cellsY + y) * cellsX + x]++;
+					}
+				}
+			}
+		}
+
+		this.cellStart = new int[counts.length + 1];
+		for(int c = 0; c < counts.length; c++) {
+			cellStart[c + 1] = cellStart[c] + counts[c];
+		}
+		this.cellLights = new int[cellStart[counts.length]];
+		int[] next = new int[counts.length];
+		System.arraycopy(cellStart, 0, next, 0, counts.length);
+		for(int k = 0; k < radii.length; k++) {
+			if(radii[k] == UNBOUNDED) {
+				continue;
+			}
+			Point3D p = lights.get(k).getPoint();
+			int x0 = cell(p.x - radii[k] - minX, cellsX), x1 = cell(p.x + radii[k] - minX, cellsX);
+			int y0 = cell(p.y - radii[k] - minY, cellsY), y1 = cell(p.y + radii[k] - minY, cellsY);
+			int z0 = cell(p.z - radii[k] - minZ, cellsZ), z1 = cell(p.z + radii[k] - minZ, cellsZ);
+			for(int z = z0; z <= z1; z++) {
+				for(int y = y0; y <= y1; y++) {
+					for(int x = x0; x <= x1; x++) {
+						int c = (z * cellsY + y) * cellsX + x;
+						cellLights[next[c]++] = k;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A method which creates a structure in which every light illuminates the whole scene.
+	 * @param lights - the lights.
+	 * @return the structure.
+	 */
+	public static LightCulling unbounded(List<LightSource> lights) {
+		double[] radii = new double[lights.size()];
+		Arrays.fill(radii, UNBOUNDED);
+		return new LightCulling(lights, radii);
+	}
+
+	/**
+	 * A method which calculates the number of cells needed to cover the given length.
+	 * @param length - the length.
+	 * @return number of cells, at least one.
+	 */
+	private int cells(double length) {
+		return Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil(length / cellSize)));
+	}
+
+	/**
+	 * A method which finds the cell containing a coordinate, clamped to the grid.
+	 * @param offset - coordinate relative to the minimum corner of the grid.
+	 * @param cells - number of cells along the axis.
+	 * @return index of the cell.
+	 */
+	private int cell(double offset, int cells) {
+		int c = (int) Math.floor(offset / cellSize);
+		return c < 0 ? 0 : c >= cells ? cells - 1 : c;
+	}
+
+	/**
+	 * A getter for the number of lights.
+	 * @return number of lights.
+	 */
+	public int size() {
+		return radii.length;
+	}
+
+	/**
+	 * A method which writes the indices of the lights which may illuminate a point.
+	 * @param point - the point.
+	 * @param lights - array into which the indices are written, at least {@link #size()} long.
+	 * @return number of written indices.
+	 */
+	public int lightsAt(Point3D point, int[] lights) {
+		int count = unbounded.length;
+		System.arraycopy(unbounded, 0, lights, 0, count);
+		if(cellLights.length == 0) {
+			return count;
+		}
+
+		double ox = point.x - minX, oy = point.y - minY, oz = point.z - minZ;
+		if(ox < 0 || oy < 0 || oz < 0
+				|| ox >= cellsX * cellSize || oy >= cellsY * cellSize || oz >= cellsZ * cellSize) {
+			return count;
+		}
+		int c = (cell(oz, cellsZ) * cellsY + cell(oy, cellsY)) * cellsX + cell(ox, cellsX);
+		for(int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+			lights[count++] = cellLights[k];
+		}
+		return count;
+	}
+
+	/**
+	 * A method which calculates how much of the intensity of a light reaches the given distance.
+	 * @param light - index of the light.
+	 * @param distance - distance from the light.
+	 * @return the factor, 1 for unbounded lights, 0 at and beyond the radius.
+	 */
+	public double falloff(int light, double distance) {
+		double radius = radii[light];
+		if(radius == UNBOUNDED) {
+			return 1;
+		}
+		if(distance >= radius) {
+			return 0;
+		}
+		double q = distance / radius;
+		q *= q;
+		double window = 1 - q * q;
+		return window * window;
+	}
+}
@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.IPrimitiveIntersectable;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+
+/**
+ * A {@link PrimitiveSet} of objects which implement {@link IPrimitiveIntersectable},
+ * used for the objects of a scene which can't be compiled into plain arrays.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class PrimitiveArray implements PrimitiveSet {
+
+	/**
+	 * objects of this set.
+	 */
+	private final IPrimitiveIntersectable[] objects;
+
+	/**
+	 * A constructor which accepts all the relevant data.
+	 * @param objects - {@code objects} variable.
+	 */
+	public PrimitiveArray(IPrimitiveIntersectable[] objects) {
+		this.objects = objects;
+	}
+
+	@Override
+	public int size() {
+		return objects.length;
+	}
+
+	@Override
+	public void getBounds(int index, double[] bounds, int offset) {
+		System.arraycopy(objects[index].getBounds(), 0, bounds, offset, 6);
+	}
+
+	@Override
+	public double findClosestRayDistance(int index, Ray ray) {
+		return objects[index].findClosestRayDistance(ray);
+	}
+
+	@Override
+	public double findClosestRayDistance(int index, Ray ray, double minDistance, double maxDistance) {
+		return objects[index].findClosestRayDistance(ray, minDistance, maxDistance);
+	}
+
+	@Override
+	public boolean occludes(int index, Ray ray, double maxDistance) {
+		return objects[index].occludes(ray, maxDistance);
+	}
+
+	@Override
+	public RayIntersection intersectionAt(int index, Ray ray, double distance) {
+		return objects[index].intersectionAt(ray, distance);
+	}
+
+	@Override
+	public PrimitiveArray permute(int[] order) {
+		IPrimitiveIntersectable[] result = new IPrimitiveIntersectable[order.length];
+		for(int k = 0; k < order.length; k++) {
+			result[k] = objects[order[k]];
+		}
+		return new PrimitiveArray(result);
+	}
+}
@@ -0,0 +1,144 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+
+/**
+ * An interface of indexed sets of primitives which a {@link BoundingVolumeHierarchy}
+ * is built over. Primitives are addressed by their index, so an implementation is free
+ * to keep them in plain arrays instead of separate objects.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public interface PrimitiveSet {
+
+	/**
+	 * A getter for the number of primitives of this set.
+	 * @return number of primitives.
+	 */
+	int size();
+
+	/**
+	 * A method which writes the axis-aligned box which contains a primitive.
+	 * @param index - index of the primitive.
+	 * @param bounds - array into which the minimum x, y and z coordinates followed by
+	 *        the maximum x, y and z coordinates are written.
+	 * @param offset - position in {@code bounds} of the first coordinate.
+	 */
+	void getBounds(int index, double[] bounds, int offset);
+
+	/**
+	 * A method which writes a sphere which contains a primitive. By default it is the
+	 * sphere around its {@link #getBounds(int, double[], int) bounds}.
+	 * @param index - index of the primitive.
+	 * @param sphere - array into which the x, y and z coordinates of the center followed
+	 *        by the radius are written.
+	 * @param offset - position in {@code sphere} of the first coordinate.
+	 */
+	default void getBoundingSphere(int index, double[] sphere, int offset) {
+		double[] bounds = new double[6];
+		getBounds(index, bounds, 0);
+		double r2 = 0;
+		for(int axis = 0; axis < 3; axis++) {
+			double half = (bounds[axis + 3] - bounds[axis]) / 2;
+			sphere[offset + axis] = bounds[axis] + half;
+			r2 += half * half;
+		}
+		sphere[offset + 3] = Math.sqrt(r2);
+	}
+
+	/**
+	 * A method which finds the distance from the ray's start to the first intersection
+	 * of a primitive in front of it. Doesn't allocate any objects.
+	 * @param index - index of the primitive.
+	 * @param ray - ray
+	 * @return the distance, or {@link Double#NaN} if there is no such intersection.
+	 */
+	double findClosestRayDistance(int index, Ray ray);
+
+	/**
+	 * A method which finds the distance from the ray's start to the first intersection
+	 * of a primitive within an interval of distances, so that a primitive which is farther
+	 * than the closest hit found so far can be rejected without computing its intersection.
+	 * Sets which can't search from the given minimum distance only report the first
+	 * intersection in front of the ray, if it lies within the interval.
+	 * @param index - index of the primitive.
+	 * @param ray - ray
+	 * @param minDistance - smallest accepted distance.
+	 * @param maxDistance - distance from which intersections aren't accepted.
+	 * @return the distance, or {@link Double#NaN} if there is no such intersection.
+	 */
+	default double findClosestRayDistance(int index, Ray ray, double minDistance, double maxDistance) {
+		double distance = findClosestRayDistance(index, ray);
+		return distance >= minDistance && distance < maxDistance ? distance : Double.NaN;
+	}
+
+	/**
+	 * A method which intersects a primitive with the rays of a packet, recording it
+	 * for every ray it is closer to than the closest intersection found so far.
+	 * @param index - index of the primitive.
+	 * @param packet - the packet.
+	 * @param mask - rays of the packet which are tested.
+	 */
+	default void findClosestRayDistances(int index, RayPacket packet, long mask) {
+		for(int k = 0; k < packet.size(); k++) {
+			if((mask & 1L << k) == 0) {
+				continue;
+			}
+			double d = findClosestRayDistance(index, packet.getRay(k));
+			if(d < packet.distance[k]) {
+				packet.distance[k] = d;
+				packet.index[k] = index;
+			}
+		}
+	}
+
+	/**
+	 * A method which checks whether a primitive blocks the segment of the ray between
+	 * its start and the given distance.
+	 * @param index - index of the primitive.
+	 * @param ray - ray
+	 * @param maxDistance - length of the segment.
+	 * @return {@code true} if there is an intersection on the segment, {@code false} otherwise.
+	 */
+	boolean occludes(int index, Ray ray, double maxDistance);
+
+	/**
+	 * A method which creates the intersection of a primitive which lies on the given ray
+	 * at the given distance, previously found by {@link #findClosestRayDistance(int, Ray)}.
+	 * @param index - index of the primitive.
+	 * @param ray - ray
+	 * @param distance - distance from the ray's start.
+	 * @return intersection.
+	 */
+	RayIntersection intersectionAt(int index, Ray ray, double distance);
+
+	/**
+	 * A method which creates a view of this set which precomputes whatever depends only on
+	 * the start of the rays, for when most rays start at the same point, like primary rays
+	 * at the eye. Rays which start elsewhere must still be handled correctly.
+	 * @param origin - the common start of the rays, compared by reference.
+	 * @return the view, or this set if nothing can be precomputed.
+	 */
+	default PrimitiveSet relativeTo(Point3D origin) {
+		return this;
+	}
+
+	/**
+	 * A method which creates a view of the same primitives which records its intersection
+	 * tests in the given counter. Sets which don't count their tests return themselves.
+	 * @param counter - counters of intersection tests.
+	 * @return the counting view.
+	 */
+	default PrimitiveSet counting(IntersectionCounter counter) {
+		return this;
+	}
+
+	/**
+	 * A method which creates a set of the same primitives in a different order.
+	 * @param order - for every index of the new set the index of the primitive in this set.
+	 * @return the reordered set.
+	 */
+	PrimitiveSet permute(int[] order);
+}
@@ -0,0 +1,95 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A task which runs a loop body over a range of indices, splitting the range in halves
+ * until the parts are small enough. Used for passes over arrays, such as the stages of
+ * {@link WavefrontRenderer} and the build of a {@link UniformGrid}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+class RangeTask extends RecursiveAction {
+
+	/**
+	 * randomly generated UID.
+	 */
+	private static final long serialVersionUID = 4127803652176120945L;
+
+	/**
+	 * A loop body which processes a range of indices.
+	 */
+	interface Body {
+
+		/**
+		 * A method which processes the indices between the given ones.
+		 * @param from - first index.
+		 * @param to - index after the last index.
+		 */
+		void run(int from, int to);
+	}
+
+	/**
+	 * body which is run.
+	 */
+	private Body body;
+	/**
+	 * first index this task has to process.
+	 */
+	private int from;
+	/**
+	 * index after the last index this task has to process.
+	 */
+	private int to;
+	/**
+	 * If the task is to process up to this many indices, then it isn't divided into smaller ones.
+	 */
+	private int grain;
+	/**
+	 * mutex variable, processing stops once it is set, may be {@code null}.
+	 */
+	private AtomicBoolean cancel;
+
+	/**
+	 * A constructor for a range which is always processed completely.
+	 * @param body - {@code body} variable.
+	 * @param from - {@code from} variable.
+	 * @param to - {@code to} variable.
+	 * @param grain - {@code grain} variable.
+	 */
+	RangeTask(Body body, int from, int to, int grain) {
+		this(body, from, to, grain, null);
+	}
+
+	/**
+	 * A constructor which accepts all the relevant data.
+	 * @param body - {@code body} variable.
+	 * @param from - {@code from} variable.
+	 * @param to - {@code to} variable.
+	 * @param grain - {@code grain} variable.
+	 * @param cancel - {@code cancel} variable.
+	 */
+	RangeTask(Body body, int from, int to, int grain, AtomicBoolean cancel) {
+		this.body = body;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+		this.cancel = cancel;
+	}
+
+	@Override
+	protected void compute() {
+		if(cancel != null && cancel.get()) {
+			return;
+		}
+		if(to - from <= grain) {
+			body.run(from, to);
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		invokeAll(new RangeTask(body, from, middle, grain, cancel),
+				new RangeTask(body, middle, to, grain, cancel));
+	}
+}
@@ -1,7 +1,6 @@
 package hr.fer.zemris.java.raytracer;
 
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import hr.fer.zemris.java.raytracer.model.*;
@@ -14,11 +13,6 @@ import hr.fer.zemris.java.raytracer.viewer.*;
  */
 public class RayCasterParallel {
 	
-	/**
-	 * If two doubles differs by a value lower than this they are conseidered equal.
-	 */
-	private static final double EPSILON = 1E-9;
-	
 	/**
 	 * Main method of this class.
 	 * Starts the rendering.
@@ -34,11 +28,26 @@ public class RayCasterParallel {
 	
 	/**
 	 * A method which creates an implementation of IRayTracerProducer which is suitable
-	 * for this task.
+	 * for this task. The scene and the pool are prepared once and reused by every request.
+	 * Primary visibility of the last frame is kept in a {@link GBuffer}, so a request with
+	 * the same camera only relights it. The viewer may start a request while a cancelled one
+	 * is still running, so the buffer is published together with its camera as one
+	 * {@link FilledFrame} and every request relights the frame it read. If
+	 * {@link RayCasterParallel2#ANTIALIASING_PROPERTY} is set, edges of the relit frame are
+	 * smoothed by {@link AdaptiveAntialiasing}, which casts primary rays for them again.
 	 * @return new IRayTracerProducer
 	 */
 	private static IRayTracerProducer getIRayTracerProducer() {
+		SceneTracer tracer = new SceneTracer(RayTracerViewer.createPredefinedScene());
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		AdaptiveAntialiasing antialiasing = Boolean.getBoolean(RayCasterParallel2.ANTIALIASING_PROPERTY)
+				? new AdaptiveAntialiasing() : null;
+		
 		return new IRayTracerProducer() {
+			/**
+			 * the last completed frame, {@code null} if there is none.
+			 */
+			private volatile FilledFrame last;
 			
 			@Override
 			public void produce(Point3D eye, Point3D view, Point3D viewUp, double horizontal,
@@ -51,20 +60,27 @@ public class RayCasterParallel {
 				short[] green = new short[width*height];
 				short[] blue = new short[width*height];
 				
-				Point3D og = view.sub(eye).modifyNormalize();
-				Point3D vuv = viewUp.normalize();
-				
-				Point3D j = vuv.sub(og.scalarMultiply(vuv.scalarProduct(og))).modifyNormalize();
-				Point3D i = og.vectorProduct(j).modifyNormalize();
-				
-				Point3D screenCorner = view.sub(i.scalarMultiply(horizontal / (double) 2))
-										.add(j.scalarMultiply(vertical / (double) 2));
-				
-				Scene scene = RayTracerViewer.createPredefinedScene();
-				
-				ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-				pool.invoke(new ColoringTask(height, width, horizontal, vertical, i, j,
-						screenCorner, eye, red, green, blue, scene, 0, height - 1));
+				FilledFrame frame = last;
+				if(frame == null || !frame.shows(eye, view, viewUp, horizontal, vertical, width, height)) {
+					Camera camera = new Camera(eye, view, viewUp, horizontal, vertical, width, height);
+					SceneTracer frameTracer = tracer.forOrigin(eye);
+					GBuffer buffer = new GBuffer(frameTracer, camera, pool, cancel);
+					if(cancel.get()) {
+						System.out.println("Izračuni prekinuti...");
+						return;
+					}
+					frame = new FilledFrame(buffer, camera, frameTracer, eye.copy(), view.copy(), viewUp.copy(),
+							horizontal, vertical);
+					last = frame;
+				}
+				frame.buffer.relight(tracer.getScene().getLights(), red, green, blue, pool);
+				if(antialiasing != null) {
+					antialiasing.apply(frame.tracer, frame.camera, frame.buffer.objects(), red, green, blue, pool, cancel);
+				}
+				if(cancel.get()) {
+					System.out.println("Izračuni prekinuti...");
+					return;
+				}
 				System.out.println("Izračuni gotovi...");
 				observer.acceptResult(red, green, blue, requestNo);
 				System.out.println("Dojava gotova...");
@@ -73,221 +89,82 @@ public class RayCasterParallel {
 	}
 	
 	/**
-	 * A class which represents one task for rendering based on RecursiveAction.
-	 *
+	 * A completed frame: its primary visibility together with the camera and the tracer
+	 * it was filled with. It isn't changed once it is created, so it can be relit by
+	 * several requests at the same time.
 	 */
-	public static class ColoringTask extends RecursiveAction {
-
-		/**
-		 * randomly generated UID.
-		 */
-		private static final long serialVersionUID = -7583767804736688973L;
-
-		/**
-		 * If the task is to color up to this many lines, then
-		 * this task isn't divided into smaller ones.
-		 */
-		private static final int THRESHOLD = 4;
-
-		/**
-		 * height of screen in pixels.
-		 */
-		private int height;
-		/**
-		 * width of screen in pixels.
-		 */
-		private int width;
-		/**
-		 * width of space which is shown.
-		 */
-		private double horizontal;
-		/**
-		 * height of space which is shown.
-		 */
-		private double vertical;
-
-		/**
-		 * x-axis vector of the screen.
-		 */
-		private Point3D i;
-		/**
-		 * y-axis vector of the screen.
-		 */
-		private Point3D j;
-		/**
-		 * vector of the top left corner of the screen.
-		 */
-		private Point3D screenCorner;
+	private static class FilledFrame {
+		
 		/**
-		 * vector of viewer's position.
+		 * primary visibility of the frame.
 		 */
-		private Point3D eye;
+		private final GBuffer buffer;
 		/**
-		 * array of red color intensities for each pixel.
+		 * generator of the rays of the frame.
 		 */
-		private short[] red;
+		private final Camera camera;
 		/**
-		 * array of green color intensities for each pixel.
+		 * tracer prepared for the eye of the frame.
 		 */
-		private short[] green;
+		private final SceneTracer tracer;
 		/**
-		 * array of blue color intensities for each pixel.
+		 * camera of the frame.
 		 */
-		private short[] blue;
-		
+		private final Point3D eye, view, viewUp;
 		/**
-		 * Scene which is rendered.
+		 * size of space shown in the frame.
 		 */
-		private Scene scene;
+		private final double horizontal, vertical;
 		
-		/**
-		 * index of first row this task has to render.
-		 */
-		private int yMin;
-		/**
-		 * index of last row this task has to render.
-		 */
-		private int yMax;
-
 		/**
 		 * A constructor which accepts all the relevant data.
-		 * @param height - {@code height} variable.
-		 * @param width - {@code width} variable.
+		 * @param buffer - {@code buffer} variable.
+		 * @param camera - {@code camera} variable.
+		 * @param tracer - {@code tracer} variable.
+		 * @param eye - {@code eye} variable.
+		 * @param view - {@code view} variable.
+		 * @param viewUp - {@code viewUp} variable.
 		 * @param horizontal - {@code horizontal} variable.
 		 * @param vertical - {@code vertical} variable.
-		 * @param i - {@code i} variable.
-		 * @param j - {@code j} variable.
-		 * @param screenCorner - {@code screenCorner} variable.
-		 * @param eye - {@code eye} variable.
-		 * @param red - {@code red} variable.
-		 * @param green - {@code green} variable.
-		 * @param blue - {@code blue} variable.
-		 * @param scene - {@code scene} variable.
-		 * @param yMin - {@code yMin} variable.
-		 * @param yMax - {@code yMax} variable.
 		 */
-		public ColoringTask(int height, int width, double horizontal, double vertical, Point3D i, Point3D j,
-				Point3D screenCorner, Point3D eye, short[] red, short[] green, short[] blue, Scene scene, int yMin,
-				int yMax) {
-			super();
-			this.height = height;
-			this.width = width;
+		FilledFrame(GBuffer buffer, Camera camera, SceneTracer tracer, Point3D eye, Point3D view, Point3D viewUp,
+				double horizontal, double vertical) {
+			this.buffer = buffer;
+			this.camera = camera;
+			this.tracer = tracer;
+			this.eye = eye;
+			this.view = view;
+			this.viewUp = viewUp;
 			this.horizontal = horizontal;
 			this.vertical = vertical;
-			this.i = i;
-			this.j = j;
-			this.screenCorner = screenCorner;
-			this.eye = eye;
-			this.red = red;
-			this.green = green;
-			this.blue = blue;
-			this.scene = scene;
-			this.yMin = yMin;
-			this.yMax = yMax;
 		}
-
-		@Override
-		protected void compute() {
-			
-			if(yMax - yMin <= THRESHOLD) {
-				finish();
-				return;
-			}
-			
-			int middle = (yMin+yMax) / 2;
-			invokeAll(new ColoringTask(height, width, horizontal, vertical, i, j, screenCorner, eye, red, green, blue, scene, yMin, middle),
-					new ColoringTask(height, width, horizontal, vertical, i, j, screenCorner, eye, red, green, blue, scene, middle + 1, yMax)
-					);
-		}
-
+		
 		/**
-		 * A method which sets the red, green and blue to appropriate values.
-		 */
-		private void finish() {
-			short[] rgb = new short[3];
-			int offset = yMin * width;
-			for(int y = yMin; y <= yMax; y++) {
-				for(int x = 0; x < width; x++) {
-					Point3D screenPoint = screenCorner.add(i.scalarMultiply(horizontal * x / (double) (width - 1)))
-													  .sub(j.scalarMultiply(vertical * y / (double) (height - 1)));
-					Ray ray = Ray.fromPoints(eye, screenPoint);
-					tracer(scene, ray, rgb);
-					red[offset] = rgb[0] > 255 ? 255 : rgb[0];
-					green[offset] = rgb[1] > 255 ? 255 : rgb[1];
-					blue[offset] = rgb[2] > 255 ? 255 : rgb[2];
-					offset++;
-				}
-			}
+		 * A method which checks whether this frame shows what a request asks for.
+		 * @param eye - position of the viewer.
+		 * @param view - point the viewer looks at.
+		 * @param viewUp - direction upwards.
+		 * @param horizontal - horizontal size of space shown.
+		 * @param vertical - vertical size of space shown.
+		 * @param width - width in pixels.
+		 * @param height - height in pixels.
+		 * @return {@code true} if the frame can be relit for the request, {@code false} otherwise.
+		 */
+		boolean shows(Point3D eye, Point3D view, Point3D viewUp, double horizontal, double vertical,
+				int width, int height) {
+			return buffer.getWidth() == width && buffer.getHeight() == height
+					&& same(eye, this.eye) && same(view, this.view) && same(viewUp, this.viewUp)
+					&& horizontal == this.horizontal && vertical == this.vertical;
 		}
 		
 		/**
-		 * A method which sets the colors to appropriate value
-		 * depending on the first object this ray stumbles upon.
-		 * @param scene - scene which is colored.
-		 * @param ray - ray which is followed
-		 * @param rgb - color
+		 * A method which checks whether two points are equal.
+		 * @param a - first point.
+		 * @param b - second point.
+		 * @return {@code true} if they have the same coordinates, {@code false} otherwise.
 		 */
-		private void tracer(Scene scene, Ray ray, short[] rgb) {
-			RayIntersection closest = null;
-			for(var object : scene.getObjects()) {
-				var intersection = object.findClosestRayIntersection(ray);
-				if(intersection != null && intersection.getDistance() >= 0 &&
-						(closest == null || intersection.getDistance() - EPSILON < closest.getDistance())) {
-					closest = intersection;
-				}
-			}
-
-			rgb[0] = 15;
-			rgb[1] = 15;
-			rgb[2] = 15;
-			
-			if(closest == null) {
-				rgb[0] = 0;
-				rgb[1] = 0;
-				rgb[2] = 0;
-				return;
-			}
-			
-			for(var light : scene.getLights()) {
-				var lightRay = Ray.fromPoints(light.getPoint(), closest.getPoint());
-				RayIntersection closestToLight = null;
-				for(var object : scene.getObjects()) {
-					var intersection = object.findClosestRayIntersection(lightRay);
-					if(intersection != null && intersection.getDistance() >= 0 &&
-							(closestToLight == null || intersection.getDistance() - EPSILON < closestToLight.getDistance())) {
-						closestToLight = intersection;
-					}
-				}
-				
-				Point3D l = light.getPoint().sub(closest.getPoint());
-				double distance = l.norm();
-				l.modifyNormalize();
-				
-				if(distance - closestToLight.getDistance() > EPSILON) {
-					continue;
-				}
-				
-				double coef = l.scalarProduct(closest.getNormal());
-				if(coef < 1E-9) {
-					coef = 0;
-				}
-				
-				rgb[0] += Math.round(light.getR() * closest.getKdr() * coef);
-				rgb[1] += Math.round(light.getG() * closest.getKdg() * coef);
-				rgb[2] += Math.round(light.getB() * closest.getKdb() * coef);
-				coef = ray.start.sub(closest.getPoint()).modifyNormalize()
-							  .scalarProduct(closest.getNormal().scalarMultiply(2 * closest.getNormal().scalarProduct(l))
-											  .modifySub(l)
-							);
-				coef = Math.pow(coef, closest.getKrn());
-				if(coef < 0) {
-					coef = 0;
-				}
-				rgb[0] +=  Math.round(light.getR() * closest.getKrr() * coef);
-				rgb[1] +=  Math.round(light.getG() * closest.getKrg() * coef);
-				rgb[2] +=  Math.round(light.getB() * closest.getKrb() * coef);
-			}
+		private static boolean same(Point3D a, Point3D b) {
+			return a.x == b.x && a.y == b.y && a.z == b.z;
 		}
 	}
-		
 }
@@ -1,8 +1,14 @@
 package hr.fer.zemris.java.raytracer;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import hr.fer.zemris.java.raytracer.model.*;
 import hr.fer.zemris.java.raytracer.viewer.*;
@@ -15,9 +21,42 @@ import hr.fer.zemris.java.raytracer.viewer.*;
 public class RayCasterParallel2 {
 	
 	/**
-	 * If two doubles differs by a value lower than this they are conseidered equal.
+	 * Name of the system property which selects the {@link FrameDeadline} policy.
 	 */
-	private static final double EPSILON = 1E-9;
+	public static final String DEADLINE_PROPERTY = "raytracer.deadline";
+	/**
+	 * Name of the system property which sets the resolution of {@link ShadowMaps}.
+	 * Shadow rays are cast if it isn't set.
+	 */
+	public static final String SHADOW_MAP_PROPERTY = "raytracer.shadowmap";
+	/**
+	 * Name of the system property which sets the bias of {@link ShadowMaps}.
+	 */
+	public static final String SHADOW_BIAS_PROPERTY = "raytracer.shadowmap.bias";
+	/**
+	 * Bias of {@link ShadowMaps} if {@link #SHADOW_BIAS_PROPERTY} isn't set.
+	 */
+	private static final double DEFAULT_SHADOW_BIAS = 1E-3;
+	/**
+	 * Name of the system property which turns on counting of intersection tests,
+	 * reported together with the frame timings.
+	 */
+	public static final String INTERSECTIONS_PROPERTY = "raytracer.intersections";
+	/**
+	 * Name of the system property which turns on {@link AdaptiveAntialiasing} of the edges
+	 * of frames rendered at full resolution.
+	 */
+	public static final String ANTIALIASING_PROPERTY = "raytracer.antialiasing";
+	/**
+	 * Name of the system property which renders frames with a {@link WavefrontRenderer}
+	 * instead of pixel by pixel. Such frames aren't stopped at the deadline.
+	 */
+	public static final String WAVEFRONT_PROPERTY = "raytracer.wavefront";
+	/**
+	 * Name of the system property which sets the size of the tiles in which a {@link TileRenderer}
+	 * renders frames, instead of in bands of rows. Such frames aren't stopped at the deadline.
+	 */
+	public static final String TILES_PROPERTY = "raytracer.tiles";
 	
 	/**
 	 * Main method of this class.
@@ -25,7 +64,36 @@ public class RayCasterParallel2 {
 	 * @param args - has no effect.
 	 */
 	public static void main(String[] args) {
-		RayTracerViewer.show(getIRayTracerProducer(), getIRayTracerAnimator(), 30, 30);
+		IRayTracerAnimator animator = getIRayTracerAnimator();
+		RayTracerViewer.show(getIRayTracerProducer(animator, FrameDeadline.fromSystemProperty()), animator, 30, 30);
+	}
+	
+	/**
+	 * Policies for frames which are not rendered within the animator's target frame duration.
+	 */
+	public enum FrameDeadline {
+		/**
+		 * Frames are always rendered completely.
+		 */
+		NONE,
+		/**
+		 * Rendering stops when the time runs out and the previous frame is delivered
+		 * again instead, or the unfinished frame if there is no previous frame of its size.
+		 */
+		ABORT,
+		/**
+		 * Rendering stops when the time runs out and the frame is delivered with
+		 * the rows which were not rendered colored black.
+		 */
+		DELIVER_PARTIAL;
+		
+		/**
+		 * A method which reads the policy from {@link RayCasterParallel2#DEADLINE_PROPERTY}.
+		 * @return the configured policy, {@link #NONE} if none is set.
+		 */
+		public static FrameDeadline fromSystemProperty() {
+			return FrameDeadline.valueOf(System.getProperty(DEADLINE_PROPERTY, NONE.name()).toUpperCase());
+		}
 	}
 	
 	/**
@@ -71,46 +139,314 @@ public class RayCasterParallel2 {
 		};
 	}
 
+	/**
+	 * A method which switches the tracer to {@link ShadowMaps} if {@link #SHADOW_MAP_PROPERTY} is set.
+	 * The scene doesn't change during the animation, so the maps are built only once.
+	 * @param tracer - tracer which casts shadow rays.
+	 * @return the tracer which should be used.
+	 */
+	private static SceneTracer withShadowsFromSystemProperties(SceneTracer tracer) {
+		String resolution = System.getProperty(SHADOW_MAP_PROPERTY);
+		if(resolution == null) {
+			return tracer;
+		}
+		double bias = Double.parseDouble(System.getProperty(SHADOW_BIAS_PROPERTY, Double.toString(DEFAULT_SHADOW_BIAS)));
+		return tracer.withShadowMaps(Integer.parseInt(resolution), bias, ForkJoinPool.commonPool());
+	}
+
 	/**
 	 * A method which creates an implementation of IRayTracerProducer which is suitable
-	 * for this task.
+	 * for this task. The scene, the pool and the frame buffers are prepared once and reused
+	 * by every request. Rendered frames are delivered to the observer on a separate thread,
+	 * so the next frame can be rendered while the previous one is being delivered. Every frame
+	 * is split into bands of rows of roughly equal cost according to the {@link CostMap}
+	 * of the previous frame, and the bands are rendered most expensive first. The viewer asks
+	 * for the next frame only once it has received one, so every request is answered with
+	 * exactly one frame, even if it is cancelled or aborted at the deadline. The viewer may start
+	 * a request while a cancelled one is still running, and the renderers, the buffers and the
+	 * timings of the previous frames are shared by all requests, so requests are rendered one
+	 * at a time. A cancelled request stops at its next check of the cancellation, so the
+	 * following one barely waits.
+	 * @param animator - animator whose target frame duration is the deadline of every frame.
+	 * @param policy - what to do with frames which miss the deadline.
 	 * @return new IRayTracerProducer
 	 */
-	private static IRayTracerProducer getIRayTracerProducer() {
+	private static IRayTracerProducer getIRayTracerProducer(IRayTracerAnimator animator, FrameDeadline policy) {
+		SceneTracer tracer = withShadowsFromSystemProperties(new SceneTracer(RayTracerViewer.createPredefinedScene2()));
+		
 		return new IRayTracerProducer() {
+			/**
+			 * pool which renders every frame.
+			 */
+			private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+			/**
+			 * buffers which are reused between frames.
+			 */
+			private final FrameRing frames = new FrameRing();
+			/**
+			 * thread which delivers rendered frames to the observer.
+			 */
+			private final ExecutorService delivery = Executors.newSingleThreadExecutor(r -> {
+				Thread result = new Thread(r);
+				result.setDaemon(true);
+				return result;
+			});
+			/**
+			 * buffer of the frame which was delivered last, {@code null} before the first one.
+			 */
+			private short[][] lastFrame;
+			/**
+			 * delivery of the previous frame.
+			 */
+			private Future<?> previousDelivery;
+			/**
+			 * timings of rendered frames.
+			 */
+			private final FrameStatistics statistics = new FrameStatistics(2000);
+			/**
+			 * counters of intersection tests, {@code null} if they aren't counted.
+			 */
+			private final IntersectionCounter counter = Boolean.getBoolean(INTERSECTIONS_PROPERTY)
+					? new IntersectionCounter() : null;
+			/**
+			 * chooses the resolution at which frames are rendered.
+			 */
+			private final ResolutionController resolution = new ResolutionController(animator.getTargetTimeFrameDuration());
+			/**
+			 * smooths the edges of frames, {@code null} if they aren't smoothed.
+			 */
+			private final AdaptiveAntialiasing antialiasing = Boolean.getBoolean(ANTIALIASING_PROPERTY)
+					? new AdaptiveAntialiasing() : null;
+			/**
+			 * time every row of the previous frame took to render.
+			 */
+			private final CostMap costs = new CostMap();
+			/**
+			 * objects hit by the primary rays of the frame, reused between frames.
+			 */
+			private int[] objects;
+			/**
+			 * renders frames in stages, {@code null} if they are rendered pixel by pixel.
+			 */
+			private final WavefrontRenderer wavefront = Boolean.getBoolean(WAVEFRONT_PROPERTY)
+					? new WavefrontRenderer() : null;
+			/**
+			 * renders frames in tiles, {@code null} if they are rendered in bands of rows.
+			 */
+			private final TileRenderer tileRenderer = Integer.getInteger(TILES_PROPERTY) == null
+					? null : new TileRenderer(Integer.getInteger(TILES_PROPERTY));
+			/**
+			 * buffer into which frames are rendered at a reduced resolution.
+			 */
+			private short[][] reduced;
+			/**
+			 * eye of the previous frame.
+			 */
+			private Point3D previousEye;
+			/**
+			 * view of the previous frame.
+			 */
+			private Point3D previousView;
 			
 			@Override
 			public void produce(Point3D eye, Point3D view, Point3D viewUp, double horizontal,
 								double vertical, int width, int height, long requestNo,
 								IRayTracerResultObserver observer, AtomicBoolean cancel) {
+				synchronized(this) {
+					render(eye, view, viewUp, horizontal, vertical, width, height, requestNo, observer, cancel);
+				}
+			}
+			
+			/**
+			 * A method which renders the frame of a request and passes it on for delivery.
+			 * Must be called while holding the lock of this producer.
+			 * @param eye - position of the viewer.
+			 * @param view - point the viewer looks at.
+			 * @param viewUp - direction upwards.
+			 * @param horizontal - horizontal size of space shown.
+			 * @param vertical - vertical size of space shown.
+			 * @param width - width in pixels.
+			 * @param height - height in pixels.
+			 * @param requestNo - number of the request.
+			 * @param observer - observer which receives the frame.
+			 * @param cancel - rendering stops once it is set.
+			 */
+			private void render(Point3D eye, Point3D view, Point3D viewUp, double horizontal,
+								double vertical, int width, int height, long requestNo,
+								IRayTracerResultObserver observer, AtomicBoolean cancel) {
 		
 				System.out.println("Započinjem izračune...");
 				
-				short[] red = new short[width*height];
-				short[] green = new short[width*height];
-				short[] blue = new short[width*height];
-				
-				Point3D og = view.sub(eye).modifyNormalize();
-				Point3D vuv = viewUp.normalize();
+				short[][] frame = frames.next(width*height);
+				short[] red = frame[0];
+				short[] green = frame[1];
+				short[] blue = frame[2];
 				
-				Point3D j = vuv.sub(og.scalarMultiply(vuv.scalarProduct(og))).modifyNormalize();
-				Point3D i = og.vectorProduct(j).modifyNormalize();
+				boolean moving = !same(eye, previousEye) || !same(view, previousView);
+				previousEye = eye;
+				previousView = view;
+				double scale = resolution.nextScale(moving);
+				int renderWidth = ResolutionController.scaled(width, scale);
+				int renderHeight = ResolutionController.scaled(height, scale);
+				short[][] target = frame;
+				if(renderWidth != width || renderHeight != height) {
+					if(reduced == null || reduced[0].length < renderWidth * renderHeight) {
+						reduced = new short[][] {new short[width*height], new short[width*height], new short[width*height]};
+					}
+					target = reduced;
+				}
 				
-				Point3D screenCorner = view.sub(i.scalarMultiply(horizontal / (double) 2))
-										.add(j.scalarMultiply(vertical / (double) 2));
+				long start = System.nanoTime();
+				long deadline = policy == FrameDeadline.NONE ? start + Long.MAX_VALUE
+						: start + animator.getTargetTimeFrameDuration() * 1_000_000;
+				Camera camera = new Camera(eye, view, viewUp, horizontal, vertical, renderWidth, renderHeight);
+				SceneTracer frameTracer = tracer.forOrigin(eye);
+				if(counter != null) {
+					frameTracer = frameTracer.countingIntersections(counter);
+				}
+				if(antialiasing != null && (objects == null || objects.length < renderWidth * renderHeight)) {
+					objects = new int[width * height];
+				}
+				if(wavefront != null) {
+					wavefront.render(frameTracer, camera, target[0], target[1], target[2],
+							antialiasing == null ? null : objects, pool, cancel);
+				} else if(tileRenderer != null) {
+					tileRenderer.render(frameTracer, camera, target[0], target[1], target[2],
+							antialiasing == null ? null : objects, pool, cancel);
+				} else {
+					ScreenTiles tiles = frameTracer.screenTiles(camera);
+					int[] bands = costs.bands(renderHeight, pool.getParallelism());
+					long[] rowCosts = costs.rowCosts(renderHeight);
+					ColoringTask[] tasks = new ColoringTask[bands.length / 2];
+					for(int b = 0; b < tasks.length; b++) {
+						tasks[b] = new ColoringTask(camera, tiles, target[0], target[1], target[2],
+								antialiasing == null ? null : objects, frameTracer, bands[2 * b], bands[2 * b + 1],
+								cancel, deadline, rowCosts);
+					}
+					pool.invoke(new BandTask(tasks, new AtomicInteger(), pool.getParallelism()));
+					costs.frameFinished(!cancel.get() && System.nanoTime() - deadline <= 0);
+				}
+				if(antialiasing != null && target == frame && System.nanoTime() - deadline < 0) {
+					antialiasing.apply(frameTracer, camera, objects, red, green, blue, pool, cancel);
+				}
+				if(target != frame) {
+					ResolutionController.upscale(target, renderWidth, renderHeight, frame, width, height);
+				}
+				long end = System.nanoTime();
+				if(counter != null) {
+					statistics.intersectionsCounted(counter);
+				}
+				statistics.frameFinished(end - start);
+				resolution.frameFinished(end - start);
 				
-				Scene scene = RayTracerViewer.createPredefinedScene2();
+				boolean aborted = cancel.get() || end - deadline > 0 && policy == FrameDeadline.ABORT;
+				if(cancel.get()) {
+					System.out.println("Izračuni prekinuti...");
+				} else if(end - deadline > 0) {
+					System.out.println("Sličica nije gotova na vrijeme...");
+				} else {
+					System.out.println("Izračuni gotovi...");
+				}
+				short[][] result = aborted ? instead(frame) : frame;
+				lastFrame = result;
 				
-				ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-				pool.invoke(new ColoringTask(height, width, horizontal, vertical, i, j,
-						screenCorner, eye, red, green, blue, scene, 0, height - 1));
-				System.out.println("Izračuni gotovi...");
-				observer.acceptResult(red, green, blue, requestNo);
-				System.out.println("Dojava gotova...");
+				awaitPreviousDelivery();
+				previousDelivery = delivery.submit(() -> {
+					observer.acceptResult(result[0], result[1], result[2], requestNo);
+					System.out.println("Dojava gotova...");
+				});
+			}
+			
+			/**
+			 * A method which chooses the frame which is delivered instead of an unfinished one.
+			 * The previous frame is still held by the ring, so it is delivered again and the
+			 * buffer of the unfinished frame is returned to the ring.
+			 * @param frame - buffer of the unfinished frame.
+			 * @return the previous frame, or the unfinished one if there is no previous frame of its size.
+			 */
+			private short[][] instead(short[][] frame) {
+				if(lastFrame == null || lastFrame[0].length != frame[0].length) {
+					return frame;
+				}
+				frames.giveBack();
+				return lastFrame;
+			}
+			
+			/**
+			 * A method which checks whether two points of consecutive frames are equal.
+			 * @param a - first point.
+			 * @param b - second point, may be {@code null}.
+			 * @return {@code true} if the points are equal, {@code false} otherwise.
+			 */
+			private boolean same(Point3D a, Point3D b) {
+				return b != null && a.x == b.x && a.y == b.y && a.z == b.z;
+			}
+			
+			/**
+			 * A method which waits until the previous frame is delivered, so that at most
+			 * one frame is being delivered while another one is rendered.
+			 */
+			private void awaitPreviousDelivery() {
+				if(previousDelivery == null) {
+					return;
+				}
+				try {
+					previousDelivery.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
 			}
 		};
 	}
 	
+	/**
+	 * A ring of frame buffers which are reused between frames. One buffer is being
+	 * rendered into, one is being delivered and one is shown by the observer, so a
+	 * buffer is reused only after the observer has received a newer frame.
+	 */
+	private static class FrameRing {
+		
+		/**
+		 * number of buffers in the ring.
+		 */
+		private static final int FRAMES = 3;
+		
+		/**
+		 * red, green and blue arrays of every buffer.
+		 */
+		private short[][][] frames = new short[FRAMES][][];
+		/**
+		 * index of the buffer which is returned next.
+		 */
+		private int next;
+		
+		/**
+		 * A method which returns the next buffer of the ring, reallocating it if its size
+		 * doesn't match.
+		 * @param size - number of pixels of the frame.
+		 * @return red, green and blue arrays of the buffer.
+		 */
+		public synchronized short[][] next(int size) {
+			short[][] frame = frames[next];
+			if(frame == null || frame[0].length != size) {
+				frame = new short[][] {new short[size], new short[size], new short[size]};
+				frames[next] = frame;
+			}
+			next = (next + 1) % FRAMES;
+			return frame;
+		}
+		
+		/**
+		 * A method which returns the buffer last given by {@link #next(int)} to the ring,
+		 * so that it is given again by the following call.
+		 */
+		public synchronized void giveBack() {
+			next = (next + FRAMES - 1) % FRAMES;
+		}
+	}
+	
 	/**
 	 * A class which represents one task for rendering based on RecursiveAction.
 	 *
@@ -127,40 +463,23 @@ public class RayCasterParallel2 {
 		 * this task isn't divided into smaller ones.
 		 */
 		private static final int THRESHOLD = 4;
-
-		/**
-		 * height of screen in pixels.
-		 */
-		private int height;
-		/**
-		 * width of screen in pixels.
-		 */
-		private int width;
-		/**
-		 * width of space which is shown.
-		 */
-		private double horizontal;
 		/**
-		 * height of space which is shown.
+		 * number of neighboring pixels of a row whose primary rays are traced together.
 		 */
-		private double vertical;
+		private static final int PACKET_SIZE = 8;
 
 		/**
-		 * x-axis vector of the screen.
+		 * generator of the primary rays of the frame.
 		 */
-		private Point3D i;
+		private Camera camera;
 		/**
-		 * y-axis vector of the screen.
+		 * candidate spheres of the tiles of the screen.
 		 */
-		private Point3D j;
+		private ScreenTiles tiles;
 		/**
-		 * vector of the top left corner of the screen.
-		 */
-		private Point3D screenCorner;
-		/**
-		 * vector of viewer's position.
+		 * width of screen in pixels.
 		 */
-		private Point3D eye;
+		private int width;
 		/**
 		 * array of red color intensities for each pixel.
 		 */
@@ -173,11 +492,15 @@ public class RayCasterParallel2 {
 		 * array of blue color intensities for each pixel.
 		 */
 		private short[] blue;
+		/**
+		 * array of objects hit by the ray of each pixel, may be {@code null}.
+		 */
+		private int[] objects;
 		
 		/**
-		 * Scene which is rendered.
+		 * tracer of the scene which is rendered.
 		 */
-		private Scene scene;
+		private SceneTracer tracer;
 		
 		/**
 		 * index of first row this task has to render.
@@ -187,46 +510,77 @@ public class RayCasterParallel2 {
 		 * index of last row this task has to render.
 		 */
 		private int yMax;
+		/**
+		 * mutex variable, rendering stops once it is set.
+		 */
+		private AtomicBoolean cancel;
+		/**
+		 * value of {@link System#nanoTime()} after which rendering stops.
+		 */
+		private long deadline;
+		/**
+		 * array into which the time it took to render every row is written, may be {@code null}.
+		 */
+		private long[] rowCosts;
 
 		/**
 		 * A constructor which accepts all the relevant data.
-		 * @param height - {@code height} variable.
-		 * @param width - {@code width} variable.
-		 * @param horizontal - {@code horizontal} variable.
-		 * @param vertical - {@code vertical} variable.
-		 * @param i - {@code i} variable.
-		 * @param j - {@code j} variable.
-		 * @param screenCorner - {@code screenCorner} variable.
-		 * @param eye - {@code eye} variable.
+		 * @param camera - {@code camera} variable.
+		 * @param tiles - {@code tiles} variable.
 		 * @param red - {@code red} variable.
 		 * @param green - {@code green} variable.
 		 * @param blue - {@code blue} variable.
-		 * @param scene - {@code scene} variable.
+		 * @param objects - {@code objects} variable.
+		 * @param tracer - {@code tracer} variable.
 		 * @param yMin - {@code yMin} variable.
 		 * @param yMax - {@code yMax} variable.
+		 * @param cancel - {@code cancel} variable.
+		 * @param deadline - {@code deadline} variable.
 		 */
-		public ColoringTask(int height, int width, double horizontal, double vertical, Point3D i, Point3D j,
-				Point3D screenCorner, Point3D eye, short[] red, short[] green, short[] blue, Scene scene, int yMin,
-				int yMax) {
+		public ColoringTask(Camera camera, ScreenTiles tiles, short[] red, short[] green, short[] blue, int[] objects,
+				SceneTracer tracer, int yMin, int yMax, AtomicBoolean cancel, long deadline) {
 			super();
-			this.height = height;
-			this.width = width;
-			this.horizontal = horizontal;
-			this.vertical = vertical;
-			this.i = i;
-			this.j = j;
-			this.screenCorner = screenCorner;
-			this.eye = eye;
+			this.camera = camera;
+			this.tiles = tiles;
+			this.width = camera.getWidth();
 			this.red = red;
 			this.green = green;
 			this.blue = blue;
-			this.scene = scene;
+			this.objects = objects;
+			this.tracer = tracer;
 			this.yMin = yMin;
 			this.yMax = yMax;
+			this.cancel = cancel;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * A constructor which accepts all the relevant data, including the array for the times of the rows.
+		 * @param camera - {@code camera} variable.
+		 * @param tiles - {@code tiles} variable.
+		 * @param red - {@code red} variable.
+		 * @param green - {@code green} variable.
+		 * @param blue - {@code blue} variable.
+		 * @param objects - {@code objects} variable.
+		 * @param tracer - {@code tracer} variable.
+		 * @param yMin - {@code yMin} variable.
+		 * @param yMax - {@code yMax} variable.
+		 * @param cancel - {@code cancel} variable.
+		 * @param deadline - {@code deadline} variable.
+		 * @param rowCosts - {@code rowCosts} variable.
+		 */
+		public ColoringTask(Camera camera, ScreenTiles tiles, short[] red, short[] green, short[] blue, int[] objects,
+				SceneTracer tracer, int yMin, int yMax, AtomicBoolean cancel, long deadline, long[] rowCosts) {
+			this(camera, tiles, red, green, blue, objects, tracer, yMin, yMax, cancel, deadline);
+			this.rowCosts = rowCosts;
 		}
 
 		@Override
 		protected void compute() {
+			if(isStopped()) {
+				clear(yMin);
+				return;
+			}
 			
 			if(yMax - yMin <= THRESHOLD) {
 				finish();
@@ -234,99 +588,126 @@ public class RayCasterParallel2 {
 			}
 			
 			int middle = (yMin+yMax) / 2;
-			invokeAll(new ColoringTask(height, width, horizontal, vertical, i, j, screenCorner, eye, red, green, blue, scene, yMin, middle),
-					new ColoringTask(height, width, horizontal, vertical, i, j, screenCorner, eye, red, green, blue, scene, middle + 1, yMax)
+			invokeAll(new ColoringTask(camera, tiles, red, green, blue, objects, tracer, yMin, middle, cancel, deadline, rowCosts),
+					new ColoringTask(camera, tiles, red, green, blue, objects, tracer, middle + 1, yMax, cancel, deadline, rowCosts)
 					);
 		}
 
 		/**
-		 * A method which sets the red, green and blue to appropriate values.
+		 * A method which renders all rows of this task on the current thread, without dividing it.
+		 */
+		private void renderBand() {
+			if(isStopped()) {
+				clear(yMin);
+				return;
+			}
+			finish();
+		}
+
+		/**
+		 * A method which sets the red, green and blue to appropriate values,
+		 * tracing the primary rays in packets of {@value #PACKET_SIZE} pixels.
 		 */
 		private void finish() {
-			short[] rgb = new short[3];
+			Ray ray = camera.newRay();
+			RayPacket packet = new RayPacket(PACKET_SIZE);
+			short[] rgb = new short[3 * PACKET_SIZE];
 			int offset = yMin * width;
 			for(int y = yMin; y <= yMax; y++) {
-				for(int x = 0; x < width; x++) {
-					Point3D screenPoint = screenCorner.add(i.scalarMultiply(horizontal * x / (double) (width - 1)))
-													  .sub(j.scalarMultiply(vertical * y / (double) (height - 1)));
-					Ray ray = Ray.fromPoints(eye, screenPoint);
-					tracer(scene, ray, rgb);
-					red[offset] = rgb[0] > 255 ? 255 : rgb[0];
-					green[offset] = rgb[1] > 255 ? 255 : rgb[1];
-					blue[offset] = rgb[2] > 255 ? 255 : rgb[2];
-					offset++;
+				if(isStopped()) {
+					clear(y);
+					return;
+				}
+				long rowStart = rowCosts == null ? 0 : System.nanoTime();
+				for(int x = 0; x < width; x += PACKET_SIZE) {
+					int end = Math.min(x + PACKET_SIZE, width);
+					packet.clear();
+					for(int px = x; px < end; px++) {
+						camera.setRay(ray, px, y);
+						packet.add(ray);
+					}
+					tracer.tracer(packet, tiles, tiles.tileOf(x, y), rgb, objects, offset);
+					for(int k = 0; k < end - x; k++) {
+						red[offset] = rgb[3 * k] > 255 ? 255 : rgb[3 * k];
+						green[offset] = rgb[3 * k + 1] > 255 ? 255 : rgb[3 * k + 1];
+						blue[offset] = rgb[3 * k + 2] > 255 ? 255 : rgb[3 * k + 2];
+						offset++;
+					}
+				}
+				if(rowCosts != null) {
+					rowCosts[y] = System.nanoTime() - rowStart;
 				}
 			}
 		}
+
+		/**
+		 * A method which checks whether rendering of the frame should stop, either because
+		 * it was cancelled or because its deadline has passed.
+		 * @return {@code true} if rendering should stop, {@code false} otherwise.
+		 */
+		private boolean isStopped() {
+			return cancel.get() || System.nanoTime() - deadline > 0;
+		}
 		
 		/**
-		 * A method which sets the colors to appropriate value
-		 * depending on the first object this ray stumbles upon.
-		 * @param scene - scene which is colored.
-		 * @param ray - ray which is followed
-		 * @param rgb - color
-		 */
-		private void tracer(Scene scene, Ray ray, short[] rgb) {
-			RayIntersection closest = null;
-			for(var object : scene.getObjects()) {
-				var intersection = object.findClosestRayIntersection(ray);
-				if(intersection != null && intersection.getDistance() >= 0 &&
-						(closest == null || intersection.getDistance() - EPSILON < closest.getDistance())) {
-					closest = intersection;
-				}
-			}
+		 * A method which colors the rows of this task which won't be rendered black.
+		 * @param from - index of the first such row.
+		 */
+		private void clear(int from) {
+			Arrays.fill(red, from * width, (yMax + 1) * width, (short) 0);
+			Arrays.fill(green, from * width, (yMax + 1) * width, (short) 0);
+			Arrays.fill(blue, from * width, (yMax + 1) * width, (short) 0);
+		}
+	}
 
-			rgb[0] = 15;
-			rgb[1] = 15;
-			rgb[2] = 15;
-			
-			if(closest == null) {
-				rgb[0] = 0;
-				rgb[1] = 0;
-				rgb[2] = 0;
+	/**
+	 * A task which renders bands of rows in the given order. Each of the tasks into which it is
+	 * divided takes the next band which nobody has taken yet until none are left, so the
+	 * bands, ordered from the most expensive one, are started in that order.
+	 */
+	private static class BandTask extends RecursiveAction {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 6215394870232147795L;
+
+		/**
+		 * bands which are rendered, in the order in which they are taken.
+		 */
+		private ColoringTask[] bands;
+		/**
+		 * index of the next band which hasn't been taken.
+		 */
+		private AtomicInteger next;
+		/**
+		 * number of tasks which take bands.
+		 */
+		private int workers;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param bands - {@code bands} variable.
+		 * @param next - {@code next} variable.
+		 * @param workers - {@code workers} variable.
+		 */
+		BandTask(ColoringTask[] bands, AtomicInteger next, int workers) {
+			this.bands = bands;
+			this.next = next;
+			this.workers = workers;
+		}
+
+		@Override
+		protected void compute() {
+			if(workers > 1) {
+				invokeAll(new BandTask(bands, next, workers / 2), new BandTask(bands, next, workers - workers / 2));
 				return;
 			}
-			
-			for(var light : scene.getLights()) {
-				var lightRay = Ray.fromPoints(light.getPoint(), closest.getPoint());
-				RayIntersection closestToLight = null;
-				for(var object : scene.getObjects()) {
-					var intersection = object.findClosestRayIntersection(lightRay);
-					if(intersection != null && intersection.getDistance() >= 0 &&
-							(closestToLight == null || intersection.getDistance() - EPSILON < closestToLight.getDistance())) {
-						closestToLight = intersection;
-					}
-				}
-				
-				Point3D l = light.getPoint().sub(closest.getPoint());
-				double distance = l.norm();
-				l.modifyNormalize();
-				
-				if(distance - closestToLight.getDistance() > EPSILON) {
-					continue;
-				}
-				
-				double coef = l.scalarProduct(closest.getNormal());
-				if(coef < 1E-9) {
-					coef = 0;
-				}
-				
-				rgb[0] += Math.round(light.getR() * closest.getKdr() * coef);
-				rgb[1] += Math.round(light.getG() * closest.getKdg() * coef);
-				rgb[2] += Math.round(light.getB() * closest.getKdb() * coef);
-				coef = ray.start.sub(closest.getPoint()).modifyNormalize()
-							  .scalarProduct(closest.getNormal().scalarMultiply(2 * closest.getNormal().scalarProduct(l))
-											  .modifySub(l)
-							);
-				coef = Math.pow(coef, closest.getKrn());
-				if(coef < 0) {
-					coef = 0;
-				}
-				rgb[0] +=  Math.round(light.getR() * closest.getKrr() * coef);
-				rgb[1] +=  Math.round(light.getG() * closest.getKrg() * coef);
-				rgb[2] +=  Math.round(light.getB() * closest.getKrb() * coef);
+
+			for(int b = next.getAndIncrement(); b < bands.length; b = next.getAndIncrement()) {
+				bands[b].renderBand();
 			}
-		}		
+		}
 	}
 		
 }
@@ -0,0 +1,194 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+
+/**
+ * A packet of coherent rays, such as primary rays of neighboring pixels, which are
+ * traced through a {@link BoundingVolumeHierarchy} together. The rays are kept as
+ * separate arrays of coordinates, so every test of a node or a primitive is a plain
+ * loop over the rays. Rays which can't hit something are masked out by the bits
+ * of a {@code long}, so a packet holds at most {@value #MAX_SIZE} rays. Added rays
+ * are copied into rays owned by the packet, so a packet can be refilled without
+ * creating any objects.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class RayPacket {
+
+	/**
+	 * highest number of rays in a packet.
+	 */
+	public static final int MAX_SIZE = 64;
+
+	/**
+	 * the rays of the packet, reused every time it is refilled.
+	 */
+	final Ray[] rays;
+	/**
+	 * coordinates of the starts of the rays.
+	 */
+	final double[] ox, oy, oz;
+	/**
+	 * coordinates of the directions of the rays.
+	 */
+	final double[] dx, dy, dz;
+	/**
+	 * inverses of the coordinates of the directions of the rays.
+	 */
+	final double[] ix, iy, iz;
+	/**
+	 * distance to the closest intersection found so far for every ray.
+	 */
+	final double[] distance;
+	/**
+	 * index of the closest primitive found so far for every ray, -1 if there is none.
+	 */
+	final int[] index;
+	/**
+	 * number of rays in the packet.
+	 */
+	private int size;
+	/**
+	 * start shared by all rays of the packet, {@code null} if they start at different points.
+	 */
+	private Point3D start;
+
+	/**
+	 * A constructor which creates an empty packet.
+	 * @param capacity - highest number of rays of the packet, at most {@value #MAX_SIZE}.
+	 * @throws IllegalArgumentException if the capacity isn't between 1 and {@value #MAX_SIZE}.
+	 */
+	public RayPacket(int capacity) {
+		if(capacity < 1 || capacity > MAX_SIZE) {
+			throw new IllegalArgumentException("Packet capacity must be between 1 and " + MAX_SIZE + ".");
+		}
+		this.rays = new Ray[capacity];
+		for(int k = 0; k < capacity; k++) {
+			rays[k] = new Ray(null, new Point3D());
+		}
+		this.ox = new double[capacity];
+		this.oy = new double[capacity];
+		this.oz = new double[capacity];
+		this.dx = new double[capacity];
+		this.dy = new double[capacity];
+		this.dz = new double[capacity];
+		this.ix = new double[capacity];
+		this.iy = new double[capacity];
+		this.iz = new double[capacity];
+		this.distance = new double[capacity];
+		this.index = new int[capacity];
+	}
+
+	/**
+	 * A getter for the highest number of rays of the packet.
+	 * @return the capacity.
+	 */
+	public int capacity() {
+		return rays.length;
+	}
+
+	/**
+	 * A getter for the number of rays in the packet.
+	 * @return number of rays.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * A getter for the start shared by all rays of the packet.
+	 * @return the start, or {@code null} if the rays start at different points.
+	 */
+	public Point3D getStart() {
+		return start;
+	}
+
+	/**
+	 * A getter for a ray of the packet.
+	 * @param k - position of the ray.
+	 * @return the ray.
+	 */
+	public Ray getRay(int k) {
+		return rays[k];
+	}
+
+	/**
+	 * A method which removes all rays from the packet.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * A method which adds a copy of a ray to the packet. The start of the ray is shared,
+	 * while the direction is copied, so the caller may reuse the given ray.
+	 * @param ray - the ray.
+	 * @throws IllegalStateException if the packet is full.
+	 */
+	public void add(Ray ray) {
+		if(size == rays.length) {
+			throw new IllegalStateException("Packet is full.");
+		}
+		int k = size++;
+		start = k == 0 || start == ray.start ? ray.start : null;
+		Ray copy = rays[k];
+		copy.start = ray.start;
+		copy.direction.x = ray.direction.x;
+		copy.direction.y = ray.direction.y;
+		copy.direction.z = ray.direction.z;
+		ox[k] = ray.start.x;
+		oy[k] = ray.start.y;
+		oz[k] = ray.start.z;
+		dx[k] = ray.direction.x;
+		dy[k] = ray.direction.y;
+		dz[k] = ray.direction.z;
+		ix[k] = 1 / dx[k];
+		iy[k] = 1 / dy[k];
+		iz[k] = 1 / dz[k];
+		distance[k] = Double.POSITIVE_INFINITY;
+		index[k] = -1;
+	}
+
+	/**
+	 * A getter for the mask of all rays of the packet.
+	 * @return a mask with the lowest {@link #size()} bits set.
+	 */
+	long all() {
+		return size == MAX_SIZE ? -1L : (1L << size) - 1;
+	}
+
+	/**
+	 * A method which finds the rays which may enter the given box closer than their
+	 * closest intersection found so far. Rays are tested in order until one of them
+	 * enters the box, and that ray is returned together with all the following ones
+	 * without testing them, since coherent rays usually share the same nodes and
+	 * primitives test every ray exactly anyway.
+	 * @param bounds - array containing the box.
+	 * @param b - position of the box's minimum corner, followed by the maximum corner.
+	 * @param mask - rays which are tested.
+	 * @return mask of rays which may enter the box.
+	 */
+	long enter(double[] bounds, int b, long mask) {
+		for(int k = Long.numberOfTrailingZeros(mask); k < size; k++) {
+			if((mask & 1L << k) == 0) {
+				continue;
+			}
+			double t1 = (bounds[b] - ox[k]) * ix[k], t2 = (bounds[b + 3] - ox[k]) * ix[k];
+			double tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+			t1 = (bounds[b + 1] - oy[k]) * iy[k];
+			t2 = (bounds[b + 4] - oy[k]) * iy[k];
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+			t1 = (bounds[b + 2] - oz[k]) * iz[k];
+			t2 = (bounds[b + 5] - oz[k]) * iz[k];
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+
+			if(tMax >= Math.max(tMin, 0) && tMin < distance[k]) {
+				return mask & -(1L << k);
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,137 @@
+package hr.fer.zemris.java.raytracer;
+
+/**
+ * A class which chooses the internal resolution of rendered frames so that they
+ * are rendered within the target frame duration. While the camera moves, the scale
+ * of both dimensions is lowered when frames take too long and raised again when
+ * there is time to spare. Once the camera stops, frames are rendered at full resolution.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class ResolutionController {
+
+	/**
+	 * lowest scale of the width and height of a frame.
+	 */
+	public static final double MIN_SCALE = 0.25;
+	/**
+	 * highest factor by which the scale grows between two frames.
+	 */
+	private static final double MAX_GROWTH = 1.1;
+	/**
+	 * part of the target duration below which the scale is raised.
+	 */
+	private static final double HEADROOM = 0.8;
+
+	/**
+	 * target duration of a frame in nanoseconds.
+	 */
+	private final long target;
+	/**
+	 * scale of the width and height used while the camera moves.
+	 */
+	private double scale = 1;
+	/**
+	 * scale of the frame which is being rendered.
+	 */
+	private double current = 1;
+
+	/**
+	 * A constructor which accepts the target duration of a frame.
+	 * @param targetMillis - target duration in milliseconds.
+	 */
+	public ResolutionController(long targetMillis) {
+		this.target = targetMillis * 1_000_000;
+	}
+
+	/**
+	 * A method which returns the scale of the next frame.
+	 * @param moving - whether the camera has moved since the previous frame.
+	 * @return the scale, between {@link #MIN_SCALE} and 1.
+	 */
+	public synchronized double nextScale(boolean moving) {
+		current = moving ? scale : 1;
+		return current;
+	}
+
+	/**
+	 * A method which records the duration of the frame which was rendered at the scale
+	 * returned by the last call to {@link #nextScale(boolean)}. Since the duration is
+	 * proportional to the number of pixels, the scale is corrected by the square root
+	 * of the ratio of the target and the measured duration.
+	 * @param renderNanos - time it took to render the frame in nanoseconds.
+	 */
+	public synchronized void frameFinished(long renderNanos) {
+		if(renderNanos <= 0) {
+			return;
+		}
+		double ratio = (double) target / renderNanos;
+		if(ratio >= 1 && ratio < 1 / HEADROOM) {
+			return;
+		}
+
+		double corrected = current * Math.sqrt(ratio * HEADROOM);
+		scale = Math.max(MIN_SCALE, Math.min(1, Math.min(corrected, scale * MAX_GROWTH)));
+	}
+
+	/**
+	 * A method which calculates the number of pixels of a scaled dimension.
+	 * @param size - number of pixels at full resolution.
+	 * @param scale - the scale.
+	 * @return number of pixels, at least 2.
+	 */
+	public static int scaled(int size, double scale) {
+		return Math.min(size, Math.max(2, (int) Math.ceil(size * scale)));
+	}
+
+	/**
+	 * A method which upscales a frame rendered at a lower resolution using the nearest pixel.
+	 * @param source - red, green and blue arrays of the low resolution frame.
+	 * @param sourceWidth - width of the low resolution frame.
+	 * @param sourceHeight - height of the low resolution frame.
+	 * @param destination - red, green and blue arrays of the output frame.
+	 * @param width - width of the output frame.
+	 * @param height - height of the output frame.
+	 */
+	public static void upscale(short[][] source, int sourceWidth, int sourceHeight,
+			short[][] destination, int width, int height) {
+		int[] columns = new int[width];
+		for(int x = 0; x < width; x++) {
+			columns[x] = nearest(x, width, sourceWidth);
+		}
+
+		for(int c = 0; c < 3; c++) {
+			short[] src = source[c];
+			short[] dst = destination[c];
+			int offset = 0;
+			int previousRow = -1;
+			for(int y = 0; y < height; y++) {
+				int row = nearest(y, height, sourceHeight) * sourceWidth;
+				if(row == previousRow) {
+					System.arraycopy(dst, offset - width, dst, offset, width);
+				} else {
+					for(int x = 0; x < width; x++) {
+						dst[offset + x] = src[row + columns[x]];
+					}
+				}
+				previousRow = row;
+				offset += width;
+			}
+		}
+	}
+
+	/**
+	 * A method which finds the pixel of the low resolution frame nearest to the output pixel.
+	 * Both frames span the same area, the first and last pixels lying on its edges.
+	 * @param index - index of the output pixel.
+	 * @param size - number of output pixels.
+	 * @param sourceSize - number of pixels of the low resolution frame.
+	 * @return index of the nearest pixel.
+	 */
+	private static int nearest(int index, int size, int sourceSize) {
+		if(size == 1) {
+			return 0;
+		}
+		return (int) (((long) index * (sourceSize - 1) * 2 + (size - 1)) / (2 * (size - 1)));
+	}
+}
@@ -0,0 +1,774 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * A class which colors rays cast into a scene using the Phong model.
+ * It is shared by all the ray casters of this package.
+ * Spheres are compiled into {@link CompiledSpheres} and, together with other objects which
+ * implement {@link IPrimitiveIntersectable}, placed into {@link BoundingVolumeHierarchy hierarchies}
+ * which are built once per scene. They are tested by comparing plain distances, so only
+ * the closest hit is materialized as a {@link RayIntersection}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class SceneTracer {
+
+	/**
+	 * If two doubles differs by a value lower than this they are conseidered equal.
+	 */
+	public static final double EPSILON = 1E-9;
+
+	/**
+	 * Scene which is rendered.
+	 */
+	private final Scene scene;
+	/**
+	 * hierarchy over the compiled spheres, or a grid over them if they were moved.
+	 */
+	private final SpatialIndex spheres;
+	/**
+	 * hierarchy over the other objects of the scene which support allocation-free queries.
+	 */
+	private final BoundingVolumeHierarchy primitives;
+	/**
+	 * the remaining objects of the scene.
+	 */
+	private final GraphicalObject[] others;
+	/**
+	 * structure which finds the lights which can illuminate a point.
+	 */
+	private final LightCulling lights;
+	/**
+	 * depth maps used instead of shadow rays, {@code null} if shadow rays are cast.
+	 */
+	private final ShadowMaps shadowMaps;
+	/**
+	 * counters of intersection tests, {@code null} if tests aren't counted.
+	 */
+	private final IntersectionCounter counter;
+	/**
+	 * working arrays of every thread.
+	 */
+	private final ThreadLocal<Scratch> scratch;
+
+	/**
+	 * Working arrays of a thread, created once per thread so that shading doesn't allocate them.
+	 * @author Božidar Grgur Drmić
+	 *
+	 */
+	private static class Scratch {
+		/**
+		 * for every light the index of the sphere which last blocked that light, or -1 if there is none.
+		 */
+		private final int[] occluders;
+		/**
+		 * indices of the lights which can illuminate the current point.
+		 */
+		private final int[] lights;
+		/**
+		 * unit vector towards the current light.
+		 */
+		private final double[] direction = new double[3];
+		/**
+		 * normal of the surface at the current point.
+		 */
+		private final double[] normal = new double[3];
+		/**
+		 * unit vector from the current point towards the start of the ray.
+		 */
+		private final double[] view = new double[3];
+		/**
+		 * coefficients of the material at the current point, in the order of {@link #addLight}.
+		 */
+		private final double[] material = new double[7];
+		/**
+		 * red, green and blue of the current point, summed over the lights before they are limited to 255.
+		 */
+		private final int[] color = new int[3];
+		/**
+		 * index of the sphere hit by the last primary ray of the thread, -1 if there is none.
+		 * Neighboring pixels usually hit the same sphere, so it is tested first, and the
+		 * distance to it bounds the search for the remaining ones.
+		 */
+		private int lastHit = -1;
+
+		/**
+		 * A constructor which creates the arrays for the given number of lights.
+		 * @param lights - number of lights.
+		 */
+		private Scratch(int lights) {
+			this.occluders = new int[lights];
+			Arrays.fill(occluders, -1);
+			this.lights = new int[lights];
+		}
+	}
+
+	/**
+	 * A constructor which prepares the given scene for tracing, building the hierarchy
+	 * on the common pool.
+	 * @param scene - scene which is rendered.
+	 */
+	public SceneTracer(Scene scene) {
+		this(scene, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * A constructor which prepares the given scene for tracing.
+	 * @param scene - scene which is rendered.
+	 * @param pool - pool on which the hierarchy is built.
+	 */
+	public SceneTracer(Scene scene, ForkJoinPool pool) {
+		this(scene, CompiledSpheres.compile(spheresOf(scene)), pool);
+	}
+
+	/**
+	 * A constructor which prepares the given compiled spheres and the objects of the scene
+	 * which are not spheres for tracing. The spheres of the scene itself are ignored,
+	 * so large scenes can be created without a {@link Sphere} for every sphere.
+	 * @param scene - scene whose lights and other objects are rendered.
+	 * @param spheres - spheres which are rendered.
+	 * @param pool - pool on which the hierarchies are built.
+	 */
+	public SceneTracer(Scene scene, CompiledSpheres spheres, ForkJoinPool pool) {
+		this(scene, spheres, LightCulling.unbounded(scene.getLights()), pool);
+	}
+
+	/**
+	 * A constructor which prepares the given compiled spheres and the objects of the scene
+	 * which are not spheres for tracing, with the given influence of the lights of the scene.
+	 * The spheres of the scene itself are ignored.
+	 * @param scene - scene whose lights and other objects are rendered.
+	 * @param spheres - spheres which are rendered.
+	 * @param lights - influence of the lights of the scene, in the same order.
+	 * @param pool - pool on which the hierarchies are built.
+	 * @throws IllegalArgumentException if the number of lights differs from the scene.
+	 */
+	public SceneTracer(Scene scene, CompiledSpheres spheres, LightCulling lights, ForkJoinPool pool) {
+		if(lights.size() != scene.getLights().size()) {
+			throw new IllegalArgumentException("Light culling doesn't match the lights of the scene.");
+		}
+		this.scene = scene;
+		this.lights = lights;
+		this.shadowMaps = null;
+		this.counter = null;
+
+		List<IPrimitiveIntersectable> primitives = new ArrayList<>();
+		List<GraphicalObject> others = new ArrayList<>();
+		for(var object : scene.getObjects()) {
+			if(object.getClass() == Sphere.class) {
+				continue;
+			}
+			if(object instanceof IPrimitiveIntersectable) {
+				primitives.add((IPrimitiveIntersectable) object);
+			} else {
+				others.add(object);
+			}
+		}
+		this.spheres = new BoundingVolumeHierarchy(spheres, pool);
+		this.primitives = new BoundingVolumeHierarchy(
+				new PrimitiveArray(primitives.toArray(new IPrimitiveIntersectable[0])), pool);
+		this.others = others.toArray(new GraphicalObject[0]);
+		this.scratch = ThreadLocal.withInitial(() -> new Scratch(lights.size()));
+	}
+
+	/**
+	 * A constructor which creates a tracer sharing everything with another one,
+	 * except for the hierarchy of spheres, the shadow maps and the counters.
+	 * @param other - tracer whose data is shared.
+	 * @param spheres - hierarchy or grid over the compiled spheres.
+	 * @param shadowMaps - depth maps used instead of shadow rays, {@code null} to cast shadow rays.
+	 * @param counter - counters of intersection tests, {@code null} if tests aren't counted.
+	 */
+	private SceneTracer(SceneTracer other, SpatialIndex spheres, ShadowMaps shadowMaps,
+			IntersectionCounter counter) {
+		this.scene = other.scene;
+		this.spheres = spheres;
+		this.primitives = other.primitives;
+		this.others = other.others;
+		this.lights = other.lights;
+		this.shadowMaps = shadowMaps;
+		this.counter = counter;
+		this.scratch = other.scratch;
+	}
+
+	/**
+	 * A method which prepares a tracer for a frame whose primary rays start at the given eye.
+	 * Terms of the intersection tests which only depend on the eye are calculated once here
+	 * instead of for every pixel. It should be called once per frame, and the rays should
+	 * use the same {@link Point3D} instance as their start.
+	 * @param eye - start of the primary rays.
+	 * @return the tracer for the frame.
+	 */
+	public SceneTracer forOrigin(Point3D eye) {
+		return new SceneTracer(this, spheres.withPrimitives(spheres.getPrimitives().relativeTo(eye)), shadowMaps, counter);
+	}
+
+	/**
+	 * A method which creates a tracer which looks shadows up in depth maps of the lights
+	 * instead of casting a shadow ray for every lit point. The maps are built here, so it
+	 * should be called once per scene, and again whenever the scene changes.
+	 * @param resolution - number of texels along an edge of a face of the maps.
+	 * @param bias - distance by which a point has to be behind the stored depth to be in shadow.
+	 * @param pool - pool on which the maps are built.
+	 * @return the tracer.
+	 * @see ShadowMaps
+	 */
+	public SceneTracer withShadowMaps(int resolution, double bias, ForkJoinPool pool) {
+		return new SceneTracer(this, spheres, new ShadowMaps(this, resolution, bias, pool), counter);
+	}
+
+	/**
+	 * A method which creates a tracer for a frame of an animation in which the spheres move.
+	 * The animator moves the spheres of this tracer, and a {@link UniformGrid} is built over
+	 * the moved spheres in parallel, since it is much cheaper to build than a hierarchy.
+	 * It should be called once per frame on the tracer of the scene at rest, before
+	 * {@link #forOrigin(Point3D)}. Shadow maps are dropped, since they show the spheres at rest.
+	 * @param time - time of the frame in milliseconds since the start of the animation.
+	 * @param animator - animator which moves the spheres.
+	 * @param pool - pool on which the grid is built.
+	 * @return the tracer for the frame.
+	 */
+	public SceneTracer animated(long time, SphereAnimator animator, ForkJoinPool pool) {
+		CompiledSpheres rest = (CompiledSpheres) spheres.getPrimitives();
+		double[] centers = rest.centers();
+		animator.moveSpheres(time, centers);
+		return new SceneTracer(this, new UniformGrid(rest.withCenters(centers), pool), null, counter);
+	}
+
+	/**
+	 * A method which creates a tracer which records its intersection tests of spheres
+	 * and the rays which hit the same sphere as the previous one in the given counter.
+	 * @param counter - counters of intersection tests.
+	 * @return the tracer.
+	 */
+	public SceneTracer countingIntersections(IntersectionCounter counter) {
+		return new SceneTracer(this, spheres.withPrimitives(spheres.getPrimitives().counting(counter)), shadowMaps, counter);
+	}
+
+	/**
+	 * A method which builds the lists of candidate spheres for the tiles of the screen
+	 * of the given camera, to be used with {@link #tracer(RayPacket, ScreenTiles, int, short[])}.
+	 * @param camera - camera whose primary rays are traced.
+	 * @return the lists.
+	 */
+	public ScreenTiles screenTiles(Camera camera) {
+		return new ScreenTiles(camera, spheres.getPrimitives());
+	}
+
+	/**
+	 * A method which collects the spheres of the scene which can be compiled.
+	 * @param scene - the scene.
+	 * @return the spheres.
+	 */
+	private static List<Sphere> spheresOf(Scene scene) {
+		List<Sphere> spheres = new ArrayList<>();
+		for(var object : scene.getObjects()) {
+			if(object.getClass() == Sphere.class) {
+				spheres.add((Sphere) object);
+			}
+		}
+		return spheres;
+	}
+
+	/**
+	 * A getter for the scene which is rendered.
+	 * @return the scene.
+	 */
+	public Scene getScene() {
+		return scene;
+	}
+
+	/**
+	 * A method which finds the first intersection of the ray and any object in the scene.
+	 * @param ray - ray which is followed.
+	 * @return the intersection, or {@code null} if there is none.
+	 */
+	public RayIntersection findClosestIntersection(Ray ray) {
+		double[] distance = {Double.POSITIVE_INFINITY};
+		int sphere = findClosestSphere(ray, distance);
+		return findClosestIntersection(ray, sphere, distance, null);
+	}
+
+	/**
+	 * A method which finds the closest sphere of a ray, testing the sphere hit by the
+	 * previous ray of the current thread first, so that the hierarchy is searched only
+	 * up to the distance to it.
+	 * @param ray - ray which is followed.
+	 * @param distance - array into which the distance to the closest sphere is written.
+	 * @return index of the closest sphere, or -1 if there is none.
+	 */
+	private int findClosestSphere(Ray ray, double[] distance) {
+		Scratch local = scratch.get();
+		int last = local.lastHit;
+		if(last >= 0) {
+			double d = spheres.getPrimitives().findClosestRayDistance(last, ray, 0, distance[0]);
+			if(d < distance[0]) {
+				distance[0] = d;
+			} else {
+				last = -1;
+			}
+		}
+
+		int found = spheres.findClosest(ray, distance);
+		if(found >= 0) {
+			local.lastHit = found;
+			return found;
+		}
+		if(last >= 0 && counter != null) {
+			counter.coherent(1);
+		}
+		return last;
+	}
+
+	/**
+	 * A method which finds the first intersection of the ray and any object in the scene,
+	 * given the closest sphere which was already found.
+	 * @param ray - ray which is followed.
+	 * @param sphere - index of the closest sphere, or -1 if there is none.
+	 * @param distance - distance to the closest sphere, overwritten with the distance to the
+	 *        closest primitive if there is a closer one.
+	 * @param object - array into which the index of the intersected object is written,
+	 *        as numbered by {@link #objectCount()}, may be {@code null}.
+	 * @return the intersection, or {@code null} if there is none.
+	 */
+	private RayIntersection findClosestIntersection(Ray ray, int sphere, double[] distance, int[] object) {
+		int primitive = primitives.findClosest(ray, distance);
+		double best = distance[0];
+
+		RayIntersection closest = null;
+		int found = -1;
+		for(int k = 0; k < others.length; k++) {
+			var intersection = others[k].findClosestRayIntersection(ray);
+			if(intersection != null && intersection.getDistance() >= 0 && intersection.getDistance() < best) {
+				best = intersection.getDistance();
+				closest = intersection;
+				found = spheres.getPrimitives().size() + primitives.getPrimitives().size() + k;
+			}
+		}
+
+		if(closest == null && primitive >= 0) {
+			closest = primitives.intersectionAt(primitive, ray, best);
+			found = spheres.getPrimitives().size() + primitive;
+		} else if(closest == null && sphere >= 0) {
+			closest = spheres.intersectionAt(sphere, ray, best);
+			found = sphere;
+		}
+		if(object != null) {
+			object[0] = found;
+		}
+		return closest;
+	}
+
+	/**
+	 * A getter for the number of objects of the scene. Objects are numbered with the
+	 * compiled spheres first, then the primitives, then the remaining objects.
+	 * @return number of objects.
+	 */
+	int objectCount() {
+		return spheres.getPrimitives().size() + primitives.getPrimitives().size() + others.length;
+	}
+
+	/**
+	 * A method which finds the distance to the first intersection of the ray
+	 * and any object in the scene.
+	 * @param ray - ray which is followed.
+	 * @return the distance, or {@link Double#POSITIVE_INFINITY} if there is no intersection.
+	 */
+	public double findClosestDistance(Ray ray) {
+		double[] distance = {Double.POSITIVE_INFINITY};
+		findClosestSphere(ray, distance);
+		primitives.findClosest(ray, distance);
+		double best = distance[0];
+		for(var object : others) {
+			var intersection = object.findClosestRayIntersection(ray);
+			if(intersection != null && intersection.getDistance() >= 0 && intersection.getDistance() < best) {
+				best = intersection.getDistance();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * A method which checks whether any object of the scene blocks the segment of the ray
+	 * between its start and the given distance. Returns as soon as a blocker is found.
+	 * @param ray - ray which is followed.
+	 * @param maxDistance - length of the segment.
+	 * @return {@code true} if the segment is blocked, {@code false} otherwise.
+	 */
+	public boolean isOccluded(Ray ray, double maxDistance) {
+		if(spheres.findAnyHit(ray, maxDistance) >= 0 || primitives.findAnyHit(ray, maxDistance) >= 0) {
+			return true;
+		}
+		return isOccludedByOthers(ray, maxDistance);
+	}
+
+	/**
+	 * A method which checks whether the segment from a light is blocked, first testing
+	 * the sphere which blocked the same light the last time on the current thread,
+	 * since neighboring pixels are usually shadowed by the same object.
+	 * @param ray - ray which starts at the light.
+	 * @param maxDistance - length of the segment.
+	 * @param light - index of the light in the scene.
+	 * @param occluders - last blocking spheres of the current thread.
+	 * @return {@code true} if the segment is blocked, {@code false} otherwise.
+	 */
+	private boolean isOccluded(Ray ray, double maxDistance, int light, int[] occluders) {
+		int last = occluders[light];
+		if(last >= 0 && spheres.occludes(last, ray, maxDistance)) {
+			return true;
+		}
+
+		int found = spheres.findAnyHit(ray, maxDistance);
+		if(found >= 0) {
+			occluders[light] = found;
+			return true;
+		}
+		if(primitives.findAnyHit(ray, maxDistance) >= 0) {
+			return true;
+		}
+		return isOccludedByOthers(ray, maxDistance);
+	}
+
+	/**
+	 * A method which checks whether a point is hidden from a light of the scene, using the shadow
+	 * maps if the tracer has them and a shadow ray otherwise.
+	 * @param light - index of the light in the scene.
+	 * @param point - the point.
+	 * @param distance - distance from the light to the point.
+	 * @param cosine - cosine of the angle between the normal at the point and the direction towards the light.
+	 * @return {@code true} if the point is in shadow, {@code false} otherwise.
+	 */
+	boolean isShadowed(int light, Point3D point, double distance, double cosine) {
+		return isShadowed(light, point, distance, cosine, scratch.get().occluders);
+	}
+
+	/**
+	 * A method which checks whether a point is hidden from a light of the scene.
+	 * @param light - index of the light in the scene.
+	 * @param point - the point.
+	 * @param distance - distance from the light to the point.
+	 * @param cosine - cosine of the angle between the normal at the point and the direction towards the light.
+	 * @param occluders - last blocking spheres of the current thread.
+	 * @return {@code true} if the point is in shadow, {@code false} otherwise.
+	 */
+	private boolean isShadowed(int light, Point3D point, double distance, double cosine, int[] occluders) {
+		if(shadowMaps != null) {
+			return shadowMaps.isOccluded(light, point, distance, cosine);
+		}
+		Point3D source = scene.getLights().get(light).getPoint();
+		return isOccluded(Ray.fromPoints(source, point), distance - EPSILON, light, occluders);
+	}
+
+	/**
+	 * A method which calculates how much of the intensity of a light of the scene reaches the given distance.
+	 * @param light - index of the light in the scene.
+	 * @param distance - distance from the light.
+	 * @return the factor.
+	 * @see LightCulling#falloff(int, double)
+	 */
+	double falloff(int light, double distance) {
+		return lights.falloff(light, distance);
+	}
+
+	/**
+	 * A method which finds the lights of the scene which can illuminate a point.
+	 * @param point - the point.
+	 * @param candidates - array into which the indices of the lights are written, as long as the number of lights.
+	 * @return number of written indices.
+	 * @see LightCulling#lightsAt(Point3D, int[])
+	 */
+	int lightsAt(Point3D point, int[] candidates) {
+		return lights.lightsAt(point, candidates);
+	}
+
+	/**
+	 * A method which checks whether any object outside the hierarchies blocks the segment of the ray.
+	 * @param ray - ray which is followed.
+	 * @param maxDistance - length of the segment.
+	 * @return {@code true} if the segment is blocked, {@code false} otherwise.
+	 */
+	private boolean isOccludedByOthers(Ray ray, double maxDistance) {
+		for(var object : others) {
+			var intersection = object.findClosestRayIntersection(ray);
+			if(intersection != null && intersection.getDistance() >= 0 && intersection.getDistance() < maxDistance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A method which sets the colors to appropriate value
+	 * depending on the first object this ray stumbles upon.
+	 * @param ray - ray which is followed
+	 * @param rgb - color
+	 */
+	public void tracer(Ray ray, short[] rgb) {
+		shade(ray, findClosestIntersection(ray), rgb, 0);
+	}
+
+	/**
+	 * A method which sets the colors of all rays of the packet. The closest spheres are found
+	 * for the whole packet at once, while the remaining objects and the shading, including
+	 * the shadow rays which are no longer coherent, are handled one ray at a time.
+	 * @param packet - rays which are followed.
+	 * @param rgb - colors, three consecutive values for every ray of the packet.
+	 */
+	public void tracer(RayPacket packet, short[] rgb) {
+		tracer(packet, null, 0, rgb);
+	}
+
+	/**
+	 * A method which sets the colors of all rays of a packet of primary rays which lie in the
+	 * given tile of the screen. If the tile has a list of candidate spheres, only they are
+	 * tested, otherwise the spheres are searched through the hierarchy.
+	 * @param packet - rays which are followed.
+	 * @param tiles - candidate lists built by {@link #screenTiles(Camera)} of this tracer, may be {@code null}.
+	 * @param tile - index of the tile all the rays lie in.
+	 * @param rgb - colors, three consecutive values for every ray of the packet.
+	 */
+	public void tracer(RayPacket packet, ScreenTiles tiles, int tile, short[] rgb) {
+		tracer(packet, tiles, tile, rgb, null, 0);
+	}
+
+	/**
+	 * A method which sets the colors of all rays of a packet of primary rays which lie in the
+	 * given tile of the screen, and records which object every ray hit.
+	 * @param packet - rays which are followed.
+	 * @param tiles - candidate lists built by {@link #screenTiles(Camera)} of this tracer, may be {@code null}.
+	 * @param tile - index of the tile all the rays lie in.
+	 * @param rgb - colors, three consecutive values for every ray of the packet.
+	 * @param objects - array into which the index of the object hit by every ray is written,
+	 *        -1 if it hits nothing, may be {@code null}.
+	 * @param offset - position in {@code objects} of the first ray of the packet.
+	 */
+	public void tracer(RayPacket packet, ScreenTiles tiles, int tile, short[] rgb, int[] objects, int offset) {
+		findClosestSpheres(packet, tiles, tile);
+
+		double[] distance = new double[1];
+		int[] object = new int[1];
+		for(int k = 0; k < packet.size(); k++) {
+			Ray ray = packet.getRay(k);
+			distance[0] = packet.distance[k];
+			shade(ray, findClosestIntersection(ray, packet.index[k], distance, object), rgb, 3 * k);
+			if(objects != null) {
+				objects[offset + k] = object[0];
+			}
+		}
+	}
+
+	/**
+	 * A method which records the first intersections of a packet of primary rays into
+	 * consecutive pixels of a buffer, such as a {@link GBuffer}, without shading them.
+	 * @param packet - rays which are followed.
+	 * @param tiles - candidate lists built by {@link #screenTiles(Camera)} of this tracer, may be {@code null}.
+	 * @param tile - index of the tile all the rays lie in.
+	 * @param buffer - buffer which is filled.
+	 * @param pixel - index of the pixel of the first ray of the packet.
+	 */
+	void record(RayPacket packet, ScreenTiles tiles, int tile, HitSink buffer, int pixel) {
+		findClosestSpheres(packet, tiles, tile);
+
+		double[] distance = new double[1];
+		int[] object = new int[1];
+		for(int k = 0; k < packet.size(); k++) {
+			Ray ray = packet.getRay(k);
+			distance[0] = packet.distance[k];
+			RayIntersection closest = findClosestIntersection(ray, packet.index[k], distance, object);
+			buffer.store(pixel + k, ray, closest, object[0]);
+		}
+	}
+
+	/**
+	 * A method which finds the closest sphere of every ray of a packet of primary rays.
+	 * @param packet - rays which are followed.
+	 * @param tiles - candidate lists built by {@link #screenTiles(Camera)} of this tracer, may be {@code null}.
+	 * @param tile - index of the tile all the rays lie in.
+	 */
+	private void findClosestSpheres(RayPacket packet, ScreenTiles tiles, int tile) {
+		Scratch local = scratch.get();
+		PrimitiveSet set = spheres.getPrimitives();
+		int last = local.lastHit;
+		if(last >= 0) {
+			set.findClosestRayDistances(last, packet, packet.all());
+		}
+
+		if(tiles != null && tiles.isListed(tile)) {
+			long all = packet.all();
+			for(int k = tiles.start(tile), end = tiles.end(tile); k < end; k++) {
+				set.findClosestRayDistances(tiles.candidate(k), packet, all);
+			}
+		} else {
+			spheres.findClosest(packet);
+		}
+
+		int coherent = 0;
+		for(int k = 0; k < packet.size(); k++) {
+			if(packet.index[k] >= 0) {
+				coherent += packet.index[k] == last ? 1 : 0;
+				local.lastHit = packet.index[k];
+			}
+		}
+		if(counter != null) {
+			counter.coherent(coherent);
+		}
+	}
+
+	/**
+	 * A method which sets the color of a ray using the Phong model. Only the lights
+	 * found by {@link LightCulling} are considered, and lights which are behind the
+	 * surface or out of reach are skipped before their shadow ray is cast, or before
+	 * their shadow map is looked up if the tracer uses {@link ShadowMaps}. The contributions
+	 * of the lights are summed in {@code int}s and the sum is limited to 255, so any number
+	 * of lights can reach a point.
+	 * @param ray - ray which is followed.
+	 * @param closest - first intersection of the ray, {@code null} if there is none.
+	 * @param rgb - colors.
+	 * @param offset - position of the red component of the ray's color in {@code rgb}.
+	 */
+	private void shade(Ray ray, RayIntersection closest, short[] rgb, int offset) {
+		if(closest == null) {
+			rgb[offset] = 0;
+			rgb[offset + 1] = 0;
+			rgb[offset + 2] = 0;
+			return;
+		}
+
+		List<LightSource> sources = scene.getLights();
+		Scratch local = scratch.get();
+		Point3D point = closest.getPoint();
+		Point3D normal = closest.getNormal();
+		Point3D view = ray.start.sub(point).modifyNormalize();
+		local.normal[0] = normal.x;
+		local.normal[1] = normal.y;
+		local.normal[2] = normal.z;
+		local.view[0] = view.x;
+		local.view[1] = view.y;
+		local.view[2] = view.z;
+		materialOf(closest, local.material, 0);
+		int[] color = local.color;
+		color[0] = 15;
+		color[1] = 15;
+		color[2] = 15;
+
+		double[] l = local.direction;
+		int count = lights.lightsAt(point, local.lights);
+		for(int c = 0; c < count; c++) {
+			int k = local.lights[c];
+			var light = sources.get(k);
+			double distance = towards(light, point.x, point.y, point.z, l);
+			double coef = l[0] * normal.x + l[1] * normal.y + l[2] * normal.z;
+			double falloff = lights.falloff(k, distance);
+			if(coef < 0 || falloff == 0) {
+				continue;
+			}
+			if(isShadowed(k, point, distance, coef, local.occluders)) {
+				continue;
+			}
+			addLight(light, falloff, l, coef, local.normal, 0, local.view, 0, local.material, 0, color, 0);
+		}
+		rgb[offset] = clamp(color[0]);
+		rgb[offset + 1] = clamp(color[1]);
+		rgb[offset + 2] = clamp(color[2]);
+	}
+
+	/**
+	 * A method which limits a component of a color to 255.
+	 * @param component - sum of the contributions of the lights.
+	 * @return the component, at most 255.
+	 */
+	static short clamp(int component) {
+		return (short) (component > 255 ? 255 : component);
+	}
+
+	/**
+	 * A method which copies the coefficients of the material of an intersection.
+	 * @param closest - the intersection.
+	 * @param material - array into which the coefficients are written, in the order of {@link #addLight}.
+	 * @param m - position of the first coefficient.
+	 */
+	static void materialOf(RayIntersection closest, double[] material, int m) {
+		material[m] = closest.getKdr();
+		material[m + 1] = closest.getKdg();
+		material[m + 2] = closest.getKdb();
+		material[m + 3] = closest.getKrr();
+		material[m + 4] = closest.getKrg();
+		material[m + 5] = closest.getKrb();
+		material[m + 6] = closest.getKrn();
+	}
+
+	/**
+	 * A method which calculates the unit vector from a point towards a light.
+	 * @param light - the light.
+	 * @param x - x coordinate of the point.
+	 * @param y - y coordinate of the point.
+	 * @param z - z coordinate of the point.
+	 * @param l - array into which the vector is written, the zero vector if the point is at the light.
+	 * @return distance from the point to the light.
+	 */
+	static double towards(LightSource light, double x, double y, double z, double[] l) {
+		Point3D source = light.getPoint();
+		l[0] = source.x - x;
+		l[1] = source.y - y;
+		l[2] = source.z - z;
+		double distance = Math.sqrt(l[0] * l[0] + l[1] * l[1] + l[2] * l[2]);
+		if(distance < EPSILON) {
+			l[0] = 0;
+			l[1] = 0;
+			l[2] = 0;
+		} else {
+			l[0] /= distance;
+			l[1] /= distance;
+			l[2] /= distance;
+		}
+		return distance;
+	}
+
+	/**
+	 * A method which adds the diffuse and the specular component of a light which reaches
+	 * a point to its color.
+	 * @param light - the light.
+	 * @param falloff - part of the intensity of the light which reaches the point.
+	 * @param l - unit vector from the point towards the light.
+	 * @param coef - cosine of the angle between the normal and {@code l}.
+	 * @param normals - array containing the normal at the point.
+	 * @param n - position of the normal.
+	 * @param views - array containing the unit vector from the point towards the viewer.
+	 * @param v - position of the vector towards the viewer.
+	 * @param materials - array containing the coefficients {@code kdr}, {@code kdg}, {@code kdb},
+	 *        {@code krr}, {@code krg}, {@code krb} and {@code krn} of the material at the point.
+	 * @param m - position of the first coefficient.
+	 * @param rgb - sums of the colors, which aren't limited to 255.
+	 * @param offset - position of the red component of the color in {@code rgb}.
+	 */
+	static void addLight(LightSource light, double falloff, double[] l, double coef,
+			double[] normals, int n, double[] views, int v, double[] materials, int m, int[] rgb, int offset) {
+		if(coef < EPSILON) {
+			coef = 0;
+		}
+
+		double r = light.getR() * falloff, g = light.getG() * falloff, b = light.getB() * falloff;
+		rgb[offset] += Math.round(r * materials[m] * coef);
+		rgb[offset + 1] += Math.round(g * materials[m + 1] * coef);
+		rgb[offset + 2] += Math.round(b * materials[m + 2] * coef);
+
+		double scale = 2 * (normals[n] * l[0] + normals[n + 1] * l[1] + normals[n + 2] * l[2]);
+		double rx = scale * normals[n] - l[0];
+		double ry = scale * normals[n + 1] - l[1];
+		double rz = scale * normals[n + 2] - l[2];
+		coef = views[v] * rx + views[v + 1] * ry + views[v + 2] * rz;
+		coef = Math.pow(coef, materials[m + 6]);
+		if(coef < 0) {
+			coef = 0;
+		}
+		rgb[offset] +=  Math.round(r * materials[m + 3] * coef);
+		rgb[offset + 1] +=  Math.round(g * materials[m + 4] * coef);
+		rgb[offset + 2] +=  Math.round(b * materials[m + 5] * coef);
+	}
+}
@@ -0,0 +1,212 @@
+package hr.fer.zemris.java.raytracer;
+
+/**
+ * Lists of candidate primitives for square tiles of the screen, built once per frame.
+ * The bounding sphere of every primitive is projected onto the screen of a {@link Camera},
+ * and the primitive is listed in every tile its projection may touch, so the primary
+ * rays of a tile only need to be tested against the primitives of its list. Tiles whose
+ * list would be longer than {@value #MAX_CANDIDATES} get no list at all, and their rays
+ * are traced through the hierarchy instead, so the cost of a primary ray depends on
+ * the number of primitives around it rather than on the size of the scene.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class ScreenTiles {
+
+	/**
+	 * width and height of a tile in pixels.
+	 */
+	public static final int TILE_SIZE = 16;
+	/**
+	 * tiles with more candidates than this get no list.
+	 */
+	private static final int MAX_CANDIDATES = 64;
+	/**
+	 * relative enlargement of the bounding spheres, so that rounding errors never make a list miss a primitive.
+	 */
+	private static final double MARGIN = 1E-6;
+	/**
+	 * amount added to the squared radii, since intersection tests accept rays which miss
+	 * a sphere by a discriminant this small.
+	 */
+	private static final double GRAZE = 2E-9;
+
+	/**
+	 * number of columns of tiles.
+	 */
+	private final int columns;
+	/**
+	 * for every tile the position of its first candidate in {@code candidates},
+	 * followed by the position after the last candidate of the last tile.
+	 * Tiles without a list have no candidates and are marked in {@code listed}.
+	 */
+	private final int[] start;
+	/**
+	 * whether a tile has a list.
+	 */
+	private final boolean[] listed;
+	/**
+	 * candidates of all tiles, tile after tile.
+	 */
+	private final int[] candidates;
+
+	/**
+	 * A constructor which builds the lists.
+	 * @param camera - camera whose primary rays are traced.
+	 * @param primitives - primitives which are listed.
+	 */
+	public ScreenTiles(Camera camera, PrimitiveSet primitives) {
+		int width = camera.getWidth();
+		int height = camera.getHeight();
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		int tiles = columns * rows;
+
+		int n = primitives.size();
+		int[] ranges = new int[4 * n];
+		int[] counts = new int[tiles];
+		double[] sphere = new double[4];
+		double[] range = new double[2];
+		for(int k = 0; k < n; k++) {
+			primitives.getBoundingSphere(k, sphere, 0);
+			double dx = sphere[0] - camera.getEye().x;
+			double dy = sphere[1] - camera.getEye().y;
+			double dz = sphere[2] - camera.getEye().z;
+			double radius = Math.sqrt(sphere[3] * sphere[3] + GRAZE) * (1 + MARGIN);
+			double depth = dx * camera.forward.x + dy * camera.forward.y + dz * camera.forward.z;
+
+			int x0 = 0, x1 = width - 1, y0 = 0, y1 = height - 1;
+			double across = dx * camera.right.x + dy * camera.right.y + dz * camera.right.z;
+			if(project(across, depth, radius, camera.distance, range)) {
+				x0 = Math.max(x0, (int) Math.floor((range[0] + camera.horizontal / 2) * (width - 1) / camera.horizontal));
+				x1 = Math.min(x1, (int) Math.ceil((range[1] + camera.horizontal / 2) * (width - 1) / camera.horizontal));
+			} else {
+				x1 = -1;
+			}
+			double along = dx * camera.up.x + dy * camera.up.y + dz * camera.up.z;
+			if(project(along, depth, radius, camera.distance, range)) {
+				y0 = Math.max(y0, (int) Math.floor((camera.vertical / 2 - range[1]) * (height - 1) / camera.vertical));
+				y1 = Math.min(y1, (int) Math.ceil((camera.vertical / 2 - range[0]) * (height - 1) / camera.vertical));
+			} else {
+				y1 = -1;
+			}
+
+			if(x0 > x1 || y0 > y1) {
+				ranges[4 * k] = 0;
+				ranges[4 * k + 1] = -1;
+				continue;
+			}
+			x0 /= TILE_SIZE;
+			x1 /= TILE_SIZE;
+			y0 /= TILE_SIZE;
+			y1 /= TILE_SIZE;
+			ranges[4 * k] = x0;
+			ranges[4 * k + 1] = x1;
+			ranges[4 * k + 2] = y0;
+			ranges[4 * k + 3] = y1;
+			for(int ty = y0; ty <= y1; ty++) {
+				for(int tx = x0; tx <= x1; tx++) {
+					counts[ty * columns + tx]++;
+				}
+			}
+		}
+
+		this.start = new int[tiles + 1];
+		this.listed = new boolean[tiles];
+		for(int t = 0; t < tiles; t++) {
+			listed[t] = counts[t] <= MAX_CANDIDATES;
+			start[t + 1] = start[t] + (listed[t] ? counts[t] : 0);
+		}
+
+		this.candidates = new int[start[tiles]];
+		int[] next = new int[tiles];
+		System.arraycopy(start, 0, next, 0, tiles);
+		for(int k = 0; k < n; k++) {
+			for(int ty = ranges[4 * k + 2]; ty <= ranges[4 * k + 3]; ty++) {
+				for(int tx = ranges[4 * k]; tx <= ranges[4 * k + 1]; tx++) {
+					int t = ty * columns + tx;
+					if(listed[t]) {
+						candidates[next[t]++] = k;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A method which projects a sphere onto one axis of the screen. In the plane of that
+	 * axis and the viewing direction the sphere is a disk, and the rays which touch it lie
+	 * between the two tangents from the eye.
+	 * @param across - coordinate of the center along the axis of the screen.
+	 * @param depth - coordinate of the center along the viewing direction.
+	 * @param radius - radius of the sphere.
+	 * @param distance - distance from the eye to the screen.
+	 * @param range - array into which the lowest and the highest coordinate on the screen are written.
+	 * @return {@code false} if no ray towards the screen touches the sphere, {@code true} otherwise.
+	 */
+	private static boolean project(double across, double depth, double radius, double distance, double[] range) {
+		double length = Math.sqrt(across * across + depth * depth);
+		if(length <= radius) {
+			range[0] = Double.NEGATIVE_INFINITY;
+			range[1] = Double.POSITIVE_INFINITY;
+			return true;
+		}
+
+		double angle = Math.atan2(across, depth);
+		double spread = Math.asin(radius / length);
+		double lo = angle - spread, hi = angle + spread;
+		if(hi <= -Math.PI / 2 || lo >= Math.PI / 2) {
+			return false;
+		}
+		range[0] = lo <= -Math.PI / 2 ? Double.NEGATIVE_INFINITY : distance * Math.tan(lo);
+		range[1] = hi >= Math.PI / 2 ? Double.POSITIVE_INFINITY : distance * Math.tan(hi);
+		return true;
+	}
+
+	/**
+	 * A method which finds the tile of a pixel.
+	 * @param x - column of the pixel.
+	 * @param y - row of the pixel.
+	 * @return index of the tile.
+	 */
+	public int tileOf(int x, int y) {
+		return y / TILE_SIZE * columns + x / TILE_SIZE;
+	}
+
+	/**
+	 * A method which checks whether a tile has a list of candidates.
+	 * @param tile - index of the tile.
+	 * @return {@code true} if it has a list, {@code false} if its rays have to be traced
+	 *         through the hierarchy.
+	 */
+	public boolean isListed(int tile) {
+		return listed[tile];
+	}
+
+	/**
+	 * A getter for the position of the first candidate of a tile.
+	 * @param tile - index of the tile.
+	 * @return the position.
+	 */
+	public int start(int tile) {
+		return start[tile];
+	}
+
+	/**
+	 * A getter for the position after the last candidate of a tile.
+	 * @param tile - index of the tile.
+	 * @return the position.
+	 */
+	public int end(int tile) {
+		return start[tile + 1];
+	}
+
+	/**
+	 * A getter for a candidate.
+	 * @param position - position of the candidate, between {@link #start(int)} and {@link #end(int)} of its tile.
+	 * @return index of the primitive.
+	 */
+	public int candidate(int position) {
+		return candidates[position];
+	}
+}
@@ -0,0 +1,240 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import hr.fer.zemris.java.raytracer.model.LightSource;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+
+/**
+ * Depth cube maps of the lights of a static scene, an approximate alternative to casting
+ * a shadow ray for every lit point. Every light is surrounded by a cube whose six faces are
+ * divided into square texels, and for the direction through the center of every texel the
+ * distance from the light to the closest object is stored. A point is in shadow if it is
+ * farther from the light than the distance stored in the texel it falls into, by more than
+ * the bias, so a shadow test is a single array lookup. Since a texel stores the depth of a
+ * single direction, a surface which is tilted away from the light is at a different depth
+ * anywhere else in the texel, so the bias grows with the size of the texel at the point
+ * and with the tilt of the surface. The maps only depend on the scene and the lights,
+ * so they are built once and reused by every frame, but have to be built again whenever
+ * the scene changes.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class ShadowMaps {
+
+	/**
+	 * number of faces of a cube map.
+	 */
+	private static final int FACES = 6;
+	/**
+	 * number of texels which are filled by one task.
+	 */
+	private static final int THRESHOLD = 4096;
+	/**
+	 * highest tangent of the angle between the normal and the light used for the bias,
+	 * so surfaces which are almost parallel to the light don't lose their shadows.
+	 */
+	private static final double MAX_SLOPE = 10;
+
+	/**
+	 * coordinates of the lights.
+	 */
+	private final double[] lights;
+	/**
+	 * number of texels along an edge of a face.
+	 */
+	private final int resolution;
+	/**
+	 * distance by which a point facing the light has to be behind the stored depth to be in shadow.
+	 */
+	private final double bias;
+	/**
+	 * width of a texel seen from the light at unit distance, with a margin for its diagonal.
+	 */
+	private final double texelAngle;
+	/**
+	 * for every light the distances to the closest objects, face after face and row after row.
+	 */
+	private final float[][] depths;
+
+	/**
+	 * A constructor which builds the maps of all lights of the traced scene.
+	 * @param tracer - tracer whose scene is mapped.
+	 * @param resolution - number of texels along an edge of a face.
+	 * @param bias - distance by which a point facing the light has to be behind the stored depth to be in shadow.
+	 * @param pool - pool on which the maps are built.
+	 * @throws IllegalArgumentException if the resolution isn't positive or the bias is negative.
+	 */
+	public ShadowMaps(SceneTracer tracer, int resolution, double bias, ForkJoinPool pool) {
+		if(resolution < 1) {
+			throw new IllegalArgumentException("Resolution must be positive.");
+		}
+		if(!(bias >= 0)) {
+			throw new IllegalArgumentException("Bias can't be negative.");
+		}
+		this.resolution = resolution;
+		this.bias = bias;
+		this.texelAngle = 2 * Math.sqrt(2) / resolution;
+
+		List<LightSource> sources = tracer.getScene().getLights();
+		this.lights = new double[3 * sources.size()];
+		this.depths = new float[sources.size()][FACES * resolution * resolution];
+		for(int k = 0; k < sources.size(); k++) {
+			Point3D point = sources.get(k).getPoint();
+			lights[3 * k] = point.x;
+			lights[3 * k + 1] = point.y;
+			lights[3 * k + 2] = point.z;
+			pool.invoke(new DepthTask(tracer, point, depths[k], 0, depths[k].length));
+		}
+	}
+
+	/**
+	 * A getter for the number of texels along an edge of a face.
+	 * @return the resolution.
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * A getter for the bias.
+	 * @return the bias.
+	 */
+	public double getBias() {
+		return bias;
+	}
+
+	/**
+	 * A method which checks whether a point is hidden from a light.
+	 * @param light - index of the light in the scene.
+	 * @param point - the point.
+	 * @param distance - distance from the light to the point.
+	 * @param cosine - cosine of the angle between the normal of the surface at the point
+	 *        and the direction towards the light.
+	 * @return {@code true} if an object is closer to the light in the direction of the point,
+	 *         {@code false} otherwise.
+	 */
+	public boolean isOccluded(int light, Point3D point, double distance, double cosine) {
+		double dx = point.x - lights[3 * light];
+		double dy = point.y - lights[3 * light + 1];
+		double dz = point.z - lights[3 * light + 2];
+		double ax = Math.abs(dx), ay = Math.abs(dy), az = Math.abs(dz);
+
+		int face;
+		double major, u, v;
+		if(ax >= ay && ax >= az) {
+			face = dx >= 0 ? 0 : 1;
+			major = ax;
+			u = dy;
+			v = dz;
+		} else if(ay >= az) {
+			face = dy >= 0 ? 2 : 3;
+			major = ay;
+			u = dz;
+			v = dx;
+		} else {
+			face = dz >= 0 ? 4 : 5;
+			major = az;
+			u = dx;
+			v = dy;
+		}
+		if(major == 0) {
+			return false;
+		}
+
+		int column = texel(u / major);
+		int row = texel(v / major);
+		double slope = cosine > 0 ? Math.min(MAX_SLOPE, Math.sqrt(1 - cosine * cosine) / cosine) : MAX_SLOPE;
+		double tolerance = bias + distance * texelAngle * slope;
+		return distance - tolerance > depths[light][(face * resolution + row) * resolution + column];
+	}
+
+	/**
+	 * A method which finds the texel of a coordinate on a face.
+	 * @param coordinate - coordinate between -1 and 1.
+	 * @return index of the texel.
+	 */
+	private int texel(double coordinate) {
+		int texel = (int) ((coordinate + 1) / 2 * resolution);
+		return texel < 0 ? 0 : texel >= resolution ? resolution - 1 : texel;
+	}
+
+	/**
+	 * A task which fills a range of texels of the map of one light.
+	 */
+	private class DepthTask extends RecursiveAction {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 6120488473013952871L;
+
+		/**
+		 * tracer whose scene is mapped.
+		 */
+		private SceneTracer tracer;
+		/**
+		 * position of the light.
+		 */
+		private Point3D light;
+		/**
+		 * map which is filled.
+		 */
+		private float[] depth;
+		/**
+		 * first texel which is filled.
+		 */
+		private int from;
+		/**
+		 * position after the last texel which is filled.
+		 */
+		private int to;
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param tracer - {@code tracer} variable.
+		 * @param light - {@code light} variable.
+		 * @param depth - {@code depth} variable.
+		 * @param from - {@code from} variable.
+		 * @param to - {@code to} variable.
+		 */
+		DepthTask(SceneTracer tracer, Point3D light, float[] depth, int from, int to) {
+			this.tracer = tracer;
+			this.light = light;
+			this.depth = depth;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DepthTask(tracer, light, depth, from, middle),
+						new DepthTask(tracer, light, depth, middle, to));
+				return;
+			}
+
+			Ray ray = new Ray(light, new Point3D());
+			double[] direction = new double[3];
+			for(int k = from; k < to; k++) {
+				int face = k / (resolution * resolution);
+				int row = k / resolution % resolution;
+				int column = k % resolution;
+				int axis = face / 2;
+				direction[axis] = face % 2 == 0 ? 1 : -1;
+				direction[(axis + 1) % 3] = (2 * column + 1) / (double) resolution - 1;
+				direction[(axis + 2) % 3] = (2 * row + 1) / (double) resolution - 1;
+
+				ray.direction.x = direction[0];
+				ray.direction.y = direction[1];
+				ray.direction.z = direction[2];
+				ray.direction.modifyNormalize();
+				depth[k] = (float) tracer.findClosestDistance(ray);
+			}
+		}
+	}
+}
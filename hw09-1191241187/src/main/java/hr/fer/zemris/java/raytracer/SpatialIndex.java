@@ -0,0 +1,76 @@
+package hr.fer.zemris.java.raytracer;
+
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+
+/**
+ * An interface of structures which find the primitives of a {@link PrimitiveSet}
+ * hit by a ray without testing all of them. Primitives are referenced by their
+ * index in {@link #getPrimitives()}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public interface SpatialIndex {
+
+	/**
+	 * A getter for the primitives in the order in which the indices returned by
+	 * {@link #findClosest(Ray, double[])} and {@link #findAnyHit(Ray, double)} reference them.
+	 * @return the primitives.
+	 */
+	PrimitiveSet getPrimitives();
+
+	/**
+	 * A method which creates a structure with the same layout over a view of its primitives.
+	 * @param primitives - primitives in the same order as those of this structure,
+	 *        such as {@link PrimitiveSet#relativeTo(Point3D)} of {@link #getPrimitives()}.
+	 * @return the new structure.
+	 */
+	SpatialIndex withPrimitives(PrimitiveSet primitives);
+
+	/**
+	 * A method which creates the intersection of the primitive with the given index.
+	 * @param index - index of the primitive, as returned by {@link #findClosest(Ray, double[])}.
+	 * @param ray - ray which is followed.
+	 * @param distance - distance of the intersection from the ray's start.
+	 * @return the intersection.
+	 */
+	default RayIntersection intersectionAt(int index, Ray ray, double distance) {
+		return getPrimitives().intersectionAt(index, ray, distance);
+	}
+
+	/**
+	 * A method which checks whether the primitive with the given index blocks the segment of the ray.
+	 * @param index - index of the primitive, as returned by {@link #findAnyHit(Ray, double)}.
+	 * @param ray - ray which is followed.
+	 * @param maxDistance - length of the segment.
+	 * @return {@code true} if the segment is blocked, {@code false} otherwise.
+	 */
+	default boolean occludes(int index, Ray ray, double maxDistance) {
+		return getPrimitives().occludes(index, ray, maxDistance);
+	}
+
+	/**
+	 * A method which finds the object whose intersection with the ray is the closest one
+	 * which is nearer than {@code distance[0]}.
+	 * @param ray - ray which is followed.
+	 * @param distance - on input the maximum distance, on output the distance to the found object.
+	 * @return index of the found object, or -1 if there is none.
+	 */
+	int findClosest(Ray ray, double[] distance);
+
+	/**
+	 * A method which finds the closest intersection of every ray of the packet, starting
+	 * from the distances and indices already recorded in it.
+	 * @param packet - the packet.
+	 */
+	void findClosest(RayPacket packet);
+
+	/**
+	 * A method which finds any object which intersects the ray closer than the given distance.
+	 * @param ray - ray which is followed.
+	 * @param maxDistance - length of the tested segment of the ray.
+	 * @return index of the found object, or -1 if there is none.
+	 */
+	int findAnyHit(Ray ray, double maxDistance);
+}
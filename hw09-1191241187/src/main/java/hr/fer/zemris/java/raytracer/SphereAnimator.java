@@ -0,0 +1,20 @@
+package hr.fer.zemris.java.raytracer;
+
+/**
+ * A hook through which an animation moves the spheres of a scene. It is called once per
+ * frame by {@link SceneTracer#animated(long, SphereAnimator, java.util.concurrent.ForkJoinPool)},
+ * which then rebuilds a {@link UniformGrid} over the moved spheres.
+ * @author Božidar Grgur Drmić
+ *
+ */
+@FunctionalInterface
+public interface SphereAnimator {
+
+	/**
+	 * A method which moves the spheres to their positions at the given time.
+	 * @param time - time of the frame in milliseconds since the start of the animation.
+	 * @param centers - x, y and z coordinates of the center of every sphere at rest, in the order
+	 *        of the tracer's spheres, overwritten with the centers at the given time.
+	 */
+	void moveSpheres(long time, double[] centers);
+}
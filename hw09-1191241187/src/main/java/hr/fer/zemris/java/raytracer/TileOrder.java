@@ -0,0 +1,143 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Arrays;
+
+/**
+ * A division of an image into square tiles which are visited in Morton order. The order
+ * follows a Z-shaped curve which visits the four quadrants of every square of tiles one
+ * after another, so tiles which are visited close together in time also lie close together
+ * on the screen, and any consecutive range of the order covers a compact area of it.
+ * Rendering in this order keeps the candidate lists of {@link ScreenTiles} and the part of
+ * the image which is being written in the caches, which rows spanning the whole width of
+ * a wide image don't.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class TileOrder {
+
+	/**
+	 * width and height of a tile in pixels if no other is given.
+	 */
+	public static final int DEFAULT_SIZE = 32;
+
+	/**
+	 * width of the image in pixels.
+	 */
+	private final int width;
+	/**
+	 * height of the image in pixels.
+	 */
+	private final int height;
+	/**
+	 * width and height of a tile in pixels.
+	 */
+	private final int size;
+	/**
+	 * number of columns of tiles.
+	 */
+	private final int columns;
+	/**
+	 * indices of the tiles, row after row, in the order in which they are visited.
+	 */
+	private final int[] order;
+
+	/**
+	 * A constructor which divides an image into tiles of the given size.
+	 * @param width - width of the image in pixels.
+	 * @param height - height of the image in pixels.
+	 * @param size - width and height of a tile in pixels.
+	 * @throws IllegalArgumentException if the size isn't positive.
+	 */
+	public TileOrder(int width, int height, int size) {
+		if(size < 1) {
+			throw new IllegalArgumentException("Tile size must be positive.");
+		}
+		this.width = width;
+		this.height = height;
+		this.size = size;
+		this.columns = (width + size - 1) / size;
+		int rows = (height + size - 1) / size;
+
+		long[] keys = new long[columns * rows];
+		for(int ty = 0; ty < rows; ty++) {
+			for(int tx = 0; tx < columns; tx++) {
+				int tile = ty * columns + tx;
+				keys[tile] = (spread(tx) | spread(ty) << 1) << 32 | tile;
+			}
+		}
+		Arrays.sort(keys);
+		this.order = new int[keys.length];
+		for(int k = 0; k < keys.length; k++) {
+			order[k] = (int) keys[k];
+		}
+	}
+
+	/**
+	 * A method which spreads the bits of a coordinate so that there is a free bit after
+	 * each of them, into which the bits of the other coordinate are interleaved.
+	 * @param coordinate - column or row of a tile, less than 2<sup>16</sup>.
+	 * @return the spread bits.
+	 */
+	private static long spread(int coordinate) {
+		long bits = coordinate & 0xFFFF;
+		bits = (bits | bits << 8) & 0x00FF00FFL;
+		bits = (bits | bits << 4) & 0x0F0F0F0FL;
+		bits = (bits | bits << 2) & 0x33333333L;
+		bits = (bits | bits << 1) & 0x55555555L;
+		return bits;
+	}
+
+	/**
+	 * A getter for the number of tiles.
+	 * @return the number of tiles.
+	 */
+	public int count() {
+		return order.length;
+	}
+
+	/**
+	 * A getter for the width and height of a tile.
+	 * @return size in pixels.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * A method which finds the first column of a tile.
+	 * @param k - position of the tile in the order.
+	 * @return column of its left pixels.
+	 */
+	public int left(int k) {
+		return order[k] % columns * size;
+	}
+
+	/**
+	 * A method which finds the first row of a tile.
+	 * @param k - position of the tile in the order.
+	 * @return row of its top pixels.
+	 */
+	public int top(int k) {
+		return order[k] / columns * size;
+	}
+
+	/**
+	 * A method which finds the column after the last column of a tile, which is smaller
+	 * than the size of a tile suggests for tiles on the right edge of the image.
+	 * @param k - position of the tile in the order.
+	 * @return column after its right pixels.
+	 */
+	public int right(int k) {
+		return Math.min(left(k) + size, width);
+	}
+
+	/**
+	 * A method which finds the row after the last row of a tile, which is smaller
+	 * than the size of a tile suggests for tiles on the bottom edge of the image.
+	 * @param k - position of the tile in the order.
+	 * @return row after its bottom pixels.
+	 */
+	public int bottom(int k) {
+		return Math.min(top(k) + size, height);
+	}
+}
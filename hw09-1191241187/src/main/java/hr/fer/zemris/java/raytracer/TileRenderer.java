@@ -0,0 +1,209 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * A renderer which traces a frame in square tiles visited in the order of a {@link TileOrder},
+ * instead of in rows spanning the whole width of the frame. Rendered into an {@link ArgbFrame},
+ * the colors of a tile are packed into a buffer of the size of one tile and copied into the
+ * frame once the tile is finished, one row of the tile at a time. Rendered into separate arrays
+ * of red, green and blue, the colors are written into them directly. The primary rays of a row of a tile are traced in packets
+ * exactly as in {@link RayCasterParallel2.ColoringTask}, so both render the same images.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class TileRenderer {
+
+	/**
+	 * number of neighboring pixels of a row whose primary rays are traced together.
+	 * Packets start at columns divisible by it, so they never cross a tile of {@link ScreenTiles}.
+	 */
+	private static final int PACKET_SIZE = 8;
+	/**
+	 * If the task is to render up to this many tiles, then it isn't divided into smaller ones.
+	 */
+	private static final int TILES = 1;
+
+	/**
+	 * width and height of a tile in pixels.
+	 */
+	private final int size;
+
+	/**
+	 * A constructor for tiles of {@value TileOrder#DEFAULT_SIZE} pixels.
+	 */
+	public TileRenderer() {
+		this(TileOrder.DEFAULT_SIZE);
+	}
+
+	/**
+	 * A constructor which accepts the size of the tiles.
+	 * @param size - width and height of a tile in pixels.
+	 * @throws IllegalArgumentException if the size isn't positive.
+	 */
+	public TileRenderer(int size) {
+		if(size < 1) {
+			throw new IllegalArgumentException("Tile size must be positive.");
+		}
+		this.size = size;
+	}
+
+	/**
+	 * A getter for the size of the tiles.
+	 * @return width and height of a tile in pixels.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * A method which renders a frame in parallel, dividing the order of the tiles into
+	 * consecutive ranges, each of which covers a compact area of the frame.
+	 * @param tracer - tracer of the scene, prepared for the eye of the camera by {@link SceneTracer#forOrigin(Point3D)}.
+	 * @param camera - camera of the frame.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param objects - array into which the index of the object seen through every pixel is written, may be {@code null}.
+	 * @param pool - pool on which the frame is rendered.
+	 * @param cancel - rendering stops once it is set, leaving the frame incomplete.
+	 */
+	public void render(SceneTracer tracer, Camera camera, short[] red, short[] green, short[] blue, int[] objects,
+			ForkJoinPool pool, AtomicBoolean cancel) {
+		render(tracer, camera, red, green, blue, null, objects, pool, cancel);
+	}
+
+	/**
+	 * A method which renders a frame on the current thread.
+	 * @param tracer - tracer of the scene, prepared for the eye of the camera by {@link SceneTracer#forOrigin(Point3D)}.
+	 * @param camera - camera of the frame.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param objects - array into which the index of the object seen through every pixel is written, may be {@code null}.
+	 * @param cancel - rendering stops once it is set, leaving the frame incomplete.
+	 */
+	public void render(SceneTracer tracer, Camera camera, short[] red, short[] green, short[] blue, int[] objects,
+			AtomicBoolean cancel) {
+		render(tracer, camera, red, green, blue, null, objects, null, cancel);
+	}
+
+	/**
+	 * A method which renders a frame in parallel directly into the pixels of an {@link ArgbFrame}.
+	 * @param tracer - tracer of the scene, prepared for the eye of the camera by {@link SceneTracer#forOrigin(Point3D)}.
+	 * @param camera - camera of the frame, of the same size as the frame.
+	 * @param frame - frame into which the pixels are written.
+	 * @param objects - array into which the index of the object seen through every pixel is written, may be {@code null}.
+	 * @param pool - pool on which the frame is rendered.
+	 * @param cancel - rendering stops once it is set, leaving the frame incomplete.
+	 */
+	public void render(SceneTracer tracer, Camera camera, ArgbFrame frame, int[] objects, ForkJoinPool pool,
+			AtomicBoolean cancel) {
+		render(tracer, camera, null, null, null, frame.getPixels(), objects, pool, cancel);
+	}
+
+	/**
+	 * A method which renders a frame on the current thread directly into the pixels of an {@link ArgbFrame}.
+	 * @param tracer - tracer of the scene, prepared for the eye of the camera by {@link SceneTracer#forOrigin(Point3D)}.
+	 * @param camera - camera of the frame, of the same size as the frame.
+	 * @param frame - frame into which the pixels are written.
+	 * @param objects - array into which the index of the object seen through every pixel is written, may be {@code null}.
+	 * @param cancel - rendering stops once it is set, leaving the frame incomplete.
+	 */
+	public void render(SceneTracer tracer, Camera camera, ArgbFrame frame, int[] objects, AtomicBoolean cancel) {
+		render(tracer, camera, null, null, null, frame.getPixels(), objects, null, cancel);
+	}
+
+	/**
+	 * A method which renders a frame either into separate arrays of red, green and blue,
+	 * or into packed pixels.
+	 * @param tracer - tracer of the scene.
+	 * @param camera - camera of the frame.
+	 * @param red - array of red color intensities for each pixel, {@code null} if the pixels are packed.
+	 * @param green - array of green color intensities for each pixel, {@code null} if the pixels are packed.
+	 * @param blue - array of blue color intensities for each pixel, {@code null} if the pixels are packed.
+	 * @param argb - array of packed pixels, {@code null} if they are written into the separate arrays.
+	 * @param objects - array of objects seen through each pixel, may be {@code null}.
+	 * @param pool - pool on which the frame is rendered, {@code null} to render it on the current thread.
+	 * @param cancel - rendering stops once it is set.
+	 */
+	private void render(SceneTracer tracer, Camera camera, short[] red, short[] green, short[] blue, int[] argb,
+			int[] objects, ForkJoinPool pool, AtomicBoolean cancel) {
+		TileOrder order = new TileOrder(camera.getWidth(), camera.getHeight(), size);
+		ScreenTiles tiles = tracer.screenTiles(camera);
+		RangeTask.Body body = (from, to) -> renderTiles(tracer, camera, tiles, order, red, green, blue, argb,
+				objects, cancel, from, to);
+		if(pool == null) {
+			body.run(0, order.count());
+		} else {
+			pool.invoke(new RangeTask(body, 0, order.count(), TILES, cancel));
+		}
+	}
+
+	/**
+	 * A method which renders a range of the order of the tiles. Every tile is rendered into
+	 * packed pixels and copied out once it is finished, or directly into the separate arrays.
+	 * @param tracer - tracer of the scene.
+	 * @param camera - camera of the frame.
+	 * @param tiles - candidate spheres of the tiles of the screen.
+	 * @param order - tiles of the frame.
+	 * @param red - array of red color intensities for each pixel, {@code null} if the pixels are packed.
+	 * @param green - array of green color intensities for each pixel, {@code null} if the pixels are packed.
+	 * @param blue - array of blue color intensities for each pixel, {@code null} if the pixels are packed.
+	 * @param argb - array of packed pixels, {@code null} if they are written into the separate arrays.
+	 * @param objects - array of objects seen through each pixel, may be {@code null}.
+	 * @param cancel - rendering stops once it is set.
+	 * @param from - position of the first tile in the order.
+	 * @param to - position after the last tile.
+	 */
+	private void renderTiles(SceneTracer tracer, Camera camera, ScreenTiles tiles, TileOrder order, short[] red,
+			short[] green, short[] blue, int[] argb, int[] objects, AtomicBoolean cancel, int from, int to) {
+		int width = camera.getWidth();
+		Ray ray = camera.newRay();
+		RayPacket packet = new RayPacket(PACKET_SIZE);
+		short[] rgb = new short[3 * PACKET_SIZE];
+		int[] tile = argb == null ? null : new int[size * size];
+		for(int k = from; k < to; k++) {
+			if(cancel.get()) {
+				return;
+			}
+			int left = order.left(k), right = order.right(k);
+			int top = order.top(k), bottom = order.bottom(k);
+			int local = 0;
+			for(int y = top; y < bottom; y++) {
+				for(int x = left; x < right; ) {
+					int end = Math.min((x / PACKET_SIZE + 1) * PACKET_SIZE, right);
+					packet.clear();
+					for(int px = x; px < end; px++) {
+						camera.setRay(ray, px, y);
+						packet.add(ray);
+					}
+					int offset = y * width + x;
+					tracer.tracer(packet, tiles, tiles.tileOf(x, y), rgb, objects, offset);
+					if(argb != null) {
+						for(int p = 0; p < end - x; p++) {
+							tile[local++] = ArgbFrame.pack(rgb[3 * p], rgb[3 * p + 1], rgb[3 * p + 2]);
+						}
+					} else {
+						for(int p = 0; p < end - x; p++) {
+							red[offset + p] = rgb[3 * p] > 255 ? 255 : rgb[3 * p];
+							green[offset + p] = rgb[3 * p + 1] > 255 ? 255 : rgb[3 * p + 1];
+							blue[offset + p] = rgb[3 * p + 2] > 255 ? 255 : rgb[3 * p + 2];
+						}
+					}
+					x = end;
+				}
+			}
+
+			if(argb != null) {
+				int columns = right - left;
+				for(int y = top, row = 0; y < bottom; y++, row += columns) {
+					System.arraycopy(tile, row, argb, y * width + left, columns);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.zemris.java.raytracer.model.Ray;
+
+/**
+ * A uniform grid over axis-aligned bounds of a {@link PrimitiveSet}, meant for scenes whose
+ * objects move every frame. Unlike a {@link BoundingVolumeHierarchy} it doesn't search for
+ * good splits, so it is cheap enough to be rebuilt for every frame: the bounds of the
+ * primitives are collected and their cells counted in parallel, and the references are
+ * then sorted into cells with a counting sort, so that every cell lists its primitives in
+ * the order of their indices. The cells are kept in plain arrays, a start index per cell
+ * into a single array of references. Rays walk the cells they pass through in order
+ * (3D-DDA), and the walk stops as soon as the closest hit found so far lies within the
+ * current cell. The primitives aren't reordered, and they must have finite bounds.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class UniformGrid implements SpatialIndex {
+
+	/**
+	 * number of cells per primitive the resolution of the grid aims for.
+	 */
+	private static final double DENSITY = 2;
+	/**
+	 * highest number of cells along an axis.
+	 */
+	private static final int MAX_RESOLUTION = 128;
+	/**
+	 * If a part of the build is to process up to this many primitives, then it isn't divided into smaller ones.
+	 */
+	private static final int GRAIN = 4096;
+
+	/**
+	 * primitives in the grid.
+	 */
+	private final PrimitiveSet primitives;
+	/**
+	 * x, y and z coordinates of the corner of the grid with the lowest coordinates.
+	 */
+	private final double minX, minY, minZ;
+	/**
+	 * x, y and z coordinates of the corner of the grid with the highest coordinates.
+	 */
+	private final double maxX, maxY, maxZ;
+	/**
+	 * size of a cell along the x, y and z axis.
+	 */
+	private final double cellX, cellY, cellZ;
+	/**
+	 * number of cells along the x, y and z axis.
+	 */
+	private final int nx, ny, nz;
+	/**
+	 * index in {@code cellItems} of the first primitive of every cell, followed by the number of references.
+	 */
+	private final int[] cellStart;
+	/**
+	 * primitives of all the cells, cell after cell.
+	 */
+	private final int[] cellItems;
+
+	/**
+	 * A constructor which builds the grid over the given primitives.
+	 * @param primitives - primitives which are placed into the grid.
+	 * @param pool - pool on which the grid is built.
+	 */
+	public UniformGrid(PrimitiveSet primitives, ForkJoinPool pool) {
+		this.primitives = primitives;
+		int n = primitives.size();
+		double[] bounds = new double[6 * n];
+		pool.invoke(new RangeTask((from, to) -> {
+			for(int k = from; k < to; k++) {
+				primitives.getBounds(k, bounds, 6 * k);
+			}
+		}, 0, n, GRAIN));
+
+		double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for(int k = 0; k < n; k++) {
+			for(int axis = 0; axis < 3; axis++) {
+				box[axis] = Math.min(box[axis], bounds[6 * k + axis]);
+				box[axis + 3] = Math.max(box[axis + 3], bounds[6 * k + axis + 3]);
+			}
+		}
+		if(n == 0) {
+			box = new double[6];
+		}
+		this.minX = box[0];
+		this.minY = box[1];
+		this.minZ = box[2];
+		this.maxX = box[3];
+		this.maxY = box[4];
+		this.maxZ = box[5];
+
+		double ex = Math.max(maxX - minX, SceneTracer.EPSILON);
+		double ey = Math.max(maxY - minY, SceneTracer.EPSILON);
+		double ez = Math.max(maxZ - minZ, SceneTracer.EPSILON);
+		double scale = Math.cbrt(DENSITY * Math.max(n, 1) / (ex * ey * ez));
+		this.nx = resolution(ex * scale);
+		this.ny = resolution(ey * scale);
+		this.nz = resolution(ez * scale);
+		this.cellX = ex / nx;
+		this.cellY = ey / ny;
+		this.cellZ = ez / nz;
+
+		int[] cells = new int[6 * n];
+		int[] firstReference = new int[n + 1];
+		pool.invoke(new RangeTask((from, to) -> {
+			for(int k = from; k < to; k++) {
+				int b = 6 * k;
+				cells[b] = cellX(bounds[b]);
+				cells[b + 1] = cellY(bounds[b + 1]);
+				cells[b + 2] = cellZ(bounds[b + 2]);
+				cells[b + 3] = cellX(bounds[b + 3]);
+				cells[b + 4] = cellY(bounds[b + 4]);
+				cells[b + 5] = cellZ(bounds[b + 5]);
+				firstReference[k + 1] = (cells[b + 3] - cells[b] + 1) * (cells[b + 4] - cells[b + 1] + 1)
+						* (cells[b + 5] - cells[b + 2] + 1);
+			}
+		}, 0, n, GRAIN));
+		for(int k = 0; k < n; k++) {
+			firstReference[k + 1] += firstReference[k];
+		}
+
+		int references = firstReference[n];
+		int[] referenceCells = new int[references];
+		pool.invoke(new RangeTask((from, to) -> {
+			for(int k = from; k < to; k++) {
+				int b = 6 * k;
+				int r = firstReference[k];
+				for(int z = cells[b + 2]; z <= cells[b + 5]; z++) {
+					for(int y = cells[b + 1]; y <= cells[b + 4]; y++) {
+						for(int x = cells[b]; x <= cells[b + 3]; x++) {
+							referenceCells[r++] = (z * ny + y) * nx + x;
+						}
+					}
+				}
+			}
+		}, 0, n, GRAIN));
+
+		this.cellStart = new int[nx * ny * nz + 1];
+		for(int r = 0; r < references; r++) {
+			cellStart[referenceCells[r] + 1]++;
+		}
+		for(int c = 0; c + 1 < cellStart.length; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		this.cellItems = new int[references];
+		int[] cursor = new int[nx * ny * nz];
+		for(int k = 0; k < n; k++) {
+			for(int r = firstReference[k]; r < firstReference[k + 1]; r++) {
+				int cell = referenceCells[r];
+				cellItems[cellStart[cell] + cursor[cell]++] = k;
+			}
+		}
+	}
+
+	/**
+	 * A constructor which creates a grid sharing the cells of another one.
+	 * @param other - grid whose cells are shared.
+	 * @param primitives - primitives in the same order as those of the other grid.
+	 */
+	private UniformGrid(UniformGrid other, PrimitiveSet primitives) {
+		this.primitives = primitives;
+		this.minX = other.minX;
+		this.minY = other.minY;
+		this.minZ = other.minZ;
+		this.maxX = other.maxX;
+		this.maxY = other.maxY;
+		this.maxZ = other.maxZ;
+		this.cellX = other.cellX;
+		this.cellY = other.cellY;
+		this.cellZ = other.cellZ;
+		this.nx = other.nx;
+		this.ny = other.ny;
+		this.nz = other.nz;
+		this.cellStart = other.cellStart;
+		this.cellItems = other.cellItems;
+	}
+
+	/**
+	 * A method which calculates the number of cells along an axis.
+	 * @param cells - ideal number of cells.
+	 * @return number of cells between 1 and {@value #MAX_RESOLUTION}.
+	 */
+	private static int resolution(double cells) {
+		return (int) Math.max(1, Math.min(MAX_RESOLUTION, Math.ceil(cells)));
+	}
+
+	/**
+	 * A method which finds the column of cells containing the given x coordinate.
+	 * @param x - the coordinate.
+	 * @return index of the column, clamped to the grid.
+	 */
+	private int cellX(double x) {
+		return clamp((int) ((x - minX) / cellX), nx);
+	}
+
+	/**
+	 * A method which finds the row of cells containing the given y coordinate.
+	 * @param y - the coordinate.
+	 * @return index of the row, clamped to the grid.
+	 */
+	private int cellY(double y) {
+		return clamp((int) ((y - minY) / cellY), ny);
+	}
+
+	/**
+	 * A method which finds the layer of cells containing the given z coordinate.
+	 * @param z - the coordinate.
+	 * @return index of the layer, clamped to the grid.
+	 */
+	private int cellZ(double z) {
+		return clamp((int) ((z - minZ) / cellZ), nz);
+	}
+
+	/**
+	 * A method which clamps an index of a cell to the grid.
+	 * @param index - the index.
+	 * @param cells - number of cells along the axis.
+	 * @return the clamped index.
+	 */
+	private static int clamp(int index, int cells) {
+		return index < 0 ? 0 : index >= cells ? cells - 1 : index;
+	}
+
+	/**
+	 * A getter for the number of cells of this grid.
+	 * @return number of cells.
+	 */
+	public int cells() {
+		return nx * ny * nz;
+	}
+
+	@Override
+	public PrimitiveSet getPrimitives() {
+		return primitives;
+	}
+
+	@Override
+	public UniformGrid withPrimitives(PrimitiveSet primitives) {
+		return new UniformGrid(this, primitives);
+	}
+
+	@Override
+	public int findClosest(Ray ray, double[] distance) {
+		return walk(ray, distance, false);
+	}
+
+	/**
+	 * A method which finds the closest intersection of every ray of the packet, starting
+	 * from the distances and indices already recorded in it. Every ray walks the grid on its own.
+	 * @param packet - the packet.
+	 */
+	@Override
+	public void findClosest(RayPacket packet) {
+		double[] distance = new double[1];
+		for(int k = 0; k < packet.size(); k++) {
+			distance[0] = packet.distance[k];
+			int found = walk(packet.getRay(k), distance, false);
+			if(found >= 0) {
+				packet.distance[k] = distance[0];
+				packet.index[k] = found;
+			}
+		}
+	}
+
+	@Override
+	public int findAnyHit(Ray ray, double maxDistance) {
+		return walk(ray, new double[] {maxDistance}, true);
+	}
+
+	/**
+	 * A method which walks the cells the ray passes through, from its start up to the given distance.
+	 * @param ray - ray which is followed.
+	 * @param distance - on input the length of the walked segment, on output the distance to the
+	 *        closest found primitive if {@code any} is {@code false}, unchanged if none is found.
+	 * @param any - whether the walk stops at the first primitive which blocks the segment.
+	 * @return index of the found primitive, or -1 if there is none.
+	 */
+	private int walk(Ray ray, double[] distance, boolean any) {
+		if(cellItems.length == 0) {
+			return -1;
+		}
+		double ox = ray.start.x, oy = ray.start.y, oz = ray.start.z;
+		double dx = ray.direction.x, dy = ray.direction.y, dz = ray.direction.z;
+		double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+		double best = distance[0];
+
+		double t1 = (minX - ox) * ix, t2 = (maxX - ox) * ix;
+		double enter = Math.min(t1, t2), exit = Math.max(t1, t2);
+		t1 = (minY - oy) * iy;
+		t2 = (maxY - oy) * iy;
+		enter = Math.max(enter, Math.min(t1, t2));
+		exit = Math.min(exit, Math.max(t1, t2));
+		t1 = (minZ - oz) * iz;
+		t2 = (maxZ - oz) * iz;
+		enter = Math.max(enter, Math.min(t1, t2));
+		exit = Math.min(exit, Math.max(t1, t2));
+		enter = Math.max(enter, 0);
+		if(!(enter <= exit) || enter >= best) {
+			return -1;
+		}
+
+		int x = cellX(ox + dx * enter);
+		int y = cellY(oy + dy * enter);
+		int z = cellZ(oz + dz * enter);
+		int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+		double nextX = dx == 0 ? Double.POSITIVE_INFINITY : (minX + (x + (dx > 0 ? 1 : 0)) * cellX - ox) * ix;
+		double nextY = dy == 0 ? Double.POSITIVE_INFINITY : (minY + (y + (dy > 0 ? 1 : 0)) * cellY - oy) * iy;
+		double nextZ = dz == 0 ? Double.POSITIVE_INFINITY : (minZ + (z + (dz > 0 ? 1 : 0)) * cellZ - oz) * iz;
+		double deltaX = Math.abs(cellX * ix), deltaY = Math.abs(cellY * iy), deltaZ = Math.abs(cellZ * iz);
+
+		int found = -1;
+		while(true) {
+			int cell = (z * ny + y) * nx + x;
+			for(int r = cellStart[cell], end = cellStart[cell + 1]; r < end; r++) {
+				int k = cellItems[r];
+				if(any) {
+					if(primitives.occludes(k, ray, best)) {
+						return k;
+					}
+					continue;
+				}
+				double d = primitives.findClosestRayDistance(k, ray, 0, best);
+				if(d < best) {
+					best = d;
+					found = k;
+				}
+			}
+
+			double next = Math.min(nextX, Math.min(nextY, nextZ));
+			if(next >= best || next > exit) {
+				break;
+			}
+			if(nextX == next) {
+				x += stepX;
+				nextX += deltaX;
+				if(x < 0 || x >= nx) {
+					break;
+				}
+			} else if(nextY == next) {
+				y += stepY;
+				nextY += deltaY;
+				if(y < 0 || y >= ny) {
+					break;
+				}
+			} else {
+				z += stepZ;
+				nextZ += deltaZ;
+				if(z < 0 || z >= nz) {
+					break;
+				}
+			}
+		}
+
+		distance[0] = best;
+		return found;
+	}
+}
@@ -0,0 +1,399 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * A renderer which traces a frame in stages instead of pixel by pixel. Every stage
+ * processes a whole queue of work before the next one starts:
+ * <ol>
+ * <li>primary rays are generated in packets and their first intersections are written
+ * into separate arrays of points, normals, view vectors and materials,</li>
+ * <li>pixels whose rays hit something are compacted into a queue of hits,</li>
+ * <li>for every hit the lights which face it and reach it are put into a queue of shadow rays,</li>
+ * <li>all shadow rays are tested,</li>
+ * <li>every hit is shaded with the lights whose shadow rays weren't blocked.</li>
+ * </ol>
+ * Every stage runs in parallel over ranges of its queue, so each loop does a single kind of
+ * work on consecutive memory, and shadow rays of neighboring hits are tested one after another.
+ * The colors are the same as the ones of {@link SceneTracer#tracer(RayPacket, ScreenTiles, int, short[])}.
+ * The queues are kept between frames, so a renderer renders one frame at a time, and a frame
+ * which is started while another one is being rendered waits for it.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class WavefrontRenderer {
+
+	/**
+	 * number of neighboring pixels of a row whose primary rays are traced together.
+	 */
+	private static final int PACKET_SIZE = 8;
+	/**
+	 * If the task is to trace up to this many rows, then it isn't divided into smaller ones.
+	 */
+	private static final int ROWS = 4;
+	/**
+	 * If the task is to process up to this many entries of a queue, then it isn't divided into smaller ones.
+	 */
+	private static final int ENTRIES = 1024;
+	/**
+	 * number of coefficients of a material.
+	 */
+	private static final int MATERIAL_SIZE = 7;
+
+	/**
+	 * x, y and z coordinates of the hit point of every pixel.
+	 */
+	private double[] points = new double[0];
+	/**
+	 * x, y and z coordinates of the normal at the hit point of every pixel.
+	 */
+	private double[] normals = new double[0];
+	/**
+	 * x, y and z coordinates of the unit vector from the hit point of every pixel towards the eye.
+	 */
+	private double[] views = new double[0];
+	/**
+	 * coefficients of the material at the hit point of every pixel.
+	 */
+	private double[] materials = new double[0];
+	/**
+	 * index of the object hit by the ray of every pixel, -1 if there is none.
+	 */
+	private int[] objects = new int[0];
+	/**
+	 * queue of the pixels whose rays hit something.
+	 */
+	private int[] hits = new int[0];
+	/**
+	 * number of hits in the queue.
+	 */
+	private int hitCount;
+	/**
+	 * position in the queue of shadow rays of the first shadow ray of every hit,
+	 * followed by the number of shadow rays.
+	 */
+	private int[] firstShadowRay = new int[1];
+	/**
+	 * hit of every shadow ray.
+	 */
+	private int[] shadowHits = new int[0];
+	/**
+	 * light of every shadow ray.
+	 */
+	private int[] shadowLights = new int[0];
+	/**
+	 * distance from the hit point to the light of every shadow ray.
+	 */
+	private double[] shadowDistances = new double[0];
+	/**
+	 * cosine of the angle between the normal and the direction of every shadow ray.
+	 */
+	private double[] shadowCosines = new double[0];
+	/**
+	 * part of the intensity of the light which reaches the hit point of every shadow ray.
+	 */
+	private double[] shadowFalloffs = new double[0];
+	/**
+	 * x, y and z coordinates of the unit vector from the hit point towards the light of every shadow ray.
+	 */
+	private double[] shadowDirections = new double[0];
+	/**
+	 * whether every shadow ray is blocked.
+	 */
+	private boolean[] occluded = new boolean[0];
+
+	/**
+	 * tracer of the frame which is being rendered.
+	 */
+	private SceneTracer tracer;
+	/**
+	 * lights of the scene of the frame which is being rendered.
+	 */
+	private LightSource[] sources;
+
+	/**
+	 * A method which renders a frame, once the frame which is being rendered is finished or cancelled.
+	 * @param tracer - tracer of the scene, prepared for the eye of the camera by {@link SceneTracer#forOrigin(Point3D)}.
+	 * @param camera - camera of the frame.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param objects - array into which the object hit by the ray of every pixel is written,
+	 *        -1 if there is none, may be {@code null}.
+	 * @param pool - pool on which the stages run.
+	 * @param cancel - rendering stops once it is set, leaving the frame incomplete.
+	 */
+	public synchronized void render(SceneTracer tracer, Camera camera, short[] red, short[] green, short[] blue,
+			int[] objects, ForkJoinPool pool, AtomicBoolean cancel) {
+		int width = camera.getWidth();
+		int height = camera.getHeight();
+		int pixels = width * height;
+		if(this.objects.length < pixels) {
+			this.points = new double[3 * pixels];
+			this.normals = new double[3 * pixels];
+			this.views = new double[3 * pixels];
+			this.materials = new double[MATERIAL_SIZE * pixels];
+			this.objects = new int[pixels];
+			this.hits = new int[pixels];
+			this.firstShadowRay = new int[pixels + 1];
+		}
+		this.tracer = tracer;
+		List<LightSource> lights = tracer.getScene().getLights();
+		this.sources = lights.toArray(new LightSource[0]);
+		try {
+			ScreenTiles tiles = tracer.screenTiles(camera);
+			pool.invoke(new RangeTask((from, to) -> intersect(camera, tiles, from, to), 0, height, ROWS, cancel));
+			if(cancel.get()) {
+				return;
+			}
+			compact(pixels, red, green, blue);
+
+			pool.invoke(new RangeTask(this::countShadowRays, 0, hitCount, ENTRIES, cancel));
+			if(cancel.get()) {
+				return;
+			}
+			int shadowRays = queueShadowRays();
+			pool.invoke(new RangeTask(this::generateShadowRays, 0, hitCount, ENTRIES, cancel));
+			pool.invoke(new RangeTask(this::traceShadowRays, 0, shadowRays, ENTRIES, cancel));
+			pool.invoke(new RangeTask((from, to) -> shade(red, green, blue, from, to), 0, hitCount, ENTRIES, cancel));
+
+			if(objects != null) {
+				System.arraycopy(this.objects, 0, objects, 0, pixels);
+			}
+		} finally {
+			this.tracer = null;
+			this.sources = null;
+		}
+	}
+
+	/**
+	 * A method which traces the primary rays of the rows between the given ones and
+	 * records their first intersections.
+	 * @param camera - camera of the frame.
+	 * @param tiles - candidate spheres of the tiles of the screen.
+	 * @param yMin - first row.
+	 * @param yMax - row after the last row.
+	 */
+	private void intersect(Camera camera, ScreenTiles tiles, int yMin, int yMax) {
+		int width = camera.getWidth();
+		Ray ray = camera.newRay();
+		RayPacket packet = new RayPacket(PACKET_SIZE);
+		HitSink sink = this::store;
+		for(int y = yMin; y < yMax; y++) {
+			for(int x = 0; x < width; x += PACKET_SIZE) {
+				packet.clear();
+				for(int px = x, end = Math.min(x + PACKET_SIZE, width); px < end; px++) {
+					camera.setRay(ray, px, y);
+					packet.add(ray);
+				}
+				tracer.record(packet, tiles, tiles.tileOf(x, y), sink, y * width + x);
+			}
+		}
+	}
+
+	/**
+	 * A method which records the first intersection of the primary ray of a pixel.
+	 * @param pixel - index of the pixel.
+	 * @param ray - primary ray of the pixel.
+	 * @param closest - first intersection of the ray, {@code null} if there is none.
+	 * @param object - index of the intersected object in the scene.
+	 */
+	private void store(int pixel, Ray ray, RayIntersection closest, int object) {
+		if(closest == null) {
+			objects[pixel] = -1;
+			return;
+		}
+		objects[pixel] = object;
+		SceneTracer.materialOf(closest, materials, MATERIAL_SIZE * pixel);
+
+		Point3D point = closest.getPoint();
+		Point3D normal = closest.getNormal();
+		Point3D view = ray.start.sub(point).modifyNormalize();
+		int p = 3 * pixel;
+		points[p] = point.x;
+		points[p + 1] = point.y;
+		points[p + 2] = point.z;
+		normals[p] = normal.x;
+		normals[p + 1] = normal.y;
+		normals[p + 2] = normal.z;
+		views[p] = view.x;
+		views[p + 1] = view.y;
+		views[p + 2] = view.z;
+	}
+
+	/**
+	 * A method which puts the pixels whose rays hit something into the queue of hits
+	 * and colors the other pixels black.
+	 * @param pixels - number of pixels of the frame.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 */
+	private void compact(int pixels, short[] red, short[] green, short[] blue) {
+		int count = 0;
+		for(int pixel = 0; pixel < pixels; pixel++) {
+			if(objects[pixel] < 0) {
+				red[pixel] = 0;
+				green[pixel] = 0;
+				blue[pixel] = 0;
+			} else {
+				hits[count++] = pixel;
+			}
+		}
+		hitCount = count;
+	}
+
+	/**
+	 * A method which counts the shadow rays of the hits between the given ones.
+	 * @param from - first hit.
+	 * @param to - hit after the last hit.
+	 */
+	private void countShadowRays(int from, int to) {
+		int[] candidates = new int[sources.length];
+		double[] l = new double[3];
+		double[] reach = new double[3];
+		for(int h = from; h < to; h++) {
+			int pixel = hits[h];
+			Point3D point = pointOf(pixel);
+			int count = tracer.lightsAt(point, candidates);
+			int rays = 0;
+			for(int c = 0; c < count; c++) {
+				if(reaches(candidates[c], pixel, point, l, reach)) {
+					rays++;
+				}
+			}
+			firstShadowRay[h + 1] = rays;
+		}
+	}
+
+	/**
+	 * A method which turns the numbers of shadow rays of the hits into their positions
+	 * in the queue of shadow rays, making sure the queue is large enough.
+	 * @return number of shadow rays.
+	 */
+	private int queueShadowRays() {
+		firstShadowRay[0] = 0;
+		for(int h = 0; h < hitCount; h++) {
+			firstShadowRay[h + 1] += firstShadowRay[h];
+		}
+		int shadowRays = firstShadowRay[hitCount];
+		if(occluded.length < shadowRays) {
+			shadowHits = new int[shadowRays];
+			shadowLights = new int[shadowRays];
+			shadowDistances = new double[shadowRays];
+			shadowCosines = new double[shadowRays];
+			shadowFalloffs = new double[shadowRays];
+			shadowDirections = new double[3 * shadowRays];
+			occluded = new boolean[shadowRays];
+		}
+		return shadowRays;
+	}
+
+	/**
+	 * A method which writes the shadow rays of the hits between the given ones into the queue.
+	 * @param from - first hit.
+	 * @param to - hit after the last hit.
+	 */
+	private void generateShadowRays(int from, int to) {
+		int[] candidates = new int[sources.length];
+		double[] l = new double[3];
+		double[] reach = new double[3];
+		for(int h = from; h < to; h++) {
+			int pixel = hits[h];
+			Point3D point = pointOf(pixel);
+			int count = tracer.lightsAt(point, candidates);
+			int s = firstShadowRay[h];
+			for(int c = 0; c < count; c++) {
+				int k = candidates[c];
+				if(!reaches(k, pixel, point, l, reach)) {
+					continue;
+				}
+				shadowHits[s] = h;
+				shadowLights[s] = k;
+				shadowDistances[s] = reach[0];
+				shadowCosines[s] = reach[1];
+				shadowFalloffs[s] = reach[2];
+				shadowDirections[3 * s] = l[0];
+				shadowDirections[3 * s + 1] = l[1];
+				shadowDirections[3 * s + 2] = l[2];
+				s++;
+			}
+		}
+	}
+
+	/**
+	 * A method which checks whether a light faces the hit point of a pixel and reaches it.
+	 * @param k - index of the light in the scene.
+	 * @param pixel - index of the pixel.
+	 * @param point - hit point of the pixel.
+	 * @param l - array for the unit vector towards the light.
+	 * @param reach - array for the distance to the light, the cosine of the angle between
+	 *        the normal and {@code l} and the falloff of the light.
+	 * @return {@code true} if the light contributes to the color of the pixel unless it is blocked, {@code false} otherwise.
+	 */
+	private boolean reaches(int k, int pixel, Point3D point, double[] l, double[] reach) {
+		int p = 3 * pixel;
+		reach[0] = SceneTracer.towards(sources[k], point.x, point.y, point.z, l);
+		reach[1] = l[0] * normals[p] + l[1] * normals[p + 1] + l[2] * normals[p + 2];
+		reach[2] = tracer.falloff(k, reach[0]);
+		return reach[1] >= 0 && reach[2] != 0;
+	}
+
+	/**
+	 * A method which tests the shadow rays between the given ones.
+	 * @param from - first shadow ray.
+	 * @param to - shadow ray after the last shadow ray.
+	 */
+	private void traceShadowRays(int from, int to) {
+		for(int s = from; s < to; s++) {
+			Point3D point = pointOf(hits[shadowHits[s]]);
+			occluded[s] = tracer.isShadowed(shadowLights[s], point, shadowDistances[s], shadowCosines[s]);
+		}
+	}
+
+	/**
+	 * A method which colors the hits between the given ones with the lights which reach them.
+	 * @param red - array of red color intensities for each pixel.
+	 * @param green - array of green color intensities for each pixel.
+	 * @param blue - array of blue color intensities for each pixel.
+	 * @param from - first hit.
+	 * @param to - hit after the last hit.
+	 */
+	private void shade(short[] red, short[] green, short[] blue, int from, int to) {
+		int[] rgb = new int[3];
+		double[] l = new double[3];
+		for(int h = from; h < to; h++) {
+			int pixel = hits[h];
+			int p = 3 * pixel;
+			rgb[0] = 15;
+			rgb[1] = 15;
+			rgb[2] = 15;
+			for(int s = firstShadowRay[h], end = firstShadowRay[h + 1]; s < end; s++) {
+				if(occluded[s]) {
+					continue;
+				}
+				l[0] = shadowDirections[3 * s];
+				l[1] = shadowDirections[3 * s + 1];
+				l[2] = shadowDirections[3 * s + 2];
+				SceneTracer.addLight(sources[shadowLights[s]], shadowFalloffs[s], l, shadowCosines[s],
+						normals, p, views, p, materials, MATERIAL_SIZE * pixel, rgb, 0);
+			}
+			red[pixel] = SceneTracer.clamp(rgb[0]);
+			green[pixel] = SceneTracer.clamp(rgb[1]);
+			blue[pixel] = SceneTracer.clamp(rgb[2]);
+		}
+	}
+
+	/**
+	 * A method which creates the hit point of a pixel.
+	 * @param pixel - index of the pixel.
+	 * @return the hit point.
+	 */
+	private Point3D pointOf(int pixel) {
+		return new Point3D(points[3 * pixel], points[3 * pixel + 1], points[3 * pixel + 2]);
+	}
+}
@@ -0,0 +1,134 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.CompiledSpheres;
+import hr.fer.zemris.java.raytracer.RayCasterParallel2;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.SphereAnimator;
+import hr.fer.zemris.java.raytracer.model.*;
+import hr.fer.zemris.java.raytracer.viewer.*;
+
+/**
+ * A program which shows an animation of randomly placed spheres which bob up and down
+ * while the camera orbits around them. The spheres are moved for every frame through a
+ * {@link SphereAnimator}, and the tracer of the frame indexes them with a
+ * {@link hr.fer.zemris.java.raytracer.UniformGrid} which is rebuilt for every frame.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class AnimatedSpheres {
+
+	/**
+	 * Main method of this program. Starts the animation.
+	 * @param args - optionally the number of spheres, 2000 by default.
+	 */
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		BobbingSpheres animator = new BobbingSpheres();
+		RayTracerViewer.show(getIRayTracerProducer(size, animator), animator, 30, 30);
+	}
+
+	/**
+	 * A method which creates an implementation of IRayTracerProducer which moves the
+	 * spheres to their positions at the current time of the animator for every frame.
+	 * @param size - number of spheres.
+	 * @param animator - animator which moves the camera and the spheres.
+	 * @return new IRayTracerProducer
+	 */
+	private static IRayTracerProducer getIRayTracerProducer(int size, BobbingSpheres animator) {
+		Scene scene = new Scene();
+		scene.add(new LightSource(new Point3D(30, 20, 20), 100, 100, 100));
+		scene.add(new LightSource(new Point3D(-30, 20, -10), 80, 40, 40));
+		CompiledSpheres spheres = SceneTracerBenchmark.randomSpheres(size, new Random(42));
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		SceneTracer tracer = new SceneTracer(scene, spheres, pool);
+
+		return new IRayTracerProducer() {
+			@Override
+			public void produce(Point3D eye, Point3D view, Point3D viewUp, double horizontal,
+								double vertical, int width, int height, long requestNo,
+								IRayTracerResultObserver observer, AtomicBoolean cancel) {
+
+				System.out.println("Započinjem izračune...");
+
+				short[] red = new short[width*height];
+				short[] green = new short[width*height];
+				short[] blue = new short[width*height];
+
+				long start = System.nanoTime();
+				SceneTracer frameTracer = tracer.animated(animator.getTime(), animator, pool).forOrigin(eye);
+				long built = System.nanoTime();
+				Camera camera = new Camera(eye, view, viewUp, horizontal, vertical, width, height);
+				pool.invoke(new RayCasterParallel2.ColoringTask(camera, frameTracer.screenTiles(camera),
+						red, green, blue, null, frameTracer, 0, height - 1, cancel, start + Long.MAX_VALUE));
+				long end = System.nanoTime();
+
+				if(cancel.get()) {
+					System.out.println("Izračuni prekinuti...");
+					return;
+				}
+				System.out.printf("Izračuni gotovi: mreža %.1f ms, sličica %.1f ms%n", (built - start) / 1e6, (end - built) / 1e6);
+				observer.acceptResult(red, green, blue, requestNo);
+				System.out.println("Dojava gotova...");
+			}
+		};
+	}
+
+	/**
+	 * An animator which orbits the camera around the spheres and bobs every sphere
+	 * up and down with a phase which depends on its position.
+	 */
+	private static class BobbingSpheres implements IRayTracerAnimator, SphereAnimator {
+
+		/**
+		 * current time.
+		 */
+		private long time;
+
+		/**
+		 * A getter for the current time.
+		 * @return time in milliseconds since the start of the animation.
+		 */
+		long getTime() {
+			return time;
+		}
+
+		@Override
+		public void update(long deltaTime) {
+			time += deltaTime;
+		}
+
+		@Override
+		public void moveSpheres(long time, double[] centers) {
+			double t = (double) time / 2000 * 2 * Math.PI;
+			for(int c = 0; c < centers.length; c += 3) {
+				centers[c + 2] += 2 * Math.sin(t + 0.5 * centers[c] + 0.3 * centers[c + 1]);
+			}
+		}
+
+		@Override
+		public Point3D getViewUp() {
+			return new Point3D(0, 0, 10);
+		}
+
+		@Override
+		public Point3D getView() {
+			return new Point3D(0, 0, 0);
+		}
+
+		@Override
+		public long getTargetTimeFrameDuration() {
+			return 150;
+		}
+
+		@Override
+		public Point3D getEye() {
+			double t = (double) time / 20000 * 2 * Math.PI;
+			return new Point3D(40 * Math.cos(t), 40 * Math.sin(t), 15);
+		}
+	}
+}
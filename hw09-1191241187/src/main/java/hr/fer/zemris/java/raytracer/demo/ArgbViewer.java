@@ -0,0 +1,164 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.awt.BorderLayout;
+import java.awt.Graphics;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+
+import hr.fer.zemris.java.raytracer.ArgbFrame;
+import hr.fer.zemris.java.raytracer.ArgbResultObserver;
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.TileRenderer;
+import hr.fer.zemris.java.raytracer.model.*;
+import hr.fer.zemris.java.raytracer.viewer.RayTracerViewer;
+
+/**
+ * A program which shows the scene of {@link hr.fer.zemris.java.raytracer.RayCasterParallel2}
+ * viewed from a camera orbiting around it. Frames are rendered directly into the pixels of
+ * an {@link ArgbFrame} and the window draws its image as it is, so a pixel is written once
+ * and never copied. Started with the argument {@code adapter}, it renders the same frames
+ * into an {@link ArgbFrame} but shows them through {@link RayTracerViewer}, which receives
+ * them from {@link ArgbResultObserver#adapting(IRayTracerResultObserver)}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class ArgbViewer {
+
+	/**
+	 * width and height of the frames rendered for the window.
+	 */
+	private static final int SIZE = 500;
+
+	/**
+	 * Main method of this program. Opens the window.
+	 * @param args - {@code adapter} to show the frames through {@link RayTracerViewer}.
+	 */
+	public static void main(String[] args) {
+		SceneTracer tracer = new SceneTracer(RayTracerViewer.createPredefinedScene2());
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		TileRenderer renderer = new TileRenderer();
+		if(args.length > 0 && args[0].equals("adapter")) {
+			RayTracerViewer.show(getIRayTracerProducer(tracer, renderer, pool),
+								new Point3D(10,0,0),
+								new Point3D(0,0,0),
+								new Point3D(0,0,10),
+								20, 20);
+			return;
+		}
+
+		FrameComponent component = new FrameComponent();
+		SwingUtilities.invokeLater(() -> {
+			JFrame window = new JFrame("Ray-caster");
+			window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+			window.getContentPane().add(component, BorderLayout.CENTER);
+			window.setSize(SIZE, SIZE);
+			window.setVisible(true);
+		});
+
+		ArgbResultObserver observer = (frame, requestNo) -> {
+			try {
+				SwingUtilities.invokeAndWait(() -> component.display(frame));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		};
+		ArgbFrame[] frames = {new ArgbFrame(SIZE, SIZE), new ArgbFrame(SIZE, SIZE)};
+		AtomicBoolean cancel = new AtomicBoolean();
+		long start = System.currentTimeMillis();
+		for(long requestNo = 0; !Thread.currentThread().isInterrupted(); requestNo++) {
+			Point3D eye = eye(System.currentTimeMillis() - start);
+			Camera camera = new Camera(eye, new Point3D(-2, 0, -0.5), new Point3D(0, 0, 10), 20, 20, SIZE, SIZE);
+			ArgbFrame frame = frames[(int) (requestNo % 2)];
+			long frameStart = System.nanoTime();
+			renderer.render(tracer.forOrigin(eye), camera, frame, null, pool, cancel);
+			System.out.printf("Izračuni gotovi: %.1f ms%n", (System.nanoTime() - frameStart) / 1e6);
+			observer.acceptResult(frame, requestNo);
+		}
+	}
+
+	/**
+	 * A method which creates an implementation of IRayTracerProducer which renders into an
+	 * {@link ArgbFrame} and passes it to the observer of the viewer through an adapter.
+	 * @param tracer - tracer of the scene.
+	 * @param renderer - renderer of the frames.
+	 * @param pool - pool on which the frames are rendered.
+	 * @return new IRayTracerProducer
+	 */
+	private static IRayTracerProducer getIRayTracerProducer(SceneTracer tracer, TileRenderer renderer, ForkJoinPool pool) {
+		return new IRayTracerProducer() {
+
+			@Override
+			public void produce(Point3D eye, Point3D view, Point3D viewUp, double horizontal,
+								double vertical, int width, int height, long requestNo,
+								IRayTracerResultObserver observer, AtomicBoolean cancel) {
+
+				System.out.println("Započinjem izračune...");
+
+				ArgbFrame frame = new ArgbFrame(width, height);
+				Camera camera = new Camera(eye, view, viewUp, horizontal, vertical, width, height);
+				renderer.render(tracer.forOrigin(eye), camera, frame, null, pool, cancel);
+				if(cancel.get()) {
+					System.out.println("Izračuni prekinuti...");
+					return;
+				}
+				System.out.println("Izračuni gotovi...");
+				ArgbResultObserver.adapting(observer).acceptResult(frame, requestNo);
+				System.out.println("Dojava gotova...");
+			}
+		};
+	}
+
+	/**
+	 * A method which finds the eye on the orbit of {@link hr.fer.zemris.java.raytracer.RayCasterParallel2}.
+	 * @param time - time in milliseconds since the start of the animation.
+	 * @return the eye.
+	 */
+	private static Point3D eye(long time) {
+		double t = (double) time / 10000 * 2 * Math.PI;
+		double t2 = (double) time / 5000 * 2 * Math.PI;
+		return new Point3D(50 * Math.cos(t), 50 * Math.sin(t), 30 * Math.sin(t2));
+	}
+
+	/**
+	 * A component which draws the image of the last frame it was given, stretched over its area.
+	 */
+	private static class FrameComponent extends JComponent {
+
+		/**
+		 * randomly generated UID.
+		 */
+		private static final long serialVersionUID = 3489176420561738231L;
+
+		/**
+		 * frame which is drawn, {@code null} until the first one is rendered.
+		 */
+		private ArgbFrame frame;
+
+		/**
+		 * A method which draws the given frame until the next one is given. Must be
+		 * called on the event dispatch thread, and the frame is drawn before it returns,
+		 * so the previous frame can be rendered into again.
+		 * @param frame - the frame.
+		 */
+		void display(ArgbFrame frame) {
+			this.frame = frame;
+			paintImmediately(0, 0, getWidth(), getHeight());
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			if(frame != null) {
+				g.drawImage(frame.getImage(), 0, 0, getWidth(), getHeight(), null);
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongFunction;
+
+import hr.fer.zemris.java.raytracer.ArgbFrame;
+import hr.fer.zemris.java.raytracer.ArgbResultObserver;
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.CompiledSpheres;
+import hr.fer.zemris.java.raytracer.DeltaEncoder;
+import hr.fer.zemris.java.raytracer.DeltaFrame;
+import hr.fer.zemris.java.raytracer.DeltaFrameObserver;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.TileRenderer;
+import hr.fer.zemris.java.raytracer.model.*;
+import hr.fer.zemris.java.raytracer.viewer.RayTracerViewer;
+
+/**
+ * A program which streams animations as {@link DeltaFrame}s to a simulated remote display,
+ * which applies every delta to its copy of the previous frame and checks that it shows the
+ * rendered frame. It reports how much of the uncompressed frames was sent and how long
+ * the comparison took, for the scene of {@link hr.fer.zemris.java.raytracer.RayCasterParallel2}
+ * under a slowly orbiting camera, and for randomly placed spheres under a fixed camera
+ * of which only a few move.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class DeltaStream {
+
+	/**
+	 * width and height of the frames.
+	 */
+	private static final int SIZE = 400;
+	/**
+	 * time between two frames in milliseconds.
+	 */
+	private static final long FRAME_DURATION = 40;
+	/**
+	 * number of spheres of the random scene.
+	 */
+	private static final int SPHERES = 2000;
+	/**
+	 * number of spheres of the random scene which move.
+	 */
+	private static final int MOVING = 20;
+
+	/**
+	 * Main method of this program. Streams both animations.
+	 * @param args - optionally the number of frames, 60 by default, and the keyframe interval.
+	 */
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+		int interval = args.length > 1 ? Integer.parseInt(args[1]) : DeltaEncoder.DEFAULT_KEYFRAME_INTERVAL;
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+
+		SceneTracer orbit = new SceneTracer(RayTracerViewer.createPredefinedScene2());
+		stream("orbiting camera", time -> orbit.forOrigin(orbitEye(time)),
+				time -> camera(orbitEye(time), new Point3D(-2, 0, -0.5)), frames, interval, pool);
+
+		Scene scene = new Scene();
+		scene.add(new LightSource(new Point3D(30, 20, 20), 100, 100, 100));
+		scene.add(new LightSource(new Point3D(-30, 20, -10), 80, 40, 40));
+		CompiledSpheres spheres = SceneTracerBenchmark.randomSpheres(SPHERES, new Random(42));
+		SceneTracer tracer = new SceneTracer(scene, spheres, pool);
+		Point3D eye = new Point3D(40, 10, 10);
+		stream(MOVING + " of " + SPHERES + " spheres moving", time -> tracer.animated(time, (now, centers) -> {
+			double t = (double) now / 2000 * 2 * Math.PI;
+			for(int c = 0; c < 3 * MOVING; c += 3) {
+				centers[c + 2] += 2 * Math.sin(t + c);
+			}
+		}, pool).forOrigin(eye), time -> camera(eye, new Point3D(0, 0, 0)), frames, interval, pool);
+	}
+
+	/**
+	 * A method which renders an animation, streams it and prints the results.
+	 * @param name - name of the animation.
+	 * @param tracers - tracer of the frame at the given time.
+	 * @param cameras - camera of the frame at the given time.
+	 * @param frames - number of frames.
+	 * @param interval - number of frames from one keyframe to the next.
+	 * @param pool - pool on which the frames are rendered and compared.
+	 */
+	private static void stream(String name, LongFunction<SceneTracer> tracers, LongFunction<Camera> cameras,
+			int frames, int interval, ForkJoinPool pool) {
+		TileRenderer renderer = new TileRenderer();
+		DeltaEncoder encoder = new DeltaEncoder(interval);
+		RemoteDisplay display = new RemoteDisplay();
+		AtomicBoolean cancel = new AtomicBoolean();
+		ArgbFrame frame = new ArgbFrame(SIZE, SIZE);
+
+		long encoding = 0;
+		for(int f = 0; f < frames; f++) {
+			long time = f * FRAME_DURATION;
+			renderer.render(tracers.apply(time), cameras.apply(time), frame, null, pool, cancel);
+			ArgbResultObserver observer = encoder.observing(display, pool);
+			long start = System.nanoTime();
+			observer.acceptResult(frame, f);
+			encoding += System.nanoTime() - start - display.applying;
+			if(!Arrays.equals(display.pixels, frame.getPixels())) {
+				System.out.printf("%s: frame %d differs on the display%n", name, f);
+			}
+		}
+
+		long raw = 4L * SIZE * SIZE * frames;
+		System.out.printf("%s: %d frames, %d keyframes, %.1f rectangles per delta, sent %.1f %% of %.1f MB, "
+				+ "%.2f ms per frame to compare and encode%n", name, frames, display.keyframes,
+				(double) display.rectangles / Math.max(1, frames - display.keyframes),
+				100.0 * display.bytes / raw, raw / 1e6, encoding / 1e6 / frames);
+	}
+
+	/**
+	 * A method which finds the eye on the orbit of {@link hr.fer.zemris.java.raytracer.RayCasterParallel2}.
+	 * @param time - time in milliseconds since the start of the animation.
+	 * @return the eye.
+	 */
+	private static Point3D orbitEye(long time) {
+		double t = (double) time / 10000 * 2 * Math.PI;
+		double t2 = (double) time / 5000 * 2 * Math.PI;
+		return new Point3D(50 * Math.cos(t), 50 * Math.sin(t), 30 * Math.sin(t2));
+	}
+
+	/**
+	 * A method which creates a camera looking at the given point.
+	 * @param eye - position of the camera.
+	 * @param view - point the camera looks at.
+	 * @return the camera.
+	 */
+	private static Camera camera(Point3D eye, Point3D view) {
+		return new Camera(eye, view, new Point3D(0, 0, 10), 20, 20, SIZE, SIZE);
+	}
+
+	/**
+	 * A display which receives the deltas and keeps the frame they describe.
+	 */
+	private static class RemoteDisplay implements DeltaFrameObserver {
+
+		/**
+		 * pixels of the frame which is shown.
+		 */
+		private int[] pixels = new int[SIZE * SIZE];
+		/**
+		 * number of bytes received.
+		 */
+		private long bytes;
+		/**
+		 * number of keyframes received.
+		 */
+		private int keyframes;
+		/**
+		 * number of rectangles of the deltas received.
+		 */
+		private long rectangles;
+		/**
+		 * time in nanoseconds it took to apply the last delta.
+		 */
+		private long applying;
+
+		@Override
+		public void acceptDelta(DeltaFrame delta, long requestNo) {
+			long start = System.nanoTime();
+			delta.applyTo(pixels);
+			applying = System.nanoTime() - start;
+			bytes += 4L * delta.getData().length;
+			if(delta.isKeyframe()) {
+				keyframes++;
+			} else {
+				rectangles += delta.getRectangleCount();
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.CompiledSpheres;
+import hr.fer.zemris.java.raytracer.LightCulling;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.TileRenderer;
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * A benchmark of {@link LightCulling} on a scene of randomly placed spheres lit by many weak
+ * lights with finite influence radii. For every number of lights a frame is rendered with the
+ * lights culled by the grid and with every light considered at every point, which gives the
+ * same image because culled lights contribute nothing. The average number of lights visited
+ * by a visible point and the time of a frame are reported for both.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class LightCullingBenchmark {
+
+	/**
+	 * number of times every frame is rendered, the fastest time is reported.
+	 */
+	private static final int REPETITIONS = 3;
+	/**
+	 * width and height of the rendered frames.
+	 */
+	private static final int SIZE = 512;
+	/**
+	 * number of spheres of the scene.
+	 */
+	private static final int SPHERES = 2000;
+	/**
+	 * smallest and largest influence radius of a light.
+	 */
+	private static final double MIN_RADIUS = 1, MAX_RADIUS = 4;
+
+	/**
+	 * Main method of this program. Runs the benchmark.
+	 * @param args - optionally the numbers of lights, 100, 1000 and 4000 by default.
+	 */
+	public static void main(String[] args) {
+		int[] counts = {100, 1000, 4000};
+		if(args.length > 0) {
+			counts = new int[args.length];
+			for(int k = 0; k < args.length; k++) {
+				counts[k] = Integer.parseInt(args[k]);
+			}
+		}
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		CompiledSpheres spheres = SceneTracerBenchmark.randomSpheres(SPHERES, new Random(42));
+		Camera camera = new Camera(new Point3D(35, 10, 10), new Point3D(0, 0, 0), new Point3D(0, 0, 10),
+				20, 20, SIZE, SIZE);
+		for(int count : counts) {
+			Random random = new Random(7);
+			Scene scene = new Scene();
+			double[] radii = new double[count];
+			for(int k = 0; k < count; k++) {
+				scene.add(new LightSource(new Point3D(coordinate(random), coordinate(random), coordinate(random)),
+						20, 20, 20));
+				radii[k] = MIN_RADIUS + (MAX_RADIUS - MIN_RADIUS) * random.nextDouble();
+			}
+
+			LightCulling culling = new LightCulling(scene.getLights(), radii);
+			LightCulling everyLight = new EveryLight(scene.getLights(), radii);
+			SceneTracer culled = new SceneTracer(scene, spheres, culling, pool).forOrigin(camera.getEye());
+			SceneTracer reference = new SceneTracer(scene, spheres, everyLight, pool).forOrigin(camera.getEye());
+
+			short[][] culledFrame = frame();
+			short[][] referenceFrame = frame();
+			long culledTime = render(culled, camera, culledFrame, pool);
+			long referenceTime = render(reference, camera, referenceFrame, pool);
+			boolean same = Arrays.equals(culledFrame[0], referenceFrame[0])
+					&& Arrays.equals(culledFrame[1], referenceFrame[1])
+					&& Arrays.equals(culledFrame[2], referenceFrame[2]);
+
+			System.out.printf("%d lights: culled %.1f lights/point %.1f ms/frame, every light %.1f ms/frame"
+					+ " (%.1fx)%s%n", count, visited(culled, culling, camera), culledTime / 1e6,
+					referenceTime / 1e6, (double) referenceTime / culledTime, same ? "" : ", different image");
+		}
+	}
+
+	/**
+	 * A method which renders a frame several times.
+	 * @param tracer - tracer of the frame.
+	 * @param camera - camera of the frame.
+	 * @param frame - red, green and blue arrays of the frame.
+	 * @param pool - pool on which the frame is rendered.
+	 * @return the fastest time of a frame in nanoseconds.
+	 */
+	private static long render(SceneTracer tracer, Camera camera, short[][] frame, ForkJoinPool pool) {
+		TileRenderer renderer = new TileRenderer();
+		AtomicBoolean cancel = new AtomicBoolean();
+		long time = Long.MAX_VALUE;
+		for(int r = 0; r < REPETITIONS; r++) {
+			long start = System.nanoTime();
+			renderer.render(tracer, camera, frame[0], frame[1], frame[2], null, pool, cancel);
+			time = Math.min(time, System.nanoTime() - start);
+		}
+		return time;
+	}
+
+	/**
+	 * A method which calculates the average number of lights the culling lists for the visible points of a frame.
+	 * @param tracer - tracer of the frame.
+	 * @param culling - the culling.
+	 * @param camera - camera of the frame.
+	 * @return average number of lights per visible point.
+	 */
+	private static double visited(SceneTracer tracer, LightCulling culling, Camera camera) {
+		int[] lights = new int[culling.size()];
+		long visited = 0;
+		long points = 0;
+		Ray ray = camera.newRay();
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				camera.setRay(ray, x, y);
+				RayIntersection closest = tracer.findClosestIntersection(ray);
+				if(closest != null) {
+					visited += culling.lightsAt(closest.getPoint(), lights);
+					points++;
+				}
+			}
+		}
+		return points == 0 ? 0 : (double) visited / points;
+	}
+
+	/**
+	 * A method which creates the red, green and blue arrays of a frame.
+	 * @return the arrays.
+	 */
+	private static short[][] frame() {
+		return new short[][] {new short[SIZE * SIZE], new short[SIZE * SIZE], new short[SIZE * SIZE]};
+	}
+
+	/**
+	 * A method which creates a random coordinate of a light, among the spheres of the scene.
+	 * @param random - source of the coordinate.
+	 * @return the coordinate.
+	 */
+	private static double coordinate(Random random) {
+		return (random.nextDouble() * 2 - 1) * 11;
+	}
+
+	/**
+	 * A culling which lists every light at every point, with the same radii and falloff,
+	 * which is the reference the grid is compared with.
+	 */
+	private static class EveryLight extends LightCulling {
+
+		/**
+		 * A constructor which accepts all the relevant data.
+		 * @param lights - the lights.
+		 * @param radii - influence radius of every light.
+		 */
+		EveryLight(List<LightSource> lights, double[] radii) {
+			super(lights, radii);
+		}
+
+		@Override
+		public int lightsAt(Point3D point, int[] lights) {
+			for(int k = 0; k < size(); k++) {
+				lights[k] = k;
+			}
+			return size();
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.zemris.java.raytracer.CompiledSpheres;
+import hr.fer.zemris.java.raytracer.RayPacket;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * A benchmark which measures how long it takes to prepare scenes of many
+ * random spheres for tracing and how fast primary rays are traced through
+ * them, compared to testing every object of the scene. The spheres are created
+ * directly as {@link CompiledSpheres}, so scenes of millions of spheres fit into
+ * a modest heap. Shading of a coherent grid of rays is measured both one ray
+ * at a time, in packets, and in packets with the terms which depend only on the
+ * eye precomputed.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class SceneTracerBenchmark {
+
+	/**
+	 * number of rays traced in every measurement.
+	 */
+	private static final int RAYS = 100_000;
+	/**
+	 * number of repetitions of every measurement, the fastest one is reported.
+	 */
+	private static final int REPETITIONS = 3;
+	/**
+	 * scenes with more spheres than this are not measured by testing every object.
+	 */
+	private static final int LINEAR_LIMIT = 10_000;
+	/**
+	 * width and height of the grid of coherent rays which are traced in packets.
+	 */
+	private static final int GRID = 316;
+	/**
+	 * number of rays in a packet.
+	 */
+	private static final int PACKET_SIZE = 8;
+	/**
+	 * start of the coherent rays.
+	 */
+	private static final Point3D GRID_EYE = new Point3D(40, 5, 5);
+
+	/**
+	 * Main method of this program. Runs the benchmark.
+	 * @param args - optionally the numbers of spheres, 100, 1000, 10000, 100000 and 1000000 by default.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = {100, 1000, 10_000, 100_000, 1_000_000};
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int k = 0; k < args.length; k++) {
+				sizes[k] = Integer.parseInt(args[k]);
+			}
+		}
+
+		for(int size : sizes) {
+			CompiledSpheres spheres = randomSpheres(size, new Random(42));
+			Scene scene = size <= LINEAR_LIMIT ? randomScene(size, new Random(42)) : lights(new Scene());
+			Ray[] rays = primaryRays(new Random(7));
+
+			long build = Long.MAX_VALUE;
+			SceneTracer tracer = null;
+			for(int r = 0; r < REPETITIONS; r++) {
+				tracer = null;
+				long start = System.nanoTime();
+				tracer = new SceneTracer(scene, spheres, ForkJoinPool.commonPool());
+				build = Math.min(build, System.nanoTime() - start);
+			}
+			System.gc();
+			Runtime runtime = Runtime.getRuntime();
+			double heap = (runtime.totalMemory() - runtime.freeMemory()) / 1e6;
+
+			long accelerated = Long.MAX_VALUE;
+			long linear = Long.MAX_VALUE;
+			long hits = 0;
+			for(int r = 0; r < REPETITIONS; r++) {
+				long start = System.nanoTime();
+				for(Ray ray : rays) {
+					hits += tracer.findClosestDistance(ray) < Double.POSITIVE_INFINITY ? 1 : 0;
+				}
+				accelerated = Math.min(accelerated, System.nanoTime() - start);
+
+				if(size <= LINEAR_LIMIT) {
+					start = System.nanoTime();
+					for(Ray ray : rays) {
+						hits += linearClosestDistance(scene, ray) < Double.POSITIVE_INFINITY ? 1 : 0;
+					}
+					linear = Math.min(linear, System.nanoTime() - start);
+				}
+			}
+
+			Ray[] grid = gridRays();
+			short[] rgb = new short[3 * PACKET_SIZE];
+			RayPacket packet = new RayPacket(PACKET_SIZE);
+			long single = Long.MAX_VALUE;
+			long packets = Long.MAX_VALUE;
+			long fromEye = Long.MAX_VALUE;
+			for(int r = 0; r < REPETITIONS; r++) {
+				long start = System.nanoTime();
+				for(Ray ray : grid) {
+					tracer.tracer(ray, rgb);
+				}
+				single = Math.min(single, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				for(int k = 0; k < grid.length; k += PACKET_SIZE) {
+					packet.clear();
+					for(int p = k; p < Math.min(k + PACKET_SIZE, grid.length); p++) {
+						packet.add(grid[p]);
+					}
+					tracer.tracer(packet, rgb);
+				}
+				packets = Math.min(packets, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				SceneTracer frameTracer = tracer.forOrigin(GRID_EYE);
+				for(int k = 0; k < grid.length; k += PACKET_SIZE) {
+					packet.clear();
+					for(int p = k; p < Math.min(k + PACKET_SIZE, grid.length); p++) {
+						packet.add(grid[p]);
+					}
+					frameTracer.tracer(packet, rgb);
+				}
+				fromEye = Math.min(fromEye, System.nanoTime() - start);
+			}
+
+			System.out.printf("spheres=%d build=%.2f ms heap=%.1f MB hierarchy=%.1f ns/ray linear=%s (hits %d)%n",
+					size, build / 1e6, heap, (double) accelerated / RAYS,
+					linear == Long.MAX_VALUE ? "skipped" : String.format("%.1f ns/ray", (double) linear / RAYS),
+					hits);
+			System.out.printf("    shaded grid: single=%.1f ns/ray packets of %d=%.1f ns/ray with eye terms=%.1f ns/ray%n",
+					(double) single / grid.length, PACKET_SIZE, (double) packets / grid.length,
+					(double) fromEye / grid.length);
+		}
+	}
+
+	/**
+	 * A method which creates a scene of randomly placed spheres inside a cube.
+	 * @param size - number of spheres.
+	 * @param random - source of randomness.
+	 * @return the scene.
+	 */
+	public static Scene randomScene(int size, Random random) {
+		Scene scene = new Scene();
+		double extent = 10;
+		double radius = extent / Math.cbrt(size);
+		for(int k = 0; k < size; k++) {
+			scene.add(new Sphere(new Point3D(
+					(random.nextDouble() * 2 - 1) * extent,
+					(random.nextDouble() * 2 - 1) * extent,
+					(random.nextDouble() * 2 - 1) * extent),
+				radius * (0.2 + 0.3 * random.nextDouble()),
+				1, 1, 1, 0.5, 0.5, 0.5, 10));
+		}
+		return lights(scene);
+	}
+
+	/**
+	 * A method which creates the same spheres as {@link #randomScene(int, Random)},
+	 * packed without creating a {@link Sphere} for every one of them.
+	 * @param size - number of spheres.
+	 * @param random - source of randomness.
+	 * @return the spheres.
+	 */
+	public static CompiledSpheres randomSpheres(int size, Random random) {
+		CompiledSpheres.Builder builder = new CompiledSpheres.Builder(size);
+		double extent = 10;
+		double radius = extent / Math.cbrt(size);
+		for(int k = 0; k < size; k++) {
+			builder.add(
+					(random.nextDouble() * 2 - 1) * extent,
+					(random.nextDouble() * 2 - 1) * extent,
+					(random.nextDouble() * 2 - 1) * extent,
+				radius * (0.2 + 0.3 * random.nextDouble()),
+				1, 1, 1, 0.5, 0.5, 0.5, 10);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A method which adds the lights of the benchmark scenes.
+	 * @param scene - scene to which the lights are added.
+	 * @return the scene.
+	 */
+	private static Scene lights(Scene scene) {
+		scene.add(new LightSource(new Point3D(30, 20, 20), 100, 100, 100));
+		scene.add(new LightSource(new Point3D(-30, 20, -10), 80, 40, 40));
+		return scene;
+	}
+
+	/**
+	 * A method which creates rays from a fixed eye towards random points of the scene.
+	 * @param random - source of randomness.
+	 * @return the rays.
+	 */
+	private static Ray[] primaryRays(Random random) {
+		Point3D eye = new Point3D(40, 5, 5);
+		Ray[] rays = new Ray[RAYS];
+		for(int k = 0; k < RAYS; k++) {
+			rays[k] = Ray.fromPoints(eye, new Point3D(0,
+					(random.nextDouble() * 2 - 1) * 10,
+					(random.nextDouble() * 2 - 1) * 10));
+		}
+		return rays;
+	}
+
+	/**
+	 * A method which creates rays from a fixed eye through a regular grid of points,
+	 * row by row, like the primary rays of an image.
+	 * @return the rays.
+	 */
+	private static Ray[] gridRays() {
+		Ray[] rays = new Ray[GRID * GRID];
+		for(int y = 0; y < GRID; y++) {
+			for(int x = 0; x < GRID; x++) {
+				rays[y * GRID + x] = Ray.fromPoints(GRID_EYE, new Point3D(0,
+						20.0 * x / (GRID - 1) - 10,
+						10 - 20.0 * y / (GRID - 1)));
+			}
+		}
+		return rays;
+	}
+
+	/**
+	 * A method which finds the closest intersection by testing every object of the scene.
+	 * @param scene - the scene.
+	 * @param ray - ray which is followed.
+	 * @return the distance, or {@link Double#POSITIVE_INFINITY} if there is no intersection.
+	 */
+	private static double linearClosestDistance(Scene scene, Ray ray) {
+		double best = Double.POSITIVE_INFINITY;
+		for(var object : scene.getObjects()) {
+			var intersection = object.findClosestRayIntersection(ray);
+			if(intersection != null && intersection.getDistance() < best) {
+				best = intersection.getDistance();
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,107 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.model.*;
+import hr.fer.zemris.java.raytracer.viewer.RayTracerViewer;
+
+/**
+ * A program which compares shadows looked up in {@link hr.fer.zemris.java.raytracer.ShadowMaps}
+ * with exact shadow rays on the scene of {@link hr.fer.zemris.java.raytracer.RayCasterParallel2},
+ * viewed from several points of its orbit. For every resolution of the maps it reports how long
+ * the maps take to build, how long the frames take to render compared to shadow rays, and how
+ * many pixels differ from the exact image.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class ShadowMapComparison {
+
+	/**
+	 * width and height of the rendered frames.
+	 */
+	private static final int SIZE = 400;
+	/**
+	 * number of frames rendered from different points of the orbit.
+	 */
+	private static final int FRAMES = 8;
+
+	/**
+	 * Main method of this program. Runs the comparison.
+	 * @param args - optionally the bias followed by the resolutions, 0.001 and 256, 512 and 1024 by default.
+	 */
+	public static void main(String[] args) {
+		double bias = args.length > 0 ? Double.parseDouble(args[0]) : 0.001;
+		int[] resolutions = {256, 512, 1024};
+		if(args.length > 1) {
+			resolutions = new int[args.length - 1];
+			for(int k = 1; k < args.length; k++) {
+				resolutions[k - 1] = Integer.parseInt(args[k]);
+			}
+		}
+
+		SceneTracer exact = new SceneTracer(RayTracerViewer.createPredefinedScene2());
+		short[][] reference = new short[FRAMES][];
+		long exactTime = Long.MAX_VALUE;
+		for(int r = 0; r < 2; r++) {
+			long start = System.nanoTime();
+			for(int f = 0; f < FRAMES; f++) {
+				reference[f] = render(exact, f);
+			}
+			exactTime = Math.min(exactTime, System.nanoTime() - start);
+		}
+		System.out.printf("shadow rays: %.1f ms/frame%n", exactTime / 1e6 / FRAMES);
+
+		for(int resolution : resolutions) {
+			long start = System.nanoTime();
+			SceneTracer mapped = exact.withShadowMaps(resolution, bias, ForkJoinPool.commonPool());
+			long build = System.nanoTime() - start;
+
+			long time = Long.MAX_VALUE;
+			long differing = 0;
+			for(int r = 0; r < 2; r++) {
+				differing = 0;
+				start = System.nanoTime();
+				for(int f = 0; f < FRAMES; f++) {
+					short[] rgb = render(mapped, f);
+					for(int k = 0; k < SIZE * SIZE; k++) {
+						if(rgb[3 * k] != reference[f][3 * k] || rgb[3 * k + 1] != reference[f][3 * k + 1]
+								|| rgb[3 * k + 2] != reference[f][3 * k + 2]) {
+							differing++;
+						}
+					}
+				}
+				time = Math.min(time, System.nanoTime() - start);
+			}
+			System.out.printf("shadow maps %dx%d, bias %s: build=%.1f ms frame=%.1f ms differing pixels=%.3f%%%n",
+					resolution, resolution, bias, build / 1e6, time / 1e6 / FRAMES,
+					100.0 * differing / FRAMES / SIZE / SIZE);
+		}
+	}
+
+	/**
+	 * A method which renders a frame from a point of the orbit of {@link hr.fer.zemris.java.raytracer.RayCasterParallel2}.
+	 * @param tracer - tracer which colors the rays.
+	 * @param frame - index of the frame, spread evenly over the orbit.
+	 * @return colors of the pixels, three consecutive values for every pixel.
+	 */
+	private static short[] render(SceneTracer tracer, int frame) {
+		double t = 2 * Math.PI * frame / FRAMES;
+		Point3D eye = new Point3D(50 * Math.cos(t), 50 * Math.sin(t), 30 * Math.sin(2 * t));
+		Camera camera = new Camera(eye, new Point3D(-2, 0, -0.5), new Point3D(0, 0, 10), 20, 20, SIZE, SIZE);
+		SceneTracer frameTracer = tracer.forOrigin(eye);
+
+		short[] rgb = new short[3 * SIZE * SIZE];
+		short[] color = new short[3];
+		Ray ray = camera.newRay();
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				camera.setRay(ray, x, y);
+				frameTracer.tracer(ray, color);
+				System.arraycopy(color, 0, rgb, 3 * (y * SIZE + x), 3);
+			}
+		}
+		return rgb;
+	}
+}
@@ -0,0 +1,107 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.RayCasterParallel2;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.TileRenderer;
+import hr.fer.zemris.java.raytracer.model.*;
+import hr.fer.zemris.java.raytracer.viewer.RayTracerViewer;
+
+/**
+ * A benchmark which compares rendering of frames in rows spanning the whole width of the
+ * frame, as {@link RayCasterParallel2.ColoringTask} does, with rendering in square tiles
+ * visited in Morton order by a {@link TileRenderer}, for several sizes of the tiles.
+ * Frames of 1920x1080 and 3840x2160 pixels are rendered of the scene of
+ * {@link RayCasterParallel2} and of a scene of randomly placed spheres, and the time of
+ * a frame of every layout is reported, together with a check that all layouts render
+ * the same image.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class TileBenchmark {
+
+	/**
+	 * number of times every frame is rendered, the fastest time is reported.
+	 */
+	private static final int REPETITIONS = 3;
+	/**
+	 * widths and heights of the frames.
+	 */
+	private static final int[][] RESOLUTIONS = {{1920, 1080}, {3840, 2160}};
+	/**
+	 * number of spheres of the random scene.
+	 */
+	private static final int SPHERES = 2000;
+
+	/**
+	 * Main method of this program. Runs the benchmark.
+	 * @param args - optionally the sizes of the tiles, 8, 16, 32 and 64 by default.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = {8, 16, 32, 64};
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int k = 0; k < args.length; k++) {
+				sizes[k] = Integer.parseInt(args[k]);
+			}
+		}
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		SceneTracer orbit = new SceneTracer(RayTracerViewer.createPredefinedScene2());
+		SceneTracer spheres = new SceneTracer(SceneTracerBenchmark.randomScene(SPHERES, new Random(42)));
+		for(int[] resolution : RESOLUTIONS) {
+			int width = resolution[0];
+			int height = resolution[1];
+			double aspect = (double) width / height;
+			benchmark("scene 2", orbit, new Camera(new Point3D(50, 10, 15), new Point3D(-2, 0, -0.5),
+					new Point3D(0, 0, 10), 20 * aspect, 20, width, height), sizes, pool);
+			benchmark(SPHERES + " spheres", spheres, new Camera(new Point3D(35, 10, 10), new Point3D(0, 0, 0),
+					new Point3D(0, 0, 10), 20 * aspect, 20, width, height), sizes, pool);
+		}
+	}
+
+	/**
+	 * A method which renders one frame in rows and in tiles of every size and prints the times.
+	 * @param name - name of the scene.
+	 * @param tracer - tracer of the scene.
+	 * @param camera - camera of the frame.
+	 * @param sizes - sizes of the tiles.
+	 * @param pool - pool on which the frames are rendered.
+	 */
+	private static void benchmark(String name, SceneTracer tracer, Camera camera, int[] sizes, ForkJoinPool pool) {
+		int width = camera.getWidth();
+		int height = camera.getHeight();
+		SceneTracer frameTracer = tracer.forOrigin(camera.getEye());
+		AtomicBoolean cancel = new AtomicBoolean();
+		short[][] rows = {new short[width * height], new short[width * height], new short[width * height]};
+		short[][] tiles = {new short[width * height], new short[width * height], new short[width * height]};
+
+		long rowTime = Long.MAX_VALUE;
+		for(int r = 0; r < REPETITIONS; r++) {
+			long start = System.nanoTime();
+			pool.invoke(new RayCasterParallel2.ColoringTask(camera, frameTracer.screenTiles(camera),
+					rows[0], rows[1], rows[2], null, frameTracer, 0, height - 1, cancel, start + Long.MAX_VALUE));
+			rowTime = Math.min(rowTime, System.nanoTime() - start);
+		}
+		System.out.printf("%s, %dx%d: rows %.1f ms/frame%n", name, width, height, rowTime / 1e6);
+
+		for(int size : sizes) {
+			TileRenderer renderer = new TileRenderer(size);
+			long tileTime = Long.MAX_VALUE;
+			for(int r = 0; r < REPETITIONS; r++) {
+				long start = System.nanoTime();
+				renderer.render(frameTracer, camera, tiles[0], tiles[1], tiles[2], null, pool, cancel);
+				tileTime = Math.min(tileTime, System.nanoTime() - start);
+			}
+			boolean same = Arrays.equals(rows[0], tiles[0]) && Arrays.equals(rows[1], tiles[1])
+					&& Arrays.equals(rows[2], tiles[2]);
+			System.out.printf("%s, %dx%d: tiles of %d: %.1f ms/frame (%+.1f %%)%s%n", name, width, height, size,
+					tileTime / 1e6, 100.0 * (tileTime - rowTime) / rowTime, same ? "" : ", different image");
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package hr.fer.zemris.java.raytracer.demo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.raytracer.Camera;
+import hr.fer.zemris.java.raytracer.RayCasterParallel2;
+import hr.fer.zemris.java.raytracer.SceneTracer;
+import hr.fer.zemris.java.raytracer.WavefrontRenderer;
+import hr.fer.zemris.java.raytracer.model.*;
+import hr.fer.zemris.java.raytracer.viewer.RayTracerViewer;
+
+/**
+ * A program which compares the throughput of {@link WavefrontRenderer} with the
+ * {@link RayCasterParallel2.ColoringTask} which traces pixel by pixel, on the scene of
+ * {@link RayCasterParallel2} viewed from several points of its orbit. It reports
+ * the time of a frame and the number of primary rays per second of both renderers,
+ * and checks that they render the same images.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class WavefrontComparison {
+
+	/**
+	 * number of frames rendered from different points of the orbit.
+	 */
+	private static final int FRAMES = 8;
+	/**
+	 * number of times all frames are rendered, the fastest time is reported.
+	 */
+	private static final int REPETITIONS = 5;
+
+	/**
+	 * Main method of this program. Runs the comparison.
+	 * @param args - optionally the width and the height of the frames, 400 by default.
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : width;
+
+		SceneTracer tracer = new SceneTracer(RayTracerViewer.createPredefinedScene2());
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		AtomicBoolean cancel = new AtomicBoolean();
+		WavefrontRenderer wavefront = new WavefrontRenderer();
+		short[][] pixelByPixel = new short[3 * FRAMES][width * height];
+		short[][] staged = new short[3 * FRAMES][width * height];
+
+		long pixelTime = Long.MAX_VALUE;
+		long stagedTime = Long.MAX_VALUE;
+		for(int r = 0; r < REPETITIONS; r++) {
+			long start = System.nanoTime();
+			for(int f = 0; f < FRAMES; f++) {
+				Camera camera = camera(f, width, height);
+				SceneTracer frameTracer = tracer.forOrigin(camera.getEye());
+				pool.invoke(new RayCasterParallel2.ColoringTask(camera, frameTracer.screenTiles(camera),
+						pixelByPixel[3 * f], pixelByPixel[3 * f + 1], pixelByPixel[3 * f + 2], null, frameTracer,
+						0, height - 1, cancel, start + Long.MAX_VALUE));
+			}
+			pixelTime = Math.min(pixelTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for(int f = 0; f < FRAMES; f++) {
+				Camera camera = camera(f, width, height);
+				wavefront.render(tracer.forOrigin(camera.getEye()), camera,
+						staged[3 * f], staged[3 * f + 1], staged[3 * f + 2], null, pool, cancel);
+			}
+			stagedTime = Math.min(stagedTime, System.nanoTime() - start);
+		}
+
+		long differing = 0;
+		for(int f = 0; f < FRAMES; f++) {
+			for(int k = 0; k < width * height; k++) {
+				if(pixelByPixel[3 * f][k] != staged[3 * f][k] || pixelByPixel[3 * f + 1][k] != staged[3 * f + 1][k]
+						|| pixelByPixel[3 * f + 2][k] != staged[3 * f + 2][k]) {
+					differing++;
+				}
+			}
+		}
+		report("pixel by pixel", pixelTime, width, height);
+		report("wavefront", stagedTime, width, height);
+		System.out.printf("differing pixels: %d%n", differing);
+	}
+
+	/**
+	 * A method which prints the throughput of a renderer.
+	 * @param name - name of the renderer.
+	 * @param time - time in nanoseconds it took to render all frames.
+	 * @param width - width of the frames.
+	 * @param height - height of the frames.
+	 */
+	private static void report(String name, long time, int width, int height) {
+		System.out.printf("%s: %.1f ms/frame, %.2f Mrays/s%n", name, time / 1e6 / FRAMES,
+				(double) FRAMES * width * height / time * 1e3);
+	}
+
+	/**
+	 * A method which creates the camera of a point of the orbit of {@link RayCasterParallel2}.
+	 * @param frame - index of the frame, spread evenly over the orbit.
+	 * @param width - width of the frame.
+	 * @param height - height of the frame.
+	 * @return the camera.
+	 */
+	private static Camera camera(int frame, int width, int height) {
+		double t = 2 * Math.PI * frame / FRAMES;
+		Point3D eye = new Point3D(50 * Math.cos(t), 50 * Math.sin(t), 30 * Math.sin(2 * t));
+		return new Camera(eye, new Point3D(-2, 0, -0.5), new Point3D(0, 0, 10), 20, 20, width, height);
+	}
+}
@@ -0,0 +1,61 @@
+package hr.fer.zemris.java.raytracer.model;
+
+/**
+ * An interface of graphical objects which can answer intersection queries
+ * without creating any objects. The closest hit is found by comparing plain
+ * distances, and only the winning hit is turned into a {@link RayIntersection}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public interface IPrimitiveIntersectable {
+
+	/**
+	 * A method which finds the distance from the ray's start to the first
+	 * intersection in front of it. Doesn't allocate any objects.
+	 * @param ray - ray
+	 * @return the distance, or {@link Double#NaN} if there is no such intersection.
+	 */
+	double findClosestRayDistance(Ray ray);
+
+	/**
+	 * A method which finds the distance from the ray's start to the first
+	 * intersection within an interval of distances. Objects which can't search from
+	 * the given minimum distance only report the first intersection in front of the ray,
+	 * if it lies within the interval. Doesn't allocate any objects.
+	 * @param ray - ray
+	 * @param minDistance - smallest accepted distance.
+	 * @param maxDistance - distance from which intersections aren't accepted.
+	 * @return the distance, or {@link Double#NaN} if there is no such intersection.
+	 */
+	default double findClosestRayDistance(Ray ray, double minDistance, double maxDistance) {
+		double distance = findClosestRayDistance(ray);
+		return distance >= minDistance && distance < maxDistance ? distance : Double.NaN;
+	}
+
+	/**
+	 * A method which creates the intersection which lies on the given ray at the
+	 * given distance, previously found by {@link #findClosestRayDistance(Ray)}.
+	 * @param ray - ray
+	 * @param distance - distance from the ray's start.
+	 * @return intersection.
+	 */
+	RayIntersection intersectionAt(Ray ray, double distance);
+
+	/**
+	 * A method which checks whether this object blocks the segment of the ray between
+	 * its start and the given distance. Unlike {@link #findClosestRayDistance(Ray)} it only
+	 * needs to find some intersection on the segment, not the closest one.
+	 * @param ray - ray
+	 * @param maxDistance - length of the segment.
+	 * @return {@code true} if there is an intersection on the segment, {@code false} otherwise.
+	 */
+	default boolean occludes(Ray ray, double maxDistance) {
+		return findClosestRayDistance(ray) < maxDistance;
+	}
+
+	/**
+	 * A method which calculates the axis-aligned box which contains this object.
+	 * @return minimum x, y and z coordinates followed by maximum x, y and z coordinates.
+	 */
+	double[] getBounds();
+}
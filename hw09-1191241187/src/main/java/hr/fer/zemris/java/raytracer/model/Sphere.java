@@ -5,7 +5,7 @@ package hr.fer.zemris.java.raytracer.model;
  * @author Božidar Grgur Drmić
  *
  */
-public class Sphere extends GraphicalObject {	
+public class Sphere extends GraphicalObject implements IPrimitiveIntersectable {	
 
 	/**
 	 * Two double are considered equal if their difference is smaller than this constant.
@@ -75,6 +75,78 @@ public class Sphere extends GraphicalObject {
 		this.krn = krn;
 	}	
 	
+	/**
+	 * A getter for the center of the sphere.
+	 * @return center
+	 */
+	public Point3D getCenter() {
+		return center;
+	}
+	
+	/**
+	 * A getter for the radius of the sphere.
+	 * @return radius
+	 */
+	public double getRadius() {
+		return radius;
+	}
+	
+	/**
+	 * A getter for the diffusion parameter for color red.
+	 * @return kdr
+	 */
+	public double getKdr() {
+		return kdr;
+	}
+	
+	/**
+	 * A getter for the diffusion parameter for color green.
+	 * @return kdg
+	 */
+	public double getKdg() {
+		return kdg;
+	}
+	
+	/**
+	 * A getter for the diffusion parameter for color blue.
+	 * @return kdb
+	 */
+	public double getKdb() {
+		return kdb;
+	}
+	
+	/**
+	 * A getter for the reflection parameter for color red.
+	 * @return krr
+	 */
+	public double getKrr() {
+		return krr;
+	}
+	
+	/**
+	 * A getter for the reflection parameter for color green.
+	 * @return krg
+	 */
+	public double getKrg() {
+		return krg;
+	}
+	
+	/**
+	 * A getter for the reflection parameter for color blue.
+	 * @return krb
+	 */
+	public double getKrb() {
+		return krb;
+	}
+	
+	/**
+	 * A getter for the percentage of light that is reflected.
+	 * @return krn
+	 */
+	public double getKrn() {
+		return krn;
+	}
+	
 	/**
 	 * A method which finds the first intersection some ray hits on this object.
 	 * Returns {@code null} if there is none.
@@ -82,27 +154,91 @@ public class Sphere extends GraphicalObject {
 	 * @return intersection.
 	 */
 	public RayIntersection findClosestRayIntersection(Ray ray) {
+		double distance = findClosestRayDistance(ray);
+		return Double.isNaN(distance) ? null : intersectionAt(ray, distance);
+	}
+	
+	@Override
+	public double findClosestRayDistance(Ray ray) {
+		return findClosestRayDistance(ray, 0, Double.POSITIVE_INFINITY);
+	}
+	
+	@Override
+	public double findClosestRayDistance(Ray ray, double minDistance, double maxDistance) {
+		double ox = ray.start.x - center.x;
+		double oy = ray.start.y - center.y;
+		double oz = ray.start.z - center.z;
 		
-		double a = ray.direction.scalarProduct(ray.start.sub(center));
-		double disc = a * a + radius * radius - Math.pow(ray.start.sub(center).norm(), 2);
+		double a = ray.direction.x * ox + ray.direction.y * oy + ray.direction.z * oz;
+		double disc = a * a + radius * radius - (ox * ox + oy * oy + oz * oz);
 		
 		if(disc < -EPSILON) {
-			return null;
+			return Double.NaN;
 		}
 		
 		if(disc < EPSILON) {
-			double distance = -a;
-			return new SphereRayIntersection(ray.start.add(ray.direction.scalarMultiply(distance)),
-											distance, true, this);
+			return -a >= minDistance && -a < maxDistance ? -a : Double.NaN;
+		}
+		
+		double beyond = -a - maxDistance;
+		double before = a + minDistance;
+		if(beyond >= 0 && beyond * beyond >= disc || before > 0 && before * before > disc) {
+			return Double.NaN;
 		}
 		
 		disc = Math.sqrt(disc);
 		double distance = -a - disc;
-		double d2 = -a + disc;
-		boolean outer = Math.signum(distance) == Math.signum(d2);
-		if(distance < 0) distance = d2;
-		return new SphereRayIntersection(ray.start.add(ray.direction.scalarMultiply(distance)),
-										distance, outer, this);
+		if(distance < minDistance) {
+			distance = -a + disc;
+		}
+		return distance >= minDistance && distance < maxDistance ? distance : Double.NaN;
+	}
+	
+	@Override
+	public boolean occludes(Ray ray, double maxDistance) {
+		double ox = ray.start.x - center.x;
+		double oy = ray.start.y - center.y;
+		double oz = ray.start.z - center.z;
+		
+		double a = ray.direction.x * ox + ray.direction.y * oy + ray.direction.z * oz;
+		double c = ox * ox + oy * oy + oz * oz - radius * radius;
+		if(c > 0 && a > 0) {
+			return false;
+		}
+		
+		double disc = a * a - c;
+		if(disc < -EPSILON) {
+			return false;
+		}
+		
+		disc = Math.sqrt(Math.max(disc, 0));
+		double distance = -a - disc;
+		if(distance < 0) {
+			distance = -a + disc;
+		}
+		return distance >= 0 && distance < maxDistance;
+	}
+	
+	@Override
+	public RayIntersection intersectionAt(Ray ray, double distance) {
+		double ox = ray.start.x - center.x;
+		double oy = ray.start.y - center.y;
+		double oz = ray.start.z - center.z;
+		boolean outer = ox * ox + oy * oy + oz * oz > radius * radius;
+		
+		return new SphereRayIntersection(new Point3D(
+				ray.start.x + ray.direction.x * distance,
+				ray.start.y + ray.direction.y * distance,
+				ray.start.z + ray.direction.z * distance
+			), distance, outer, this);
+	}
+	
+	@Override
+	public double[] getBounds() {
+		return new double[] {
+			center.x - radius, center.y - radius, center.z - radius,
+			center.x + radius, center.y + radius, center.z + radius
+		};
 	}
 	
 	/**
@@ -0,0 +1,91 @@
+package hr.fer.zemris.java.fractals;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.zemris.math.Complex;
+
+/**
+ * Tests of {@link NewtonEngine}, which check that a calculation which isn't completed
+ * is reported instead of returning an incomplete image as if it were done.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class NewtonEngineTest {
+
+	@Test
+	public void completeCalculationIsNotAborted() {
+		FairComputePool pool = new FairComputePool(1);
+		try {
+			NewtonEngine engine = new NewtonEngine(pool, Complex.ONE, Complex.ONE_NEG);
+			short[] data = new short[32 * 32];
+			AtomicBoolean cancel = new AtomicBoolean();
+
+			engine.render(-2, 2, -2, 2, 32, 32, data, cancel);
+
+			assertFalse(cancel.get());
+			assertEquals(1, data[16 * 32 + 30]);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void interruptedCalculationIsAborted() throws InterruptedException {
+		FairComputePool pool = new FairComputePool(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			pool.newTenant().submit(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			NewtonEngine engine = new NewtonEngine(pool, Complex.ONE, Complex.ONE_NEG);
+			AtomicBoolean cancel = new AtomicBoolean();
+			Thread.currentThread().interrupt();
+			engine.render(-2, 2, -2, 2, 32, 32, new short[32 * 32], cancel);
+
+			assertTrue(Thread.interrupted());
+			assertTrue(cancel.get());
+		} finally {
+			release.countDown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void failedCalculationThrows() {
+		FairComputePool pool = new FairComputePool(1);
+		try {
+			NewtonEngine engine = new NewtonEngine(pool, Complex.ONE, Complex.ONE_NEG);
+			AtomicBoolean cancel = new AtomicBoolean();
+
+			assertThrows(IllegalStateException.class,
+					() -> engine.render(-2, 2, -2, 2, 32, 32, new short[10], cancel));
+			assertTrue(cancel.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void shutDownPoolThrows() {
+		FairComputePool pool = new FairComputePool(1);
+		NewtonEngine engine = new NewtonEngine(pool, Complex.ONE, Complex.ONE_NEG);
+		pool.shutdown();
+
+		assertThrows(IllegalStateException.class,
+				() -> engine.render(-2, 2, -2, 2, 32, 32, new short[32 * 32], new AtomicBoolean()));
+	}
+}
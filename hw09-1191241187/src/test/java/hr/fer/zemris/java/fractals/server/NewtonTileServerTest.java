@@ -0,0 +1,203 @@
+package hr.fer.zemris.java.fractals.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link NewtonTileServer}, started on a free port of the loopback interface.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class NewtonTileServerTest {
+
+	/**
+	 * signature every PNG image starts with.
+	 */
+	private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	/**
+	 * path of a valid tile.
+	 */
+	private static final String TILE = "/1,-1,i,-i/1/0/1.png";
+
+	/**
+	 * the tested server.
+	 */
+	private NewtonTileServer server;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		server = start(64L * 1024 * 1024);
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void tileIsPngWithEtag() throws IOException {
+		HttpURLConnection connection = open(server, TILE);
+
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("image/png", connection.getHeaderField("Content-Type"));
+		assertNotNull(connection.getHeaderField("ETag"));
+		byte[] body = read(connection);
+		assertArrayEquals(PNG_SIGNATURE, Arrays.copyOf(body, PNG_SIGNATURE.length));
+		assertEquals(NewtonTileServer.TILE_SIZE, ImageIO.read(new ByteArrayInputStream(body)).getWidth());
+	}
+
+	@Test
+	public void matchingEtagIsNotModified() throws IOException {
+		HttpURLConnection first = open(server, TILE);
+		assertEquals(200, first.getResponseCode());
+		String etag = first.getHeaderField("ETag");
+		read(first);
+
+		HttpURLConnection second = open(server, TILE);
+		second.setRequestProperty("If-None-Match", etag);
+		assertEquals(304, second.getResponseCode());
+		assertEquals(etag, second.getHeaderField("ETag"));
+
+		HttpURLConnection other = open(server, TILE);
+		other.setRequestProperty("If-None-Match", "\"0\"");
+		assertEquals(200, other.getResponseCode());
+		read(other);
+	}
+
+	@Test
+	public void equalRootsShareEtag() throws IOException {
+		HttpURLConnection first = open(server, TILE);
+		HttpURLConnection second = open(server, "/1.0,-1,0%2B1i,-i/1/0/1.png");
+
+		assertEquals(200, first.getResponseCode());
+		assertEquals(200, second.getResponseCode());
+		assertEquals(first.getHeaderField("ETag"), second.getHeaderField("ETag"));
+	}
+
+	@Test
+	public void malformedRootsAreBadRequests() throws IOException {
+		for(String roots : List.of("1", "1,x", "1,,i", "1,2%2B3%2B4i", "1,NaN", "1,Infinity", "1,%20")) {
+			assertEquals(400, open(server, "/" + roots + "/0/0/0.png").getResponseCode(), roots);
+		}
+	}
+
+	@Test
+	public void malformedCoordinatesAreRejected() throws IOException {
+		assertEquals(400, open(server, "/1,-1/99999999999/0/0.png").getResponseCode());
+		assertEquals(404, open(server, "/1,-1/31/0/0.png").getResponseCode());
+		assertEquals(404, open(server, "/1,-1/1/2/0.png").getResponseCode());
+		assertEquals(404, open(server, "/1,-1/1/0/2.png").getResponseCode());
+		assertEquals(404, open(server, "/1,-1/1/-1/0.png").getResponseCode());
+		assertEquals(404, open(server, "/1,-1/1/0/0.jpg").getResponseCode());
+		assertEquals(404, open(server, "/1,-1/1/0.png").getResponseCode());
+	}
+
+	@Test
+	public void concurrentIdenticalRequestsRenderOnce() throws Exception {
+		int clients = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Callable<Integer>> requests = new ArrayList<>();
+		for(int i = 0; i < clients; i++) {
+			requests.add(() -> {
+				start.await();
+				HttpURLConnection connection = open(server, TILE);
+				int status = connection.getResponseCode();
+				read(connection);
+				return status;
+			});
+		}
+
+		ExecutorService threads = Executors.newFixedThreadPool(clients);
+		try {
+			List<Future<Integer>> statuses = new ArrayList<>();
+			for(Callable<Integer> request : requests) {
+				statuses.add(threads.submit(request));
+			}
+			start.countDown();
+			for(Future<Integer> status : statuses) {
+				assertEquals(200, status.get(60, TimeUnit.SECONDS).intValue());
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+		assertEquals(1, server.getCache().renders());
+	}
+
+	@Test
+	public void cacheStaysWithinItsCapacity() throws IOException {
+		HttpURLConnection probe = open(server, TILE);
+		assertEquals(200, probe.getResponseCode());
+		long capacity = read(probe).length * 3 / 2;
+		server.stop();
+
+		server = start(capacity);
+		for(String tile : List.of(TILE, "/1,-1,i,-i/1/1/1.png", TILE)) {
+			HttpURLConnection connection = open(server, tile);
+			assertEquals(200, connection.getResponseCode());
+			read(connection);
+			assertTrue(server.getCache().size() <= capacity);
+		}
+		assertEquals(3, server.getCache().renders());
+	}
+
+	/**
+	 * A method which starts a server on a free port of the loopback interface.
+	 * @param capacity - capacity of its cache in bytes.
+	 * @return the started server.
+	 * @throws IOException if the server can't be bound.
+	 */
+	private static NewtonTileServer start(long capacity) throws IOException {
+		NewtonTileServer server = new NewtonTileServer(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), capacity, 4);
+		server.start();
+		return server;
+	}
+
+	/**
+	 * A method which opens a connection to a path of the server.
+	 * @param server - the server.
+	 * @param path - the path.
+	 * @return the connection.
+	 * @throws IOException if the connection can't be opened.
+	 */
+	private static HttpURLConnection open(NewtonTileServer server, String path) throws IOException {
+		URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	/**
+	 * A method which reads the whole body of a successful response.
+	 * @param connection - the connection.
+	 * @return the body.
+	 * @throws IOException if the body can't be read.
+	 */
+	private static byte[] read(HttpURLConnection connection) throws IOException {
+		try(InputStream is = connection.getInputStream()) {
+			return is.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package hr.fer.zemris.java.fractals.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link TileCache}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class TileCacheTest {
+
+	@Test
+	public void cachedTileIsNotRenderedAgain() {
+		TileCache cache = new TileCache(1000);
+		byte[] tile = new byte[100];
+
+		assertSame(tile, cache.get("a", () -> tile));
+		assertSame(tile, cache.get("a", () -> new byte[100]));
+		assertEquals(1, cache.renders());
+		assertEquals(100, cache.size());
+	}
+
+	@Test
+	public void leastRecentlyUsedTilesAreEvicted() {
+		TileCache cache = new TileCache(250);
+		cache.get("a", () -> new byte[100]);
+		cache.get("b", () -> new byte[100]);
+		cache.get("a", () -> new byte[100]);
+		cache.get("c", () -> new byte[100]);
+
+		assertEquals(3, cache.renders());
+		assertEquals(200, cache.size());
+
+		cache.get("a", () -> new byte[100]);
+		cache.get("c", () -> new byte[100]);
+		assertEquals(3, cache.renders());
+		cache.get("b", () -> new byte[100]);
+		assertEquals(4, cache.renders());
+		assertTrue(cache.size() <= 250);
+	}
+
+	@Test
+	public void tileLargerThanCapacityIsNotCached() {
+		TileCache cache = new TileCache(50);
+		cache.get("a", () -> new byte[100]);
+		cache.get("a", () -> new byte[100]);
+
+		assertEquals(2, cache.renders());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void negativeCapacityThrows() {
+		assertThrows(IllegalArgumentException.class, () -> new TileCache(-1));
+	}
+
+	@Test
+	public void concurrentRequestsRenderOnce() throws Exception {
+		TileCache cache = new TileCache(1000);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		byte[] tile = new byte[10];
+
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			Future<byte[]> first = threads.submit(() -> cache.get("a", () -> {
+				calls.incrementAndGet();
+				started.countDown();
+				await(release);
+				return tile;
+			}));
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			List<Future<byte[]>> others = new ArrayList<>();
+			for(int i = 0; i < 3; i++) {
+				others.add(threads.submit(() -> cache.get("a", () -> {
+					calls.incrementAndGet();
+					return new byte[10];
+				})));
+			}
+			Thread.sleep(100);
+			release.countDown();
+
+			assertSame(tile, first.get(10, TimeUnit.SECONDS));
+			for(Future<byte[]> other : others) {
+				assertSame(tile, other.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+		assertEquals(1, calls.get());
+		assertEquals(1, cache.renders());
+	}
+
+	@Test
+	public void failedRenderIsNotCached() {
+		TileCache cache = new TileCache(1000);
+		assertThrows(IllegalStateException.class, () -> cache.get("a", () -> {
+			throw new IllegalStateException();
+		}));
+
+		byte[] tile = new byte[10];
+		assertSame(tile, cache.get("a", () -> tile));
+	}
+
+	@Test
+	public void errorIsPassedToWaitingThreads() throws Exception {
+		TileCache cache = new TileCache(1000);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			Future<byte[]> first = threads.submit(() -> cache.get("a", () -> {
+				started.countDown();
+				await(release);
+				throw new OutOfMemoryError("Test error.");
+			}));
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			Future<byte[]> waiting = threads.submit(() -> cache.get("a", () -> new byte[10]));
+			Thread.sleep(100);
+			release.countDown();
+
+			assertTrue(assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS)).getCause()
+					instanceof OutOfMemoryError);
+			try {
+				assertEquals(10, waiting.get(10, TimeUnit.SECONDS).length);
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause().getCause() instanceof OutOfMemoryError);
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+
+		byte[] tile = new byte[10];
+		assertSame(tile, cache.get("a", () -> tile));
+	}
+
+	/**
+	 * A method which waits for a latch, failing the renderer if it is interrupted.
+	 * @param latch - the latch.
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package hr.fer.zemris.java.raytracer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link DeltaEncoder} and {@link DeltaFrame}, which apply every encoded frame
+ * to the pixels of the previous one, as a remote display does.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class DeltaEncoderTest {
+
+	/**
+	 * pool on which the frames are compared.
+	 */
+	private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+	@Test
+	public void sequenceIsReproducedExactly() {
+		DeltaEncoder encoder = new DeltaEncoder(4);
+		Random random = new Random(42);
+		Display display = new Display();
+
+		ArgbFrame frame = scene(45, 37, random);
+		assertTrue(display.show(encoder.encode(frame, POOL), frame));
+
+		frame.getPixels()[3 * 45 + 7] = ArgbFrame.pack(1, 2, 3);
+		frame.getPixels()[36 * 45 + 44] = ArgbFrame.pack(4, 5, 6);
+		DeltaFrame delta = encoder.encode(frame, POOL);
+		assertFalse(display.show(delta, frame));
+		assertEquals(2, delta.getRectangleCount());
+
+		delta = encoder.encode(frame, POOL);
+		assertFalse(display.show(delta, frame));
+		assertEquals(0, delta.getRectangleCount());
+
+		fill(frame, 10, 10, 30, 20, ArgbFrame.pack(200, 0, 0));
+		assertFalse(display.show(encoder.encode(frame, POOL), frame));
+
+		frame.getPixels()[0] = ArgbFrame.pack(9, 9, 9);
+		assertTrue(display.show(encoder.encode(frame, POOL), frame));
+		frame.getPixels()[1] = ArgbFrame.pack(9, 9, 9);
+		assertFalse(display.show(encoder.encode(frame, POOL), frame));
+
+		frame = scene(20, 53, random);
+		assertTrue(display.show(encoder.encode(frame, POOL), frame));
+		fill(frame, 0, 40, 20, 53, ArgbFrame.pack(0, 0, 255));
+		assertFalse(display.show(encoder.encode(frame, POOL), frame));
+	}
+
+	@Test
+	public void everyFrameIsKeyframeWithIntervalOne() {
+		DeltaEncoder encoder = new DeltaEncoder(1);
+		Display display = new Display();
+		ArgbFrame frame = scene(33, 17, new Random(7));
+
+		for(int i = 0; i < 3; i++) {
+			frame.getPixels()[i] = ArgbFrame.pack(i, i, i);
+			assertTrue(display.show(encoder.encode(frame, POOL), frame));
+		}
+	}
+
+	@Test
+	public void uniformFrameIsSmall() {
+		DeltaEncoder encoder = new DeltaEncoder();
+		ArgbFrame frame = new ArgbFrame(64, 64);
+		fill(frame, 0, 0, 64, 64, ArgbFrame.pack(10, 20, 30));
+
+		DeltaFrame delta = encoder.encode(frame, POOL);
+		int[] pixels = new int[64 * 64];
+		delta.applyTo(pixels);
+		assertArrayEquals(frame.getPixels(), pixels);
+		assertTrue(delta.getData().length < 64 * 64 / 10);
+	}
+
+	@Test
+	public void nonPositiveIntervalThrows() {
+		assertThrows(IllegalArgumentException.class, () -> new DeltaEncoder(0));
+	}
+
+	/**
+	 * A method which creates a frame with a uniform background, a gradient, noise and a
+	 * uniform rectangle, so that its rows contain runs as well as literal pixels.
+	 * @param width - width of the frame.
+	 * @param height - height of the frame.
+	 * @param random - source of the noise.
+	 * @return the frame.
+	 */
+	private static ArgbFrame scene(int width, int height, Random random) {
+		ArgbFrame frame = new ArgbFrame(width, height);
+		int[] pixels = frame.getPixels();
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				if(y < height / 3) {
+					pixels[y * width + x] = ArgbFrame.pack(x * 5 % 256, y * 7 % 256, 0);
+				} else if(y < 2 * height / 3) {
+					pixels[y * width + x] = ArgbFrame.pack(random.nextInt(4), 0, 0);
+				} else {
+					pixels[y * width + x] = ArgbFrame.pack(0, 0, 0);
+				}
+			}
+		}
+		fill(frame, width / 4, height / 2, width / 2, height - 2, ArgbFrame.pack(0, 255, 0));
+		return frame;
+	}
+
+	/**
+	 * A method which colors a rectangle of a frame.
+	 * @param frame - the frame.
+	 * @param left - column of the left pixels.
+	 * @param top - row of the top pixels.
+	 * @param right - column after the right pixels.
+	 * @param bottom - row after the bottom pixels.
+	 * @param color - packed color.
+	 */
+	private static void fill(ArgbFrame frame, int left, int top, int right, int bottom, int color) {
+		for(int y = top; y < bottom; y++) {
+			for(int x = left; x < right; x++) {
+				frame.getPixels()[y * frame.getWidth() + x] = color;
+			}
+		}
+	}
+
+	/**
+	 * A display which keeps the frame the received deltas describe.
+	 */
+	private static class Display {
+
+		/**
+		 * pixels of the frame which is shown, {@code null} before the first keyframe.
+		 */
+		private int[] pixels;
+
+		/**
+		 * A method which applies a delta and checks that the display shows the encoded frame.
+		 * @param delta - the delta.
+		 * @param frame - the frame which was encoded.
+		 * @return whether the delta is a keyframe.
+		 */
+		boolean show(DeltaFrame delta, ArgbFrame frame) {
+			assertEquals(frame.getWidth(), delta.getWidth());
+			assertEquals(frame.getHeight(), delta.getHeight());
+			if(delta.isKeyframe()) {
+				pixels = new int[delta.getWidth() * delta.getHeight()];
+			}
+			assertNotNull(pixels);
+			delta.applyTo(pixels);
+			assertArrayEquals(frame.getPixels(), pixels);
+			return delta.isKeyframe();
+		}
+	}
+}
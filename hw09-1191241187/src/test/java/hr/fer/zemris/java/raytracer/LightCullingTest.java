@@ -0,0 +1,184 @@
+package hr.fer.zemris.java.raytracer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.zemris.java.raytracer.demo.SceneTracerBenchmark;
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * Tests of {@link LightCulling} with many lights of finite influence radii, which check
+ * that no light which can reach a point is culled, that most of the lights are, and that
+ * a scene rendered with culling is the same as one in which every light is considered.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class LightCullingTest {
+
+	/**
+	 * number of lights with a finite radius.
+	 */
+	private static final int BOUNDED = 1000;
+	/**
+	 * number of lights with an infinite radius.
+	 */
+	private static final int UNBOUNDED = 3;
+	/**
+	 * width and height of the rendered frames.
+	 */
+	private static final int SIZE = 64;
+
+	@Test
+	public void lightsWithinTheirRadiusAreNotCulled() {
+		Random random = new Random(42);
+		List<LightSource> lights = lights(random);
+		double[] radii = radii(random);
+		LightCulling culling = new LightCulling(lights, radii);
+		int[] found = new int[culling.size()];
+		long visited = 0;
+		int points = 5000;
+
+		for(int i = 0; i < points; i++) {
+			Point3D point = new Point3D(coordinate(random, 14), coordinate(random, 14), coordinate(random, 14));
+			int count = culling.lightsAt(point, found);
+			boolean[] listed = new boolean[culling.size()];
+			for(int c = 0; c < count; c++) {
+				assertFalse(listed[found[c]]);
+				listed[found[c]] = true;
+			}
+			for(int k = 0; k < lights.size(); k++) {
+				double distance = lights.get(k).getPoint().sub(point).norm();
+				if(distance < radii[k]) {
+					assertTrue(listed[k]);
+				}
+				if(!listed[k]) {
+					assertEquals(0, culling.falloff(k, distance));
+				}
+			}
+			visited += count;
+		}
+
+		assertTrue(visited < (long) points * culling.size() / 10);
+	}
+
+	@Test
+	public void falloffVanishesAtRadius() {
+		List<LightSource> lights = List.of(new LightSource(new Point3D(0, 0, 0), 100, 100, 100),
+				new LightSource(new Point3D(1, 1, 1), 100, 100, 100));
+		LightCulling culling = new LightCulling(lights, new double[] {2, LightCulling.UNBOUNDED});
+
+		assertEquals(1, culling.falloff(0, 0));
+		assertTrue(culling.falloff(0, 1) > culling.falloff(0, 1.5));
+		assertTrue(culling.falloff(0, 1.999) > 0);
+		assertEquals(0, culling.falloff(0, 2));
+		assertEquals(0, culling.falloff(0, 3));
+		assertEquals(1, culling.falloff(1, 1e9));
+	}
+
+	@Test
+	public void invalidRadiiThrow() {
+		List<LightSource> lights = List.of(new LightSource(new Point3D(0, 0, 0), 100, 100, 100));
+
+		assertThrows(IllegalArgumentException.class, () -> new LightCulling(lights, new double[] {0}));
+		assertThrows(IllegalArgumentException.class, () -> new LightCulling(lights, new double[] {Double.NaN}));
+		assertThrows(IllegalArgumentException.class, () -> new LightCulling(lights, new double[] {1, 2}));
+	}
+
+	@Test
+	public void culledSceneMatchesEveryLight() {
+		Random random = new Random(7);
+		CompiledSpheres spheres = SceneTracerBenchmark.randomSpheres(300, random);
+		Scene scene = new Scene();
+		for(LightSource light : lights(random)) {
+			scene.add(light);
+		}
+		double[] radii = radii(random);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		LightCulling culling = new LightCulling(scene.getLights(), radii);
+		LightCulling everyLight = new LightCulling(scene.getLights(), radii) {
+			@Override
+			public int lightsAt(Point3D point, int[] lights) {
+				for(int k = 0; k < size(); k++) {
+					lights[k] = k;
+				}
+				return size();
+			}
+		};
+
+		short[][] culled = render(new SceneTracer(scene, spheres, culling, pool), pool);
+		short[][] reference = render(new SceneTracer(scene, spheres, everyLight, pool), pool);
+
+		int lit = 0;
+		for(int c = 0; c < 3; c++) {
+			assertArrayEquals(reference[c], culled[c]);
+			for(short value : culled[c]) {
+				lit += value > 15 ? 1 : 0;
+			}
+		}
+		assertTrue(lit > 0);
+	}
+
+	/**
+	 * A method which renders a frame of the random spheres seen from outside.
+	 * @param tracer - tracer of the scene.
+	 * @param pool - pool on which the frame is rendered.
+	 * @return red, green and blue arrays of the frame.
+	 */
+	private static short[][] render(SceneTracer tracer, ForkJoinPool pool) {
+		Camera camera = new Camera(new Point3D(35, 10, 10), new Point3D(0, 0, 0), new Point3D(0, 0, 10),
+				20, 20, SIZE, SIZE);
+		short[][] frame = {new short[SIZE * SIZE], new short[SIZE * SIZE], new short[SIZE * SIZE]};
+		new TileRenderer().render(tracer.forOrigin(camera.getEye()), camera, frame[0], frame[1], frame[2],
+				null, pool, new AtomicBoolean());
+		return frame;
+	}
+
+	/**
+	 * A method which creates {@value #BOUNDED} weak lights among the random spheres, followed by
+	 * {@value #UNBOUNDED} lights far outside of them.
+	 * @param random - source of the positions.
+	 * @return the lights.
+	 */
+	private static List<LightSource> lights(Random random) {
+		List<LightSource> lights = new ArrayList<>();
+		for(int k = 0; k < BOUNDED; k++) {
+			lights.add(new LightSource(new Point3D(coordinate(random, 11), coordinate(random, 11),
+					coordinate(random, 11)), 20, 20, 20));
+		}
+		for(int k = 0; k < UNBOUNDED; k++) {
+			lights.add(new LightSource(new Point3D(coordinate(random, 50), coordinate(random, 50), 50), 5, 5, 5));
+		}
+		return lights;
+	}
+
+	/**
+	 * A method which creates the radii of the lights of {@link #lights(Random)}, between 1 and 4
+	 * for the weak lights and infinite for the others.
+	 * @param random - source of the radii.
+	 * @return the radii.
+	 */
+	private static double[] radii(Random random) {
+		double[] radii = new double[BOUNDED + UNBOUNDED];
+		for(int k = 0; k < radii.length; k++) {
+			radii[k] = k < BOUNDED ? 1 + 3 * random.nextDouble() : LightCulling.UNBOUNDED;
+		}
+		return radii;
+	}
+
+	/**
+	 * A method which creates a random coordinate.
+	 * @param random - source of the coordinate.
+	 * @param extent - largest absolute value of the coordinate.
+	 * @return the coordinate.
+	 */
+	private static double coordinate(Random random, double extent) {
+		return (random.nextDouble() * 2 - 1) * extent;
+	}
+}
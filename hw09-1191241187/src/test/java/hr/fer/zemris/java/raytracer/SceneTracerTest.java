@@ -0,0 +1,93 @@
+package hr.fer.zemris.java.raytracer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import hr.fer.zemris.java.raytracer.model.*;
+
+/**
+ * Tests of the shading of {@link SceneTracer} and of the renderers which shade as it does,
+ * with so many lights reaching a point that the sum of their contributions doesn't fit into a {@code short}.
+ * @author Božidar Grgur Drmić
+ *
+ */
+public class SceneTracerTest {
+
+	/**
+	 * number of lights of the scene.
+	 */
+	private static final int LIGHTS = 400;
+	/**
+	 * width and height of the rendered frames.
+	 */
+	private static final int SIZE = 5;
+
+	@Test
+	public void manyLightsSaturateRay() {
+		SceneTracer tracer = new SceneTracer(scene());
+		short[] rgb = new short[3];
+		tracer.tracer(Ray.fromPoints(new Point3D(10, 10, 10), new Point3D(0, 0, 0)), rgb);
+
+		assertEquals(255, rgb[0]);
+		assertEquals(255, rgb[1]);
+		assertEquals(255, rgb[2]);
+	}
+
+	@Test
+	public void manyLightsSaturateRenderers() {
+		SceneTracer tracer = new SceneTracer(scene()).forOrigin(new Point3D(10, 10, 10));
+		Camera camera = new Camera(new Point3D(10, 10, 10), new Point3D(0, 0, 0), new Point3D(0, 0, 10),
+				0.5, 0.5, SIZE, SIZE);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int center = SIZE * SIZE / 2;
+
+		short[][] frame = frame();
+		new TileRenderer().render(tracer, camera, frame[0], frame[1], frame[2], null, pool, new AtomicBoolean());
+		assertSaturated(frame, center);
+
+		frame = frame();
+		new WavefrontRenderer().render(tracer, camera, frame[0], frame[1], frame[2], null, pool, new AtomicBoolean());
+		assertSaturated(frame, center);
+
+		frame = frame();
+		new GBuffer(tracer, camera, pool, new AtomicBoolean()).relight(tracer.getScene().getLights(),
+				frame[0], frame[1], frame[2], pool);
+		assertSaturated(frame, center);
+	}
+
+	/**
+	 * A method which creates a sphere at the origin lit by {@value #LIGHTS} lights at the same point.
+	 * @return the scene.
+	 */
+	private static Scene scene() {
+		Scene scene = new Scene();
+		scene.add(new Sphere(new Point3D(0, 0, 0), 1, 1, 1, 1, 0.5, 0.5, 0.5, 10));
+		for(int k = 0; k < LIGHTS; k++) {
+			scene.add(new LightSource(new Point3D(100, 100, 100), 100, 100, 100));
+		}
+		return scene;
+	}
+
+	/**
+	 * A method which creates the red, green and blue arrays of a frame.
+	 * @return the arrays.
+	 */
+	private static short[][] frame() {
+		return new short[][] {new short[SIZE * SIZE], new short[SIZE * SIZE], new short[SIZE * SIZE]};
+	}
+
+	/**
+	 * A method which checks that a pixel is white.
+	 * @param frame - red, green and blue arrays of the frame.
+	 * @param pixel - index of the pixel.
+	 */
+	private static void assertSaturated(short[][] frame, int pixel) {
+		for(short[] channel : frame) {
+			assertEquals(255, channel[pixel]);
+		}
+	}
+}